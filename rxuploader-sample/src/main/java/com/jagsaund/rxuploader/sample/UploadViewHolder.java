@@ -86,6 +86,16 @@ public class UploadViewHolder extends RecyclerView.ViewHolder {
                         status.setTextColor(Color.RED);
                         break;
                     }
+                    case PAUSED: {
+                        status.setText("paused");
+                        status.setTextColor(Color.GRAY);
+                        break;
+                    }
+                    case CANCELLED: {
+                        status.setText("cancelled");
+                        status.setTextColor(Color.GRAY);
+                        break;
+                    }
                     default: {
                         status.setText("???");
                         status.setTextColor(Color.RED);
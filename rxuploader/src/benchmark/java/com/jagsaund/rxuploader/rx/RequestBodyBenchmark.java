@@ -0,0 +1,109 @@
+package com.jagsaund.rxuploader.rx;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.throttle.BandwidthLimiter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * Compares the throughput and CPU time of writing a large file through {@link RxRequestBody} and
+ * {@link FileChannelRequestBody} with a range of buffer sizes.
+ * <br/>
+ * The results depend on the machine so they are printed rather than asserted. Run with
+ * {@code ./gradlew :rxuploader:benchmark}.
+ */
+public final class RequestBodyBenchmark {
+    private static final int FILE_SIZE_MB = 256;
+    private static final int RUNS = 3;
+    private static final String MIME_TYPE = "application/octet-stream";
+
+    private RequestBodyBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        final File file = File.createTempFile("benchmark", ".dat");
+        file.deleteOnExit();
+        final byte[] block = new byte[1024 * 1024];
+        try (final FileOutputStream outputStream = new FileOutputStream(file)) {
+            for (int i = 0; i < FILE_SIZE_MB; i++) {
+                Arrays.fill(block, (byte) i);
+                outputStream.write(block);
+            }
+        }
+
+        final ProgressListener progressListener = bytesWritten -> {
+        };
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        for (int run = 1; run <= RUNS; run++) {
+            System.out.printf("Run %d of %d%n", run, RUNS);
+            measure("RxRequestBody 8 KB",
+                    RxRequestBody.create(progressListener, file, MIME_TYPE, limiter,
+                            Compression.NONE));
+            measure("FileChannelRequestBody 64 KB",
+                    FileChannelRequestBody.create(progressListener, file, MIME_TYPE, 0,
+                            file.length(), new BufferPool(64 * 1024, 1), limiter,
+                            limiter.newJobBucket()));
+            measure("FileChannelRequestBody 256 KB",
+                    FileChannelRequestBody.create(progressListener, file, MIME_TYPE, 0,
+                            file.length(), new BufferPool(), limiter, limiter.newJobBucket()));
+            measure("FileChannelRequestBody 1 MB",
+                    FileChannelRequestBody.create(progressListener, file, MIME_TYPE, 0,
+                            file.length(), new BufferPool(1024 * 1024, 1), limiter,
+                            limiter.newJobBucket()));
+        }
+    }
+
+    /**
+     * Writes the {@code body} to a discarding sink and prints its throughput and CPU time.
+     */
+    private static void measure(@NonNull String name, @NonNull RequestBody body)
+            throws IOException {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final BufferedSink sink = Okio.buffer(new DiscardingSink());
+
+        final long cpuStart = threads.getCurrentThreadCpuTime();
+        final long start = System.nanoTime();
+        body.writeTo(sink);
+        sink.flush();
+        final long elapsed = System.nanoTime() - start;
+        final long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+
+        final double megabytes = body.contentLength() / (1024.0 * 1024.0);
+        System.out.printf("  %-32s %8.1f MB/s %8d ms CPU%n", name, megabytes / (elapsed / 1e9),
+                cpu / 1000000);
+    }
+
+    /**
+     * Stands in for the network, discards everything written to it.
+     */
+    private static class DiscardingSink implements Sink {
+        @Override
+        public void write(@NonNull Buffer source, long byteCount) throws IOException {
+            source.skip(byteCount);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @NonNull
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.job.ErrorType;
+import java.io.InterruptedIOException;
+import rx.Scheduler;
+
+/**
+ * Tunes the number of concurrent uploads using additive increase, multiplicative decrease (AIMD).
+ * <br/>
+ * Aggregate throughput of all uploads is sampled once per window. While there are jobs waiting for
+ * a slot and the throughput of the last window improved on the previous one, the limit is increased
+ * by one. Network errors and timeouts halve the limit, at most once per window, so that a burst of
+ * failures caused by the same congestion event does not collapse the limit to the minimum.
+ * <br/>
+ * This class is thread safe.
+ */
+class AdaptiveConcurrencyController {
+    static final long DEFAULT_WINDOW_MILLIS = 2000;
+
+    /**
+     * Minimum relative improvement of throughput required to grow the limit. Avoids growing the
+     * limit based on noise in the measurements.
+     */
+    private static final double MIN_THROUGHPUT_GAIN = 0.05;
+
+    private static final double DECREASE_FACTOR = 0.5;
+
+    @NonNull private final Scheduler clock;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowMillis;
+
+    private int limit;
+    private long windowStart;
+    private long windowBytes;
+    private double lastThroughput;
+    private long lastDecrease;
+
+    /**
+     * @param initialLimit limit to start with, clamped to the given bounds
+     * @param minLimit lower bound of the limit, must be at least one
+     * @param maxLimit upper bound of the limit
+     * @param windowMillis length of the throughput sampling window
+     * @param clock source of the current time
+     */
+    AdaptiveConcurrencyController(int initialLimit, int minLimit, int maxLimit, long windowMillis,
+            @NonNull Scheduler clock) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency bounds");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+
+        limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        windowStart = clock.now();
+        lastDecrease = Long.MIN_VALUE / 2;
+    }
+
+    synchronized int limit() {
+        return limit;
+    }
+
+    /**
+     * Records bytes written by any of the running uploads.
+     *
+     * @param bytes number of bytes written since the last call for the same upload
+     * @param backlog number of jobs waiting for a free slot
+     * @return the limit to apply
+     */
+    synchronized int onBytesSent(long bytes, int backlog) {
+        windowBytes += bytes;
+
+        final long now = clock.now();
+        final long elapsed = now - windowStart;
+        if (elapsed < windowMillis) {
+            return limit;
+        }
+
+        final double throughput = windowBytes * 1000d / elapsed;
+        if (backlog > 0 && limit < maxLimit
+                && throughput > lastThroughput * (1 + MIN_THROUGHPUT_GAIN)) {
+            limit++;
+        }
+        lastThroughput = throughput;
+        windowStart = now;
+        windowBytes = 0;
+        return limit;
+    }
+
+    /**
+     * Records a failed upload. Network errors and timeouts are taken as a sign of congestion and
+     * reduce the limit.
+     *
+     * @param error the cause of the failure
+     * @param errorType the cause of the failure mapped by the {@link UploadErrorAdapter}
+     * @return the limit to apply
+     */
+    synchronized int onFailure(@NonNull Throwable error, @NonNull ErrorType errorType) {
+        if (errorType != ErrorType.NETWORK && !(error instanceof InterruptedIOException)) {
+            return limit;
+        }
+
+        final long now = clock.now();
+        if (now - lastDecrease < windowMillis) {
+            return limit;
+        }
+
+        limit = Math.max(minLimit, (int) (limit * DECREASE_FACTOR));
+        lastDecrease = now;
+        // throughput measured at the old limit is no longer a meaningful baseline
+        lastThroughput = 0;
+        windowStart = now;
+        windowBytes = 0;
+        return limit;
+    }
+}
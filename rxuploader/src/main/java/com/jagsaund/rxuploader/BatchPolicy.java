@@ -0,0 +1,69 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.job.Job;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines which jobs are uploaded together in a single request of a
+ * {@link com.jagsaund.rxuploader.store.BatchUploadService}.
+ * <br/>
+ * Only jobs of small files are batched. A small job waits for up to the linger time for other
+ * small jobs to be queued, so that jobs enqueued in quick succession share a request. A batch never
+ * holds more than the maximum number of files or bytes.
+ */
+public class BatchPolicy {
+    private final int maxFiles;
+    private final long maxFileBytes;
+    private final long maxBatchBytes;
+    private final long lingerMillis;
+
+    /**
+     * @param maxFiles maximum number of files in a batch
+     * @param maxFileBytes size of the largest file which is batched
+     * @param maxBatchBytes maximum combined size of the files in a batch
+     * @param linger maximum time a job waits for other jobs to join its batch
+     * @param unit unit of {@code linger}
+     */
+    public BatchPolicy(int maxFiles, long maxFileBytes, long maxBatchBytes, long linger,
+            @NonNull TimeUnit unit) {
+        if (maxFiles < 2) {
+            throw new IllegalArgumentException("Batch must allow at least two files");
+        }
+        if (maxFileBytes < 1 || maxBatchBytes < maxFileBytes) {
+            throw new IllegalArgumentException("Invalid batch size");
+        }
+        if (linger < 0) {
+            throw new IllegalArgumentException("Linger must not be negative");
+        }
+        this.maxFiles = maxFiles;
+        this.maxFileBytes = maxFileBytes;
+        this.maxBatchBytes = maxBatchBytes;
+        this.lingerMillis = unit.toMillis(linger);
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    public long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    /**
+     * @param job a queued job
+     * @return {@link Boolean#TRUE} if the job may be uploaded as part of a batch and
+     * {@link Boolean#FALSE} otherwise
+     */
+    boolean isBatchable(@NonNull Job job) {
+        return job.size() != Job.SIZE_UNKNOWN && job.size() <= maxFileBytes;
+    }
+}
@@ -0,0 +1,328 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import java.util.concurrent.TimeUnit;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+import rx.subjects.BehaviorSubject;
+import rx.subjects.SerializedSubject;
+import rx.subjects.Subject;
+
+/**
+ * Stops uploads while the backend is failing.
+ * <br/>
+ * The breaker starts {@link State#CLOSED} and records the outcome of the most recent calls in a
+ * sliding window. Once the window holds enough calls and the share of failures exceeds the
+ * threshold, the breaker trips {@link State#OPEN} and no uploads are started. After the open
+ * duration has elapsed the breaker becomes {@link State#HALF_OPEN} and lets a limited number of
+ * probe uploads through. If all probes succeed the breaker closes again, a single failed probe
+ * opens it for another open duration.
+ * <br/>
+ * Every state change starts a new generation. The outcome of a call is only recorded if the
+ * breaker is still in the generation the call was permitted in, so a call started while closed
+ * which completes after the breaker opened is neither counted as a probe nor reopens it.
+ * <br/>
+ * Construct a new {@link CircuitBreaker} by using the {@link Builder}.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Returned by {@link #tryAcquire()} if a call is not permitted.
+     */
+    static final long NOT_PERMITTED = -1;
+
+    @NonNull private final Scheduler scheduler;
+    @NonNull private final Subject<State, State> stateSubject;
+
+    private final float failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationMillis;
+    private final int probes;
+
+    /**
+     * Ring buffer of the outcomes of the most recent calls, {@code true} marks a failure.
+     */
+    @NonNull private final boolean[] window;
+
+    private int windowPosition;
+    private int windowCount;
+    private int windowFailures;
+
+    @NonNull private State state;
+    private long generation;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    @Nullable private Subscription halfOpenTimer;
+
+    @VisibleForTesting
+    CircuitBreaker(float failureRateThreshold, int windowSize, int minimumCalls,
+            long openDurationMillis, int probes, @NonNull Scheduler scheduler) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openDurationMillis = openDurationMillis;
+        this.probes = probes;
+        this.scheduler = scheduler;
+
+        window = new boolean[windowSize];
+        state = State.CLOSED;
+        stateSubject = new SerializedSubject<>(BehaviorSubject.create(State.CLOSED));
+    }
+
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Receive updates of the state of the breaker. The current state is emitted upon subscription.
+     *
+     * @return A stream of {@link State} changes
+     */
+    @NonNull
+    public Observable<State> state() {
+        return stateSubject.asObservable().distinctUntilChanged();
+    }
+
+    @NonNull
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return number of probe calls let through while half open
+     */
+    int getProbes() {
+        return probes;
+    }
+
+    /**
+     * Checks whether a call would currently be permitted without reserving it.
+     *
+     * @return {@link Boolean#TRUE} if a call may be made and {@link Boolean#FALSE} otherwise
+     */
+    public synchronized boolean isCallPermitted() {
+        switch (state) {
+            case CLOSED: {
+                return true;
+            }
+            case HALF_OPEN: {
+                return probesInFlight < probes;
+            }
+            case OPEN:
+            default: {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reserves a call. Every successful reservation must be followed by exactly one call to
+     * {@link #onSuccess(long)}, {@link #onFailure(long)} or {@link #onIgnored(long)} with the
+     * returned generation.
+     *
+     * @return generation the call was permitted in or {@link #NOT_PERMITTED}
+     */
+    synchronized long tryAcquire() {
+        if (!isCallPermitted()) {
+            return NOT_PERMITTED;
+        }
+        if (state == State.HALF_OPEN) {
+            probesInFlight++;
+        }
+        return generation;
+    }
+
+    /**
+     * Records a successful call.
+     *
+     * @param permitted generation returned by {@link #tryAcquire()}
+     */
+    synchronized void onSuccess(long permitted) {
+        if (permitted != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+            if (++probeSuccesses >= probes) {
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    /**
+     * Records a failed call.
+     *
+     * @param permitted generation returned by {@link #tryAcquire()}
+     */
+    synchronized void onFailure(long permitted) {
+        if (permitted != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumCalls
+                    && windowFailures >= failureRateThreshold * windowCount) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    /**
+     * Releases a reserved call whose outcome says nothing about the health of the backend, e.g.
+     * the call was cancelled or failed because of a local error.
+     *
+     * @param permitted generation returned by {@link #tryAcquire()}
+     */
+    synchronized void onIgnored(long permitted) {
+        if (permitted == generation && state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+        }
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowPosition]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowPosition] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowPosition = (windowPosition + 1) % window.length;
+    }
+
+    private void transitionTo(@NonNull State newState) {
+        state = newState;
+        generation++;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+
+        if (halfOpenTimer != null) {
+            halfOpenTimer.unsubscribe();
+            halfOpenTimer = null;
+        }
+
+        if (newState == State.CLOSED) {
+            windowPosition = 0;
+            windowCount = 0;
+            windowFailures = 0;
+        } else if (newState == State.OPEN) {
+            halfOpenTimer = Observable.timer(openDurationMillis, TimeUnit.MILLISECONDS, scheduler)
+                    .subscribe(__ -> onOpenDurationElapsed());
+        }
+
+        stateSubject.onNext(newState);
+    }
+
+    private synchronized void onOpenDurationElapsed() {
+        if (state == State.OPEN) {
+            transitionTo(State.HALF_OPEN);
+        }
+    }
+
+    /**
+     * Builder used to construct a new {@link CircuitBreaker} instance.
+     */
+    public static class Builder {
+        private float failureRateThreshold = 0.5f;
+        private int windowSize = 20;
+        private int minimumCalls = 5;
+        private long openDurationMillis = TimeUnit.SECONDS.toMillis(30);
+        private int probes = 1;
+
+        private Builder() {
+        }
+
+        /**
+         * Share of failed calls in the window at which the breaker opens.
+         * The default is 0.5.
+         *
+         * @param failureRateThreshold value between 0 (exclusive) and 1 (inclusive)
+         * @return Builder
+         */
+        public Builder withFailureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * Number of most recent calls used to calculate the failure rate and the minimum number
+         * of calls which must be recorded before the breaker may open.
+         * The defaults are 20 and 5.
+         *
+         * @param windowSize number of calls in the sliding window
+         * @param minimumCalls number of calls required to calculate the failure rate
+         * @return Builder
+         */
+        public Builder withWindow(int windowSize, int minimumCalls) {
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * Time the breaker stays open before probe calls are let through.
+         * The default is 30 seconds.
+         *
+         * @param openDuration time to stay open
+         * @param unit unit of {@code openDuration}
+         * @return Builder
+         */
+        public Builder withOpenDuration(long openDuration, @NonNull TimeUnit unit) {
+            this.openDurationMillis = unit.toMillis(openDuration);
+            return this;
+        }
+
+        /**
+         * Number of probe calls let through while half open. All of them must succeed for the
+         * breaker to close.
+         * The default is 1.
+         *
+         * @param probes number of probe calls
+         * @return Builder
+         */
+        public Builder withProbes(int probes) {
+            this.probes = probes;
+            return this;
+        }
+
+        @NonNull
+        public CircuitBreaker build() {
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+                throw new IllegalArgumentException("Must provide a valid failure rate threshold");
+            }
+
+            if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+                throw new IllegalArgumentException("Must provide a valid window");
+            }
+
+            if (openDurationMillis < 0) {
+                throw new IllegalArgumentException("Open duration must not be negative");
+            }
+
+            if (probes < 1) {
+                throw new IllegalArgumentException("Must allow at least one probe");
+            }
+
+            return new CircuitBreaker(failureRateThreshold, windowSize, minimumCalls,
+                    openDurationMillis, probes, Schedulers.computation());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.store.BatchUploadService;
+import java.util.List;
+import java.util.Map;
+import okhttp3.MultipartBody;
+import rx.Single;
+
+/**
+ * Decorates a {@link BatchUploadService} with a {@link CircuitBreaker}. A batch counts as a single
+ * call to the backend.
+ *
+ * @param <T> Defines the type of response payload returned for each uploaded file
+ * @see CircuitBreakerUploadService
+ */
+class CircuitBreakerBatchUploadService<T> implements BatchUploadService<T> {
+    @NonNull private final BatchUploadService<T> uploadService;
+    @NonNull private final CircuitBreaker circuitBreaker;
+    @NonNull private final UploadErrorAdapter errorAdapter;
+
+    CircuitBreakerBatchUploadService(@NonNull BatchUploadService<T> uploadService,
+            @NonNull CircuitBreaker circuitBreaker, @NonNull UploadErrorAdapter errorAdapter) {
+        this.uploadService = uploadService;
+        this.circuitBreaker = circuitBreaker;
+        this.errorAdapter = errorAdapter;
+    }
+
+    @Override
+    public Single<List<T>> upload(@NonNull List<Map<String, Object>> metadata,
+            @NonNull List<MultipartBody.Part> data) {
+        return CircuitBreakerUploadService.guard(circuitBreaker, errorAdapter,
+                () -> uploadService.upload(metadata, data));
+    }
+}
@@ -0,0 +1,48 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.store.ChunkedUploadService;
+import java.util.Map;
+import okhttp3.RequestBody;
+import rx.Single;
+
+/**
+ * Decorates a {@link ChunkedUploadService} with a {@link CircuitBreaker}. Every request of the
+ * upload session is guarded on its own, so an upload which is rejected part way through resumes
+ * from the last acknowledged chunk once the breaker permits calls again.
+ *
+ * @param <T> Defines the type of response payload returned by the upload operation
+ * @see CircuitBreakerUploadService
+ */
+class CircuitBreakerChunkedUploadService<T> implements ChunkedUploadService<T> {
+    @NonNull private final ChunkedUploadService<T> uploadService;
+    @NonNull private final CircuitBreaker circuitBreaker;
+    @NonNull private final UploadErrorAdapter errorAdapter;
+
+    CircuitBreakerChunkedUploadService(@NonNull ChunkedUploadService<T> uploadService,
+            @NonNull CircuitBreaker circuitBreaker, @NonNull UploadErrorAdapter errorAdapter) {
+        this.uploadService = uploadService;
+        this.circuitBreaker = circuitBreaker;
+        this.errorAdapter = errorAdapter;
+    }
+
+    @Override
+    public Single<String> init(@NonNull Map<String, Object> metadata, @NonNull String filename,
+            @NonNull String mimeType, long size) {
+        return CircuitBreakerUploadService.guard(circuitBreaker, errorAdapter,
+                () -> uploadService.init(metadata, filename, mimeType, size));
+    }
+
+    @Override
+    public Single<Long> append(@NonNull String uploadId, long offset,
+            @NonNull RequestBody chunk) {
+        return CircuitBreakerUploadService.guard(circuitBreaker, errorAdapter,
+                () -> uploadService.append(uploadId, offset, chunk));
+    }
+
+    @Override
+    public Single<T> complete(@NonNull String uploadId) {
+        return CircuitBreakerUploadService.guard(circuitBreaker, errorAdapter,
+                () -> uploadService.complete(uploadId));
+    }
+}
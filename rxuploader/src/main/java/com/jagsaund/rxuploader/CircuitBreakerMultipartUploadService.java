@@ -0,0 +1,57 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.store.MultipartUploadService;
+import java.util.List;
+import java.util.Map;
+import okhttp3.RequestBody;
+import rx.Single;
+
+/**
+ * Decorates a {@link MultipartUploadService} with a {@link CircuitBreaker}. Every request of the
+ * multipart upload is guarded on its own.
+ *
+ * @param <T> Defines the type of response payload returned by the upload operation
+ * @see CircuitBreakerUploadService
+ */
+class CircuitBreakerMultipartUploadService<T> implements MultipartUploadService<T> {
+    @NonNull private final MultipartUploadService<T> uploadService;
+    @NonNull private final CircuitBreaker circuitBreaker;
+    @NonNull private final UploadErrorAdapter errorAdapter;
+
+    CircuitBreakerMultipartUploadService(@NonNull MultipartUploadService<T> uploadService,
+            @NonNull CircuitBreaker circuitBreaker, @NonNull UploadErrorAdapter errorAdapter) {
+        this.uploadService = uploadService;
+        this.circuitBreaker = circuitBreaker;
+        this.errorAdapter = errorAdapter;
+    }
+
+    @Override
+    public Single<String> initiate(@NonNull Map<String, Object> metadata,
+            @NonNull String filename, @NonNull String mimeType, long size) {
+        return CircuitBreakerUploadService.guard(circuitBreaker, errorAdapter,
+                () -> uploadService.initiate(metadata, filename, mimeType, size));
+    }
+
+    @Override
+    public Single<String> uploadPart(@NonNull String uploadId, int partNumber,
+            @NonNull RequestBody part) {
+        return CircuitBreakerUploadService.guard(circuitBreaker, errorAdapter,
+                () -> uploadService.uploadPart(uploadId, partNumber, part));
+    }
+
+    @Override
+    public Single<T> complete(@NonNull String uploadId, @NonNull List<String> partTags) {
+        return CircuitBreakerUploadService.guard(circuitBreaker, errorAdapter,
+                () -> uploadService.complete(uploadId, partTags));
+    }
+
+    /**
+     * Aborting only cleans up an upload which has already failed, it is passed on without being
+     * guarded.
+     */
+    @Override
+    public Single<?> abort(@NonNull String uploadId) {
+        return uploadService.abort(uploadId);
+    }
+}
@@ -0,0 +1,12 @@
+package com.jagsaund.rxuploader;
+
+import java.io.IOException;
+
+/**
+ * Signals that an upload was rejected because the {@link CircuitBreaker} is open.
+ */
+public class CircuitBreakerOpenException extends IOException {
+    public CircuitBreakerOpenException() {
+        super("Circuit breaker is open");
+    }
+}
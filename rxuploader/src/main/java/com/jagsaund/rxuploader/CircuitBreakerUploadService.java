@@ -0,0 +1,92 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.job.ErrorType;
+import com.jagsaund.rxuploader.store.UploadService;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import okhttp3.MultipartBody;
+import rx.Single;
+import rx.functions.Func0;
+
+/**
+ * Decorates an {@link UploadService} with a {@link CircuitBreaker}. Uploads are rejected with a
+ * {@link CircuitBreakerOpenException} while the breaker does not permit calls. The outcome of every
+ * permitted upload is reported to the breaker: {@link ErrorType#SERVICE} and
+ * {@link ErrorType#NETWORK} errors count as failures, all other errors are ignored.
+ *
+ * @param <T> Defines the type of response payload returned by the upload operation
+ */
+class CircuitBreakerUploadService<T> implements UploadService<T> {
+    @NonNull private final UploadService<T> uploadService;
+    @NonNull private final CircuitBreaker circuitBreaker;
+    @NonNull private final UploadErrorAdapter errorAdapter;
+
+    CircuitBreakerUploadService(@NonNull UploadService<T> uploadService,
+            @NonNull CircuitBreaker circuitBreaker, @NonNull UploadErrorAdapter errorAdapter) {
+        this.uploadService = uploadService;
+        this.circuitBreaker = circuitBreaker;
+        this.errorAdapter = errorAdapter;
+    }
+
+    @Override
+    public Single<T> upload(@NonNull Map<String, Object> metadata,
+            @NonNull MultipartBody.Part data) {
+        return guard(circuitBreaker, errorAdapter, () -> uploadService.upload(metadata, data));
+    }
+
+    /**
+     * Guards a single call to the backend with the {@code circuitBreaker}.
+     *
+     * @param call creates the call once it has been permitted
+     * @return the guarded call
+     */
+    @NonNull
+    static <R> Single<R> guard(@NonNull CircuitBreaker circuitBreaker,
+            @NonNull UploadErrorAdapter errorAdapter, @NonNull Func0<Single<R>> call) {
+        return Single.defer(() -> {
+            final long permitted = circuitBreaker.tryAcquire();
+            if (permitted == CircuitBreaker.NOT_PERMITTED) {
+                return Single.error(new CircuitBreakerOpenException());
+            }
+
+            final Single<R> single;
+            try {
+                single = call.call();
+            } catch (RuntimeException e) {
+                circuitBreaker.onIgnored(permitted);
+                throw e;
+            }
+
+            // exactly one outcome is reported for each permitted call, the breaker discards it if
+            // its state changed since the call was permitted
+            final AtomicBoolean reported = new AtomicBoolean();
+            return single
+                    .doOnSuccess(response -> {
+                        if (reported.compareAndSet(false, true)) {
+                            circuitBreaker.onSuccess(permitted);
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (reported.compareAndSet(false, true)) {
+                            onError(circuitBreaker, errorAdapter, permitted, error);
+                        }
+                    })
+                    .doOnUnsubscribe(() -> {
+                        if (reported.compareAndSet(false, true)) {
+                            circuitBreaker.onIgnored(permitted);
+                        }
+                    });
+        });
+    }
+
+    private static void onError(@NonNull CircuitBreaker circuitBreaker,
+            @NonNull UploadErrorAdapter errorAdapter, long permitted, @NonNull Throwable error) {
+        final ErrorType errorType = errorAdapter.fromThrowable(error);
+        if (errorType == ErrorType.SERVICE || errorType == ErrorType.NETWORK) {
+            circuitBreaker.onFailure(permitted);
+        } else {
+            circuitBreaker.onIgnored(permitted);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import com.jagsaund.rxuploader.store.DigestIndex;
+import com.jagsaund.rxuploader.utils.DigestUtils;
+import java.io.File;
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * Detects enqueued {@link Job} items whose file content has already been enqueued before.
+ * <br/>
+ * The content digest of each new job is computed off the calling thread and looked up in the
+ * {@link DigestIndex}. A job whose content was already uploaded completes immediately with the
+ * response of the earlier upload. A job whose content is still waiting for or in the middle of an
+ * upload is resolved to the existing job instead. Content of jobs which failed or no longer exist
+ * is uploaded again.
+ * <br/>
+ * The digest of a job is forgotten when its record is deleted. When records are deleted on
+ * completion, content which was uploaded before is therefore uploaded again; only content which is
+ * still queued or being uploaded is deduplicated.
+ */
+class Deduplicator {
+    @NonNull private final DigestIndex digestIndex;
+    @NonNull private final UploadInteractor uploadInteractor;
+    @NonNull private final Scheduler scheduler;
+
+    /**
+     * @param digestIndex index of digests of previously enqueued jobs
+     * @param uploadInteractor used to look up previously enqueued jobs
+     * @param scheduler scheduler to compute digests on
+     */
+    Deduplicator(@NonNull DigestIndex digestIndex, @NonNull UploadInteractor uploadInteractor,
+            @NonNull Scheduler scheduler) {
+        this.digestIndex = digestIndex;
+        this.uploadInteractor = uploadInteractor;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Computes the content digest of a newly enqueued job.
+     * <br/>
+     * If the digest cannot be computed, eg. because the file does not exist, {@code job} is
+     * emitted unchanged and the upload reports the error as usual.
+     *
+     * @param job the newly enqueued job
+     * @return the job with its digest
+     */
+    @NonNull
+    Observable<Job> hash(@NonNull Job job) {
+        return Observable.fromCallable(
+                () -> job.withDigest(DigestUtils.sha256(new File(job.filepath()))))
+                .subscribeOn(scheduler)
+                .onErrorReturn(error -> job);
+    }
+
+    /**
+     * Resolves a newly enqueued job against previously enqueued content.
+     * <br/>
+     * A job with the id of {@code job} is emitted if the job must be persisted: either it should
+     * be uploaded or it is already {@link StatusType#COMPLETED} with the response of the earlier
+     * upload. A job with a different id is the existing job which uploads the same content; the
+     * new job must not be persisted. A job without a digest is emitted unchanged.
+     * <br/>
+     * Looking up and recording the digest is not atomic. Jobs must be resolved one at a time and
+     * each job must be persisted before the next one is resolved.
+     *
+     * @param job the newly enqueued job with the digest computed by {@link #hash(Job)}
+     * @return the resolved job
+     */
+    @NonNull
+    Observable<Job> resolve(@NonNull Job job) {
+        final String digest = job.digest();
+        if (digest == null) {
+            return Observable.just(job);
+        }
+        return findExisting(job)
+                .map(existing -> {
+                    final Status status = existing.status();
+                    if (status.statusType() == StatusType.COMPLETED) {
+                        return job.withStatus(Status.createCompleted(job.id(), status.response()));
+                    }
+                    return existing;
+                })
+                .switchIfEmpty(digestIndex.put(digest, job.id()).map(__ -> job));
+    }
+
+    /**
+     * Removes the digest of a deleted job from the {@link DigestIndex} so it no longer resolves
+     * to the job. Content associated with a newer job is kept.
+     *
+     * @param job the deleted job
+     * @return the deleted job
+     */
+    @NonNull
+    Observable<Job> forget(@NonNull Job job) {
+        final String digest = job.digest();
+        if (digest == null) {
+            return Observable.just(job);
+        }
+        return digestIndex.remove(digest, job.id())
+                .map(__ -> job)
+                .defaultIfEmpty(job);
+    }
+
+    /**
+     * Releases the {@link DigestIndex}.
+     */
+    void close() {
+        digestIndex.close();
+    }
+
+    @NonNull
+    private Observable<Job> findExisting(@NonNull Job job) {
+        final String digest = job.digest();
+        return digestIndex.get(digest)
+                .filter(jobId -> !jobId.equals(job.id()))
+                .flatMap(uploadInteractor::get)
+                .filter(existing -> !Job.isInvalid(existing)
+                        && digest.equals(existing.digest())
+                        && (existing.status().statusType() == StatusType.QUEUED
+                        || existing.status().statusType() == StatusType.COMPLETED));
+    }
+}
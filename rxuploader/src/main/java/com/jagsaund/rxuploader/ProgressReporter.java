@@ -0,0 +1,212 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.rx.ProgressListener;
+import com.jagsaund.rxuploader.rx.ProgressSampler;
+import com.jagsaund.rxuploader.throttle.ThroughputEstimator;
+import java.util.concurrent.ConcurrentHashMap;
+import rx.Observable;
+import rx.Observer;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+
+/**
+ * Reports the progress of uploads through two channels: an {@link UploadProgress} slot per job
+ * which is updated in place after every write, and {@link Status} items for the subscribers of
+ * {@link UploadManager#status()}.
+ * <br/>
+ * Every write updates the slot of the job. Subscribers of {@link #updates()} are notified with the
+ * same slot instance, as often as the {@link ProgressSampler} allows if one is set. With status
+ * updates disabled only the first {@link Status} of an upload is emitted, which marks the
+ * transition to sending; the progress is then only available from the slot.
+ * <br/>
+ * The transfer rate of each upload and of all uploads together is estimated from the bytes
+ * written, see {@link ThroughputEstimator}.
+ */
+class ProgressReporter {
+    @NonNull private final ConcurrentHashMap<String, UploadProgress> slots =
+            new ConcurrentHashMap<>();
+    @NonNull private final Subject<UploadProgress, UploadProgress> updates =
+            PublishSubject.<UploadProgress>create().toSerialized();
+
+    @NonNull private final ThroughputEstimator throughput;
+    @NonNull private final Scheduler clock;
+
+    @Nullable private volatile ProgressSampler progressSampler;
+
+    private volatile boolean statusUpdates = true;
+
+    ProgressReporter() {
+        this(Schedulers.computation());
+    }
+
+    /**
+     * @param clock source of the current time used to estimate transfer rates
+     */
+    @VisibleForTesting
+    ProgressReporter(@NonNull Scheduler clock) {
+        this.clock = clock;
+        throughput = new ThroughputEstimator(ThroughputEstimator.DEFAULT_TIME_CONSTANT_MILLIS,
+                clock);
+    }
+
+    /**
+     * @param progressSampler limits how often subscribers are notified of progress
+     */
+    void setProgressSampler(@NonNull ProgressSampler progressSampler) {
+        this.progressSampler = progressSampler;
+    }
+
+    /**
+     * @param statusUpdates false to only emit the first {@link Status} of each upload
+     */
+    void setStatusUpdates(boolean statusUpdates) {
+        this.statusUpdates = statusUpdates;
+    }
+
+    boolean isStatusUpdates() {
+        return statusUpdates;
+    }
+
+    /**
+     * Creates the listener which reports the progress of an upload. The slot of the job is reset
+     * so an upload which is started again reports its progress from the start.
+     *
+     * @param observer receives the {@link Status} items of the upload
+     * @param jobId id of the uploaded job
+     * @param total size of the whole file
+     * @return the listener to report every write of the upload to
+     */
+    @NonNull
+    ProgressListener listener(@NonNull Observer<Status> observer, @NonNull String jobId,
+            long total) {
+        final UploadProgress slot = slot(jobId, total);
+        final ProgressListener notifier = new Notifier(observer, slot, statusUpdates);
+        final ProgressSampler sampler = progressSampler;
+        return new SlotListener(slot, sampler != null ? sampler.sample(notifier, total) : notifier);
+    }
+
+    /**
+     * @return smoothed transfer rate of all uploads together or 0 if not known
+     */
+    long bytesPerSecond() {
+        return throughput.bytesPerSecond();
+    }
+
+    /**
+     * @return estimated time until all uploads in progress are sent at the current aggregate
+     * transfer rate or {@link Status#UNKNOWN_ETA}
+     */
+    long etaMillis() {
+        long remaining = 0;
+        for (UploadProgress slot : slots.values()) {
+            remaining += Math.max(0, slot.totalBytes() - slot.bytesSent());
+        }
+        return Status.eta(remaining, bytesPerSecond());
+    }
+
+    /**
+     * @return the progress of the job or null if the job is not being uploaded
+     */
+    @Nullable
+    UploadProgress get(@NonNull String jobId) {
+        return slots.get(jobId);
+    }
+
+    /**
+     * Releases the slot of a job which is no longer uploaded.
+     */
+    void remove(@NonNull String jobId) {
+        slots.remove(jobId);
+    }
+
+    /**
+     * @return the slots of uploads whose progress changed
+     */
+    @NonNull
+    Observable<UploadProgress> updates() {
+        return updates.asObservable();
+    }
+
+    /**
+     * Completes the stream of {@link #updates()}.
+     */
+    void complete() {
+        updates.onCompleted();
+    }
+
+    @NonNull
+    private UploadProgress slot(@NonNull String jobId, long total) {
+        UploadProgress slot = slots.get(jobId);
+        if (slot == null) {
+            slot = new UploadProgress(jobId, total, new ThroughputEstimator(
+                    ThroughputEstimator.DEFAULT_TIME_CONSTANT_MILLIS, clock));
+            final UploadProgress existing = slots.putIfAbsent(jobId, slot);
+            if (existing != null) {
+                slot = existing;
+            }
+        }
+        slot.reset(total);
+        return slot;
+    }
+
+    /**
+     * Updates the slot and the transfer rates after every write.
+     */
+    private class SlotListener implements ProgressListener {
+        @NonNull private final UploadProgress slot;
+        @NonNull private final ProgressListener listener;
+
+        private boolean started;
+        private long lastBytes;
+
+        SlotListener(@NonNull UploadProgress slot, @NonNull ProgressListener listener) {
+            this.slot = slot;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onProgress(long bytesWritten) {
+            // the first update of a resumed upload starts at the resumed offset, which was sent
+            // earlier and must not count towards the rate
+            final long delta = started ? Math.max(0, bytesWritten - lastBytes) : 0;
+            started = true;
+            lastBytes = bytesWritten;
+
+            slot.update(bytesWritten, delta);
+            throughput.onBytesSent(delta);
+            listener.onProgress(bytesWritten);
+        }
+    }
+
+    private class Notifier implements ProgressListener {
+        @NonNull private final Observer<Status> observer;
+        @NonNull private final UploadProgress slot;
+
+        private final boolean statusUpdates;
+
+        private boolean sending;
+
+        Notifier(@NonNull Observer<Status> observer, @NonNull UploadProgress slot,
+                boolean statusUpdates) {
+            this.observer = observer;
+            this.slot = slot;
+            this.statusUpdates = statusUpdates;
+        }
+
+        @Override
+        public void onProgress(long bytesWritten) {
+            updates.onNext(slot);
+            if (statusUpdates || !sending) {
+                sending = true;
+                observer.onNext(Status.createSending(slot.jobId(), bytesWritten,
+                        slot.totalBytes(), slot.bytesPerSecond()));
+            }
+        }
+    }
+}
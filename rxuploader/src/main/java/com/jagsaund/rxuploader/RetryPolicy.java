@@ -0,0 +1,78 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines how failed uploads are retried automatically. Only failures which the
+ * {@link UploadErrorAdapter#canRetry(Throwable)} accepts are retried.
+ * <br/>
+ * The delay before a retry grows exponentially with the number of failed attempts and is fully
+ * jittered: a random delay between zero and the exponential bound is chosen. Jitter spreads retries
+ * of jobs which failed at the same time so they do not hit the backend all at once.
+ */
+public class RetryPolicy {
+    @NonNull private final Random random;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxAttempts maximum number of upload attempts of a job, including the first one
+     * @param baseDelay upper bound of the delay before the first retry
+     * @param maxDelay upper bound of the delay before any retry
+     * @param unit unit of {@code baseDelay} and {@code maxDelay}
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, @NonNull TimeUnit unit) {
+        this(maxAttempts, unit.toMillis(baseDelay), unit.toMillis(maxDelay), new Random());
+    }
+
+    @VisibleForTesting
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+            @NonNull Random random) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Must allow at least one attempt");
+        }
+        if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid retry delay");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param failedAttempts number of attempts which failed so far
+     * @return {@link Boolean#TRUE} if another attempt is allowed and {@link Boolean#FALSE}
+     * otherwise
+     */
+    boolean canRetry(int failedAttempts) {
+        return failedAttempts < maxAttempts;
+    }
+
+    /**
+     * Picks the delay before the next attempt.
+     *
+     * @param failedAttempts number of attempts which failed so far, at least one
+     * @return delay in milliseconds
+     */
+    long delayMillis(int failedAttempts) {
+        final int exponent = Math.min(Math.max(0, failedAttempts - 1), 62);
+        // compare before shifting to avoid overflowing the exponential bound
+        final long bound = baseDelayMillis > (maxDelayMillis >> exponent)
+                ? maxDelayMillis
+                : baseDelayMillis << exponent;
+        if (bound <= 0) {
+            return 0;
+        }
+        return (long) (random.nextDouble() * (bound + 1));
+    }
+}
@@ -0,0 +1,20 @@
+package com.jagsaund.rxuploader;
+
+/**
+ * Defines the order in which queued {@link com.jagsaund.rxuploader.job.Job} items are uploaded.
+ * Regardless of the policy, jobs with a higher {@link com.jagsaund.rxuploader.job.Job#priority()}
+ * are always uploaded first.
+ */
+public enum SchedulingPolicy {
+    /**
+     * Jobs of the same priority are uploaded in the order they were queued.
+     */
+    PRIORITY,
+
+    /**
+     * Jobs of the same priority are uploaded smallest file first so that small uploads are not
+     * blocked behind large ones. Should be combined with queue aging to prevent large files from
+     * being starved by a steady stream of small files.
+     */
+    SHORTEST_JOB_FIRST
+}
@@ -0,0 +1,948 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import com.jagsaund.rxuploader.job.ErrorType;
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Actions;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+import rx.subscriptions.CompositeSubscription;
+import rx.subscriptions.MultipleAssignmentSubscription;
+
+/**
+ * Executes uploads using a fixed number of slots. Each slot runs a single
+ * {@link UploadInteractor#upload(String)} operation at a time. Jobs submitted while all slots are
+ * busy wait in a pending {@link UploadQueue} and are dispatched in scheduling order as soon as a
+ * slot is released.
+ * <br/>
+ * Status updates of every running upload are published on {@link #status()}. Updates belonging to
+ * the same job are emitted in the order they were produced by the upload.
+ * <br/>
+ * When an {@link AdaptiveConcurrencyController} is provided the number of slots is adjusted based
+ * on the observed throughput and failures of the running uploads.
+ * <br/>
+ * When a {@link RetryPolicy} is set, failures accepted by
+ * {@link UploadErrorAdapter#canRetry(Throwable)} are retried automatically. The failed attempt is
+ * recorded with the job, the failure is published and the slot is released; once the backoff delay
+ * has elapsed the job is queued again.
+ * <br/>
+ * When a {@link CircuitBreaker} is set, no upload is started while the breaker is open. While it is
+ * half open no more uploads are started than the breaker lets probes through. Uploads rejected by
+ * the breaker are put back in the pending queue.
+ * <br/>
+ * When a {@link BatchPolicy} is set, small jobs which are pending at the same time are uploaded
+ * together with {@link UploadInteractor#uploadBatch(List)}. A batch occupies a single slot.
+ * <br/>
+ * A job can be cancelled while it is pending or running, which frees its slot immediately.
+ * <br/>
+ * While the executor is paused no upload is started. Running uploads can be interrupted, which
+ * puts their jobs back in the pending queue.
+ * <br/>
+ * The number of jobs held in the pending queue can be bounded. Jobs submitted while the queue is
+ * full are left in the {@link com.jagsaund.rxuploader.store.UploadDataStore}, where they have
+ * already been persisted as {@link StatusType#QUEUED}. Once the queue has drained to half of its
+ * capacity it is refilled with a bounded page of the queued jobs of the highest priority read from
+ * the store. A refill which fails is retried with an exponential backoff.
+ */
+class UploadExecutor {
+    static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 1;
+
+    static final int UNBOUNDED_PENDING_JOBS = 0;
+
+    /**
+     * Delay before a refill which could not take any job from the store is retried, doubled on
+     * every further attempt up to {@link #MAX_REFILL_BACKOFF_MILLIS}.
+     */
+    static final long MIN_REFILL_BACKOFF_MILLIS = 1000;
+
+    static final long MAX_REFILL_BACKOFF_MILLIS = 60 * 1000;
+
+    @NonNull private final UploadInteractor uploadInteractor;
+    @NonNull private final UploadErrorAdapter errorAdapter;
+    @NonNull private final Subject<Status, Status> statusSubject;
+    @NonNull private final Subject<Integer, Integer> activeCountSubject;
+
+    /**
+     * Jobs waiting for a free slot.
+     * Guarded by {@code this}.
+     */
+    @NonNull private final UploadQueue pending;
+
+    /**
+     * Job ids currently occupying a slot mapped to the slot. All jobs of a batch share the same
+     * slot.
+     * Guarded by {@code this}.
+     */
+    @NonNull private final Map<String, Slot> active;
+
+    /**
+     * Serializes the dispatch loop so that only one thread assigns jobs to slots at any time.
+     */
+    @NonNull private final AtomicInteger wip;
+
+    @Nullable private final AdaptiveConcurrencyController concurrencyController;
+
+    /**
+     * Pending retries waiting for their backoff delay to elapse.
+     */
+    @NonNull private final CompositeSubscription retries;
+
+    @Nullable private volatile RetryPolicy retryPolicy;
+    @Nullable private volatile Scheduler retryScheduler;
+
+    @Nullable private volatile CircuitBreaker circuitBreaker;
+    @Nullable private Subscription circuitBreakerSubscription;
+
+    @Nullable private volatile BatchPolicy batchPolicy;
+
+    private int maxConcurrentUploads;
+
+    /**
+     * Number of slots currently running an upload.
+     * Guarded by {@code this}.
+     */
+    private int busySlots;
+
+    /**
+     * Number of running slots started as probes while the circuit breaker was half open.
+     * Guarded by {@code this}.
+     */
+    private int probeSlots;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private boolean paused;
+
+    /**
+     * Maximum number of jobs held in the pending queue or {@link #UNBOUNDED_PENDING_JOBS}.
+     * Guarded by {@code this}.
+     */
+    private int maxPendingJobs = UNBOUNDED_PENDING_JOBS;
+
+    /**
+     * Set when a submitted job was left in the store because the pending queue was full.
+     * Guarded by {@code this}.
+     */
+    private boolean spilled;
+
+    /**
+     * Ids of jobs whose slot was released while the pending queue is being refilled. The store
+     * may still report them as queued, so they must not be put back in the queue.
+     * Null while no refill is running. Guarded by {@code this}.
+     */
+    @Nullable private Set<String> releasedDuringRefill;
+
+    @Nullable private Subscription refillSubscription;
+
+    /**
+     * Delay of the last refill retry or 0 if the last refill took jobs from the store.
+     * Guarded by {@code this}.
+     */
+    private long refillBackoffMillis;
+
+    @Nullable private Subscription refillRetry;
+
+    @NonNull private volatile Scheduler refillScheduler = Schedulers.computation();
+
+    UploadExecutor(@NonNull UploadInteractor uploadInteractor,
+            @NonNull UploadErrorAdapter errorAdapter, int maxConcurrentUploads) {
+        this(uploadInteractor, errorAdapter, maxConcurrentUploads, new UploadQueue());
+    }
+
+    UploadExecutor(@NonNull UploadInteractor uploadInteractor,
+            @NonNull UploadErrorAdapter errorAdapter, int maxConcurrentUploads,
+            @NonNull UploadQueue pending) {
+        this(uploadInteractor, errorAdapter, maxConcurrentUploads, pending, null);
+    }
+
+    UploadExecutor(@NonNull UploadInteractor uploadInteractor,
+            @NonNull UploadErrorAdapter errorAdapter, @NonNull UploadQueue pending,
+            @NonNull AdaptiveConcurrencyController concurrencyController) {
+        this(uploadInteractor, errorAdapter, concurrencyController.limit(), pending,
+                concurrencyController);
+    }
+
+    private UploadExecutor(@NonNull UploadInteractor uploadInteractor,
+            @NonNull UploadErrorAdapter errorAdapter, int maxConcurrentUploads,
+            @NonNull UploadQueue pending,
+            @Nullable AdaptiveConcurrencyController concurrencyController) {
+        if (maxConcurrentUploads < 1) {
+            throw new IllegalArgumentException("Must allow at least one concurrent upload");
+        }
+        this.uploadInteractor = uploadInteractor;
+        this.errorAdapter = errorAdapter;
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        this.pending = pending;
+        this.concurrencyController = concurrencyController;
+
+        statusSubject = PublishSubject.<Status>create().toSerialized();
+        activeCountSubject = PublishSubject.<Integer>create().toSerialized();
+        retries = new CompositeSubscription();
+        active = new HashMap<>();
+        wip = new AtomicInteger();
+    }
+
+    /**
+     * Status updates emitted by the uploads run by this executor.
+     *
+     * @return A stream of {@link Status} items
+     */
+    @NonNull
+    Observable<Status> status() {
+        return statusSubject.asObservable();
+    }
+
+    /**
+     * Number of slots running an upload, emitted after uploads have been dispatched or slots have
+     * been released.
+     *
+     * @return A stream of {@link #activeCount()} values
+     */
+    @NonNull
+    Observable<Integer> activeCountChanges() {
+        return activeCountSubject.asObservable();
+    }
+
+    /**
+     * Submits the job for upload. The upload starts immediately if a slot is available otherwise
+     * it is started once a slot is released. Submitting a job that is already pending or running
+     * has no effect.
+     *
+     * @param job the job to upload
+     */
+    void submit(@NonNull Job job) {
+        synchronized (this) {
+            if (active.containsKey(job.id()) || !offerPending(job)) {
+                return;
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Submits several jobs at once. Unlike submitting them one by one, all jobs are pending by the
+     * time uploads are dispatched, which allows them to be uploaded in the same batch.
+     *
+     * @param jobs the jobs to upload
+     */
+    void submitAll(@NonNull List<Job> jobs) {
+        synchronized (this) {
+            for (Job job : jobs) {
+                if (!active.containsKey(job.id())) {
+                    offerPending(job);
+                }
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Bounds the number of jobs held in the pending queue. Jobs submitted while the queue is full
+     * are read back from the store once the queue has drained to half of its capacity, so the
+     * memory used by queued jobs does not grow with the backlog. Jobs must have been persisted
+     * as {@link StatusType#QUEUED} before they are submitted.
+     *
+     * @param maxPendingJobs maximum number of pending jobs or {@link #UNBOUNDED_PENDING_JOBS}
+     */
+    void setMaxPendingJobs(int maxPendingJobs) {
+        setMaxPendingJobs(maxPendingJobs, Schedulers.computation());
+    }
+
+    /**
+     * @param refillScheduler scheduler a refill which failed is retried on
+     */
+    @VisibleForTesting
+    void setMaxPendingJobs(int maxPendingJobs, @NonNull Scheduler refillScheduler) {
+        if (maxPendingJobs < 0) {
+            throw new IllegalArgumentException("Pending jobs limit must not be negative");
+        }
+        this.refillScheduler = refillScheduler;
+        synchronized (this) {
+            this.maxPendingJobs = maxPendingJobs;
+        }
+        drain();
+    }
+
+    /**
+     * Stops uploading the job. A pending job is removed from the queue. A running upload is
+     * unsubscribed and its slot is released right away without publishing any further status of
+     * the job; the other jobs of its batch are put back in the pending queue and uploaded again.
+     *
+     * @param jobId id of the job to stop
+     * @return {@link Boolean#TRUE} if the job was pending or running and {@link Boolean#FALSE}
+     * otherwise
+     */
+    boolean cancel(@NonNull String jobId) {
+        final Slot slot;
+        synchronized (this) {
+            if (pending.remove(jobId)) {
+                return true;
+            }
+            slot = active.get(jobId);
+            if (slot == null || !free(slot)) {
+                return false;
+            }
+        }
+
+        slot.subscription.unsubscribe();
+        synchronized (this) {
+            for (Job job : slot.jobs) {
+                if (!job.id().equals(jobId)) {
+                    pending.offer(job);
+                }
+            }
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Stops starting uploads. Running uploads continue; submitted jobs wait in the pending queue
+     * until {@link #resume()} is called.
+     */
+    synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Starts uploading pending jobs again after {@link #pause()}.
+     */
+    void resume() {
+        synchronized (this) {
+            paused = false;
+        }
+        drain();
+    }
+
+    synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Stops all running uploads and puts their jobs back in the pending queue. A
+     * {@link StatusType#QUEUED} status is published for each of the jobs. Should be called while
+     * the executor is paused, otherwise the jobs are started again right away.
+     */
+    void interrupt() {
+        final Set<Slot> slots;
+        synchronized (this) {
+            // the jobs of a batch share the same slot
+            slots = new HashSet<>(active.values());
+            for (Slot slot : slots) {
+                free(slot);
+            }
+        }
+
+        for (Slot slot : slots) {
+            slot.subscription.unsubscribe();
+        }
+        synchronized (this) {
+            for (Slot slot : slots) {
+                for (Job job : slot.jobs) {
+                    pending.offer(job);
+                }
+            }
+        }
+        for (Slot slot : slots) {
+            for (Job job : slot.jobs) {
+                statusSubject.onNext(Status.createQueued(job.id()));
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Pauses the executor for good and releases its subscriptions, including retries waiting for
+     * their backoff delay.
+     */
+    void shutdown() {
+        pause();
+        retries.unsubscribe();
+        synchronized (this) {
+            if (refillSubscription != null) {
+                refillSubscription.unsubscribe();
+            }
+            if (refillRetry != null) {
+                refillRetry.unsubscribe();
+            }
+        }
+        if (circuitBreakerSubscription != null) {
+            circuitBreakerSubscription.unsubscribe();
+        }
+        activeCountSubject.onCompleted();
+    }
+
+    /**
+     * Enables uploading small pending jobs together in a single request.
+     *
+     * @param batchPolicy defines which jobs are uploaded together
+     */
+    void setBatchPolicy(@NonNull BatchPolicy batchPolicy) {
+        this.batchPolicy = batchPolicy;
+    }
+
+    @Nullable
+    BatchPolicy batchPolicy() {
+        return batchPolicy;
+    }
+
+    /**
+     * Enables automatic retries of failed uploads.
+     *
+     * @param retryPolicy defines how many times and how long after a failure a job is retried
+     * @param retryScheduler scheduler used to wait for the backoff delay
+     */
+    void setRetryPolicy(@NonNull RetryPolicy retryPolicy, @NonNull Scheduler retryScheduler) {
+        this.retryScheduler = retryScheduler;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Pauses dispatching uploads while the breaker is open. The breaker must also be used by the
+     * {@link com.jagsaund.rxuploader.store.UploadService} for it to see the outcome of uploads.
+     *
+     * @param circuitBreaker breaker guarding the upload service
+     */
+    void setCircuitBreaker(@NonNull CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        if (circuitBreakerSubscription != null) {
+            circuitBreakerSubscription.unsubscribe();
+        }
+        // resume dispatching as soon as the breaker lets calls through again
+        circuitBreakerSubscription = circuitBreaker.state()
+                .filter(state -> state != CircuitBreaker.State.OPEN)
+                .subscribe(state -> drain());
+    }
+
+    /**
+     * State changes of the circuit breaker, if one is set.
+     *
+     * @return A stream of {@link CircuitBreaker.State} items or an empty stream
+     */
+    @NonNull
+    Observable<CircuitBreaker.State> circuitBreakerState() {
+        final CircuitBreaker breaker = circuitBreaker;
+        return breaker != null ? breaker.state() : Observable.empty();
+    }
+
+    /**
+     * @return the number of slots currently running an upload
+     */
+    synchronized int activeCount() {
+        return busySlots;
+    }
+
+    /**
+     * @return the number of jobs waiting for a free slot
+     */
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    synchronized int maxConcurrentUploads() {
+        return maxConcurrentUploads;
+    }
+
+    /**
+     * Changes the number of slots. Growing the number of slots dispatches pending jobs right away.
+     * Shrinking it lets running uploads finish; no new upload is started until the number of
+     * running uploads drops below the new limit.
+     *
+     * @param maxConcurrentUploads number of uploads that may run at the same time
+     */
+    void setMaxConcurrentUploads(int maxConcurrentUploads) {
+        if (maxConcurrentUploads < 1) {
+            throw new IllegalArgumentException("Must allow at least one concurrent upload");
+        }
+        synchronized (this) {
+            this.maxConcurrentUploads = maxConcurrentUploads;
+        }
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        for (;;) {
+            for (;;) {
+                // checked outside of the lock as the breaker notifies state changes while holding
+                // its own lock
+                final CircuitBreaker breaker = circuitBreaker;
+                final CircuitBreaker.State state =
+                        breaker != null ? breaker.getState() : CircuitBreaker.State.CLOSED;
+                if (state == CircuitBreaker.State.OPEN) {
+                    break;
+                }
+
+                final Slot slot;
+                synchronized (this) {
+                    if (paused || busySlots >= maxConcurrentUploads || pending.isEmpty()) {
+                        break;
+                    }
+                    // the breaker only reserves a probe once the upload calls the service, so
+                    // the executor reserves the probes itself; otherwise every free slot would
+                    // start an upload which the breaker then rejects
+                    final boolean probe = state == CircuitBreaker.State.HALF_OPEN;
+                    if (probe && probeSlots >= breaker.getProbes()) {
+                        break;
+                    }
+                    slot = new Slot(pollBatch());
+                    slot.probe = probe;
+                    if (probe) {
+                        probeSlots++;
+                    }
+                    busySlots++;
+                    for (Job job : slot.jobs) {
+                        active.put(job.id(), slot);
+                    }
+                }
+                // subscribe outside of the lock; the upload may complete synchronously in which
+                // case the slot has already been released by the time set is called
+                slot.subscription.set(slot.jobs.size() == 1 ? start(slot) : startBatch(slot));
+            }
+
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+        activeCountSubject.onNext(activeCount());
+
+        final int capacity;
+        final int scheduled;
+        synchronized (this) {
+            if (paused || !spilled || releasedDuringRefill != null
+                    || pending.size() > maxPendingJobs / 2) {
+                return;
+            }
+            capacity = maxPendingJobs - pending.size();
+            scheduled = pending.size() + active.size();
+            spilled = false;
+            releasedDuringRefill = new HashSet<>();
+        }
+        refill(capacity, scheduled);
+    }
+
+    /**
+     * Adds the job to the pending queue unless the queue is full, in which case the job is left
+     * in the store. Must be called while holding the lock.
+     *
+     * @return {@link Boolean#TRUE} if the job was added and {@link Boolean#FALSE} otherwise
+     */
+    private boolean offerPending(@NonNull Job job) {
+        if (maxPendingJobs != UNBOUNDED_PENDING_JOBS && pending.size() >= maxPendingJobs) {
+            if (!pending.contains(job.id())) {
+                spilled = true;
+            }
+            return false;
+        }
+        return pending.offer(job);
+    }
+
+    /**
+     * Reads a page of the queued jobs of the highest priority from the store. The page is large
+     * enough to hold {@code capacity} jobs besides the {@code scheduled} jobs which are already
+     * pending or running, so no more than that is read regardless of the size of the backlog.
+     */
+    private void refill(int capacity, int scheduled) {
+        final int limit = capacity + scheduled;
+        final Subscription subscription = uploadInteractor
+                .getByStatus(limit, StatusType.QUEUED)
+                .toList()
+                .subscribe(jobs -> onRefilled(jobs, capacity, jobs.size() == limit),
+                        error -> onRefilled(Collections.emptyList(), capacity, true));
+        synchronized (this) {
+            refillSubscription = subscription;
+        }
+    }
+
+    /**
+     * Puts up to {@code capacity} of the jobs read from the store in the pending queue. If the
+     * store may hold further queued jobs but none could be taken, eg. because reading the store
+     * failed, the refill is retried after a backoff delay as no released slot may be left to
+     * trigger it.
+     *
+     * @param jobs queued jobs read from the store, highest priority first
+     * @param more {@link Boolean#TRUE} if the store may hold further queued jobs
+     */
+    private void onRefilled(@NonNull List<Job> jobs, int capacity, boolean more) {
+        final long retryDelayMillis;
+        synchronized (this) {
+            final Set<String> released = releasedDuringRefill;
+            releasedDuringRefill = null;
+            boolean left = more;
+            int taken = 0;
+            for (Job job : jobs) {
+                if (active.containsKey(job.id()) || pending.contains(job.id())
+                        || released.contains(job.id())) {
+                    continue;
+                }
+                if (taken == capacity) {
+                    left = true;
+                    break;
+                }
+                pending.offer(job);
+                taken++;
+            }
+            spilled |= left;
+
+            if (taken > 0 || !spilled) {
+                refillBackoffMillis = 0;
+                retryDelayMillis = 0;
+            } else {
+                refillBackoffMillis = refillBackoffMillis == 0
+                        ? MIN_REFILL_BACKOFF_MILLIS
+                        : Math.min(refillBackoffMillis * 2, MAX_REFILL_BACKOFF_MILLIS);
+                retryDelayMillis = refillBackoffMillis;
+            }
+        }
+
+        if (retryDelayMillis == 0) {
+            drain();
+            return;
+        }
+        final Subscription retry = Observable
+                .timer(retryDelayMillis, TimeUnit.MILLISECONDS, refillScheduler)
+                .subscribe(__ -> drain());
+        synchronized (this) {
+            if (refillRetry != null) {
+                refillRetry.unsubscribe();
+            }
+            refillRetry = retry;
+        }
+    }
+
+    @NonNull
+    private Subscription start(@NonNull Slot slot) {
+        final Job job = slot.jobs.get(0);
+        final String jobId = job.id();
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicInteger retryAttempts = new AtomicInteger();
+        final AtomicBoolean rejected = new AtomicBoolean();
+        return uploadInteractor
+                .upload(jobId)
+                .doOnNext(status -> onProgress(job, status, bytesSent))
+                .onErrorResumeNext(error -> {
+                    if (error instanceof CircuitBreakerOpenException) {
+                        rejected.set(true);
+                        return Observable.empty();
+                    }
+
+                    final ErrorType errorType = onUploadError(error);
+                    return fail(jobId, error, errorType, retryAttempts);
+                })
+                .doAfterTerminate(() -> {
+                    if (rejected.get()) {
+                        // the upload never started, wait for the breaker to let calls through
+                        requeue(slot);
+                        return;
+                    }
+
+                    // retry once the slot is released so the queued job is not rejected as a
+                    // duplicate of the running one
+                    if (release(slot) && retryAttempts.get() > 0) {
+                        scheduleRetry(jobId, retryAttempts.get());
+                    }
+                })
+                .subscribe(statusSubject::onNext);
+    }
+
+    @NonNull
+    private Subscription startBatch(@NonNull Slot slot) {
+        final List<Job> jobs = slot.jobs;
+        final List<String> jobIds = new ArrayList<>(jobs.size());
+        final Map<String, Job> jobsById = new HashMap<>();
+        final Map<String, AtomicLong> bytesSent = new HashMap<>();
+        final Map<String, AtomicInteger> retryAttempts = new HashMap<>();
+        for (Job job : jobs) {
+            jobIds.add(job.id());
+            jobsById.put(job.id(), job);
+            bytesSent.put(job.id(), new AtomicLong());
+            retryAttempts.put(job.id(), new AtomicInteger());
+        }
+
+        final AtomicBoolean rejected = new AtomicBoolean();
+        return uploadInteractor
+                .uploadBatch(jobIds)
+                .doOnNext(status -> {
+                    final Job job = jobsById.get(status.id());
+                    if (job != null) {
+                        onProgress(job, status, bytesSent.get(status.id()));
+                    }
+                })
+                .onErrorResumeNext(error -> {
+                    if (error instanceof CircuitBreakerOpenException) {
+                        rejected.set(true);
+                        return Observable.empty();
+                    }
+
+                    // the request failed as a whole so every job of the batch has failed
+                    final ErrorType errorType = onUploadError(error);
+                    return Observable.from(jobIds)
+                            .concatMap(jobId -> fail(jobId, error, errorType,
+                                    retryAttempts.get(jobId)));
+                })
+                .doAfterTerminate(() -> {
+                    if (rejected.get()) {
+                        requeue(slot);
+                        return;
+                    }
+
+                    if (!release(slot)) {
+                        return;
+                    }
+                    for (String jobId : jobIds) {
+                        final int attempts = retryAttempts.get(jobId).get();
+                        if (attempts > 0) {
+                            scheduleRetry(jobId, attempts);
+                        }
+                    }
+                })
+                .subscribe(statusSubject::onNext);
+    }
+
+    /**
+     * Takes the next job from the pending queue along with the jobs which can be uploaded in the
+     * same batch. Must be called while holding the lock.
+     *
+     * @return the jobs to upload in the next slot, at least one
+     */
+    @NonNull
+    private List<Job> pollBatch() {
+        final Job first = pending.poll();
+        final BatchPolicy policy = batchPolicy;
+        if (policy == null || !policy.isBatchable(first)) {
+            return Collections.singletonList(first);
+        }
+
+        final List<Job> jobs = new ArrayList<>(policy.getMaxFiles());
+        jobs.add(first);
+        long bytes = first.size();
+
+        Job next;
+        while (jobs.size() < policy.getMaxFiles()
+                && (next = pending.peek()) != null
+                && policy.isBatchable(next)
+                && bytes + next.size() <= policy.getMaxBatchBytes()) {
+            jobs.add(pending.poll());
+            bytes += next.size();
+        }
+        return jobs;
+    }
+
+    /**
+     * Reports a failed upload to the concurrency controller.
+     *
+     * @param error the cause of the failure
+     * @return the cause of the failure mapped by the {@link UploadErrorAdapter}
+     */
+    @NonNull
+    private ErrorType onUploadError(@NonNull Throwable error) {
+        final ErrorType errorType = errorAdapter.fromThrowable(error);
+        if (concurrencyController != null) {
+            applyLimit(concurrencyController.onFailure(error, errorType));
+        }
+        return errorType;
+    }
+
+    /**
+     * Creates the failure of a job and records the failed attempt if the job may be retried.
+     *
+     * @param retryAttempts receives the number of failed attempts if a retry should be scheduled
+     * @return the failed status of the job
+     */
+    @NonNull
+    private Observable<Status> fail(@NonNull String jobId, @NonNull Throwable error,
+            @NonNull ErrorType errorType, @NonNull AtomicInteger retryAttempts) {
+        final Status failed = Status.createFailed(jobId, errorType);
+        final RetryPolicy policy = retryPolicy;
+        if (policy == null || !errorAdapter.canRetry(error)) {
+            return Observable.just(failed);
+        }
+        // record the attempt before publishing the failure so the status update
+        // which persists the failure does not race with this write
+        return recordAttempt(jobId)
+                .map(attempts -> {
+                    if (policy.canRetry(attempts)) {
+                        retryAttempts.set(attempts);
+                    }
+                    return failed;
+                })
+                .onErrorReturn(e -> failed)
+                .defaultIfEmpty(failed);
+    }
+
+    /**
+     * Increments the number of failed attempts persisted with the job.
+     *
+     * @param jobId id of the job which failed
+     * @return the updated number of failed attempts, empty if the job no longer exists
+     */
+    @NonNull
+    private Observable<Integer> recordAttempt(@NonNull String jobId) {
+        return uploadInteractor
+                .get(jobId)
+                .filter(job -> !Job.isInvalid(job))
+                .flatMap(job -> uploadInteractor.save(job.withAttempts(job.attempts() + 1)))
+                .map(Job::attempts);
+    }
+
+    private void scheduleRetry(@NonNull String jobId, int failedAttempts) {
+        final RetryPolicy policy = retryPolicy;
+        final Scheduler scheduler = retryScheduler;
+        if (policy == null || scheduler == null) {
+            return;
+        }
+
+        final long delay = policy.delayMillis(failedAttempts);
+        final Observable<Status> retry = Observable
+                .timer(delay, TimeUnit.MILLISECONDS, scheduler)
+                .flatMap(__ -> uploadInteractor.get(jobId))
+                // the failure may not have been persisted yet if the delay was very short; any
+                // other status means the job was changed in the mean time and must not be retried
+                .filter(job -> {
+                    final StatusType statusType = job.status().statusType();
+                    return statusType == StatusType.FAILED || statusType == StatusType.QUEUED;
+                })
+                .map(job -> Status.createQueued(job.id()));
+
+        final MultipleAssignmentSubscription subscription = new MultipleAssignmentSubscription();
+        retries.add(subscription);
+        subscription.set(retry
+                .doAfterTerminate(() -> retries.remove(subscription))
+                .subscribe(statusSubject::onNext, Actions.empty()));
+    }
+
+    private void onProgress(@NonNull Job job, @NonNull Status status,
+            @NonNull AtomicLong bytesSent) {
+        if (concurrencyController == null) {
+            return;
+        }
+
+        final long bytes;
+        if (status.statusType() == StatusType.SENDING) {
+            bytes = status.totalBytes() > 0
+                    ? status.bytesSent()
+                    : job.size() * status.progress() / 100;
+        } else if (status.statusType() == StatusType.COMPLETED) {
+            bytes = job.size();
+        } else {
+            return;
+        }
+
+        final long delta = bytes - bytesSent.getAndSet(bytes);
+        if (delta > 0) {
+            applyLimit(concurrencyController.onBytesSent(delta, pendingCount()));
+        }
+    }
+
+    private void applyLimit(int limit) {
+        if (limit != maxConcurrentUploads()) {
+            setMaxConcurrentUploads(limit);
+        }
+    }
+
+    /**
+     * Releases the slot of uploads which have terminated.
+     *
+     * @return {@link Boolean#TRUE} if the slot was released and {@link Boolean#FALSE} if it had
+     * already been released because the upload was cancelled
+     */
+    private boolean release(@NonNull Slot slot) {
+        synchronized (this) {
+            if (!free(slot)) {
+                return false;
+            }
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Releases the slot of uploads which never started and puts their jobs back in the pending
+     * queue.
+     */
+    private void requeue(@NonNull Slot slot) {
+        synchronized (this) {
+            if (!free(slot)) {
+                return;
+            }
+            for (Job job : slot.jobs) {
+                pending.offer(job);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Removes the jobs of the slot from the active jobs and makes the slot available for the next
+     * upload. Must be called while holding the lock.
+     *
+     * @return {@link Boolean#TRUE} if the slot was freed and {@link Boolean#FALSE} if it had
+     * already been freed
+     */
+    private boolean free(@NonNull Slot slot) {
+        if (slot.released) {
+            return false;
+        }
+        slot.released = true;
+        for (Job job : slot.jobs) {
+            active.remove(job.id());
+            if (releasedDuringRefill != null) {
+                releasedDuringRefill.add(job.id());
+            }
+        }
+        busySlots--;
+        if (slot.probe) {
+            probeSlots--;
+        }
+        return true;
+    }
+
+    /**
+     * A slot running the upload of a single job or a batch of jobs.
+     */
+    private static class Slot {
+        @NonNull final List<Job> jobs;
+        @NonNull final MultipleAssignmentSubscription subscription;
+
+        /**
+         * Guarded by the lock of the executor.
+         */
+        boolean released;
+
+        /**
+         * Whether the slot was started as a probe of the half open circuit breaker.
+         * Guarded by the lock of the executor.
+         */
+        boolean probe;
+
+        Slot(@NonNull List<Job> jobs) {
+            this.jobs = jobs;
+            subscription = new MultipleAssignmentSubscription();
+        }
+    }
+}
@@ -3,6 +3,9 @@ package com.jagsaund.rxuploader;
 import android.support.annotation.NonNull;
 import com.jagsaund.rxuploader.job.Job;
 import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import java.util.List;
+import java.util.Map;
 import rx.Observable;
 
 public interface UploadInteractor {
@@ -12,6 +15,15 @@ public interface UploadInteractor {
     @NonNull
     Observable<Job> getAll();
 
+    @NonNull
+    Observable<Job> getByStatus(@NonNull StatusType... statusTypes);
+
+    @NonNull
+    Observable<Job> getByStatus(int limit, @NonNull StatusType... statusTypes);
+
+    @NonNull
+    Observable<Map<StatusType, Integer>> countByStatus();
+
     @NonNull
     Observable<Job> save(@NonNull Job job);
 
@@ -23,4 +35,13 @@ public interface UploadInteractor {
 
     @NonNull
     Observable<Status> upload(@NonNull String id);
-}
\ No newline at end of file
+
+    @NonNull
+    Observable<Status> uploadBatch(@NonNull List<String> ids);
+
+    @NonNull
+    Observable<Boolean> flush();
+
+    @NonNull
+    Observable<Boolean> close();
+}
@@ -2,11 +2,18 @@ package com.jagsaund.rxuploader;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
+import com.jagsaund.rxuploader.job.ErrorType;
 import com.jagsaund.rxuploader.job.Job;
 import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
 import com.jagsaund.rxuploader.store.UploadDataStore;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import rx.Observable;
 import rx.Scheduler;
 import rx.schedulers.Schedulers;
@@ -45,6 +52,24 @@ class UploadInteractorImpl implements UploadInteractor {
         return uploadDataStore.getAll();
     }
 
+    @NonNull
+    @Override
+    public Observable<Job> getByStatus(@NonNull StatusType... statusTypes) {
+        return uploadDataStore.getByStatus(statusTypes);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> getByStatus(int limit, @NonNull StatusType... statusTypes) {
+        return uploadDataStore.getByStatus(limit, statusTypes);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Map<StatusType, Integer>> countByStatus() {
+        return uploadDataStore.countByStatus();
+    }
+
     @NonNull
     @Override
     public Observable<Job> save(@NonNull Job job) {
@@ -63,6 +88,18 @@ class UploadInteractorImpl implements UploadInteractor {
         return uploadDataStore.delete(id);
     }
 
+    @NonNull
+    @Override
+    public Observable<Boolean> flush() {
+        return uploadDataStore.flush();
+    }
+
+    @NonNull
+    @Override
+    public Observable<Boolean> close() {
+        return uploadDataStore.close();
+    }
+
     @NonNull
     @Override
     public Observable<Status> upload(@NonNull String id) {
@@ -70,14 +107,64 @@ class UploadInteractorImpl implements UploadInteractor {
                 .filter(job -> !Job.isInvalid(job))
                 .observeOn(networkScheduler)
                 .flatMap(job -> {
+                    if (isStopped(job)) {
+                        // paused or cancelled before the upload started
+                        return Observable.just(job.status());
+                    }
                     final File file = new File(job.filepath());
                     if (!file.exists()) {
                         return Observable.error(new FileNotFoundException());
                     }
-                    return uploader
-                            .upload(job, file)
-                            .distinctUntilChanged();
+                    // progress is rate limited by the progress sampler of the uploader; every
+                    // update carries new byte counts even if the percentage has not changed
+                    return uploader.upload(job, file);
                 })
                 .defaultIfEmpty(Status.createInvalid(id));
     }
+
+    @NonNull
+    @Override
+    public Observable<Status> uploadBatch(@NonNull List<String> ids) {
+        return Observable.from(ids)
+                .concatMap(this::get)
+                .filter(job -> !Job.isInvalid(job))
+                .toList()
+                .observeOn(networkScheduler)
+                .flatMap(jobs -> {
+                    final List<Status> skipped = new ArrayList<>();
+                    final List<Job> uploads = new ArrayList<>(jobs.size());
+                    final List<File> files = new ArrayList<>(jobs.size());
+                    final Set<String> found = new HashSet<>(jobs.size());
+                    for (Job job : jobs) {
+                        found.add(job.id());
+                        if (isStopped(job)) {
+                            skipped.add(job.status());
+                            continue;
+                        }
+                        final File file = new File(job.filepath());
+                        if (file.exists()) {
+                            uploads.add(job);
+                            files.add(file);
+                        } else {
+                            // a missing file must not fail the other files of the batch
+                            skipped.add(Status.createFailed(job.id(), ErrorType.FILE_NOT_FOUND));
+                        }
+                    }
+                    for (String id : ids) {
+                        if (!found.contains(id)) {
+                            skipped.add(Status.createInvalid(id));
+                        }
+                    }
+
+                    final Observable<Status> upload = uploads.isEmpty()
+                            ? Observable.empty()
+                            : uploader.uploadBatch(uploads, files);
+                    return Observable.from(skipped).concatWith(upload);
+                });
+    }
+
+    private static boolean isStopped(@NonNull Job job) {
+        final StatusType statusType = job.status().statusType();
+        return statusType == StatusType.PAUSED || statusType == StatusType.CANCELLED;
+    }
 }
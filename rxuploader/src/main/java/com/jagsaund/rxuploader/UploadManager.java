@@ -2,18 +2,38 @@ package com.jagsaund.rxuploader;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 import com.jagsaund.rxuploader.job.ErrorType;
 import com.jagsaund.rxuploader.job.Job;
 import com.jagsaund.rxuploader.job.Status;
 import com.jagsaund.rxuploader.job.StatusType;
+import com.jagsaund.rxuploader.rx.BufferPool;
+import com.jagsaund.rxuploader.rx.Compression;
+import com.jagsaund.rxuploader.rx.FileChannelRequestBody;
+import com.jagsaund.rxuploader.rx.ProgressSampler;
+import com.jagsaund.rxuploader.rx.RxRequestBody;
+import com.jagsaund.rxuploader.store.BatchUploadService;
+import com.jagsaund.rxuploader.store.CachingUploadDataStore;
+import com.jagsaund.rxuploader.store.ChunkedUploadService;
+import com.jagsaund.rxuploader.store.DigestIndex;
+import com.jagsaund.rxuploader.store.MultipartUploadService;
+import com.jagsaund.rxuploader.store.SimpleDigestIndex;
 import com.jagsaund.rxuploader.store.SimpleUploadDataStore;
+import com.jagsaund.rxuploader.store.SqliteUploadDataStore;
 import com.jagsaund.rxuploader.store.UploadDataStore;
 import com.jagsaund.rxuploader.store.UploadService;
+import com.jagsaund.rxuploader.throttle.BandwidthLimiter;
 import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import rx.Observable;
+import rx.Scheduler;
 import rx.functions.Actions;
 import rx.observables.ConnectableObservable;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
 import rx.subjects.PublishSubject;
 import rx.subjects.Subject;
 import rx.subscriptions.CompositeSubscription;
@@ -26,6 +46,9 @@ import rx.subscriptions.CompositeSubscription;
  * Constructing a new {@linkplain UploadManager} is done by using the {@linkplain Builder}.
  * <br/>
  * A new {@linkplain Job} can be executed by using the {@code enqueue} method.
+ * <br/>
+ * Uploads can be paused as a whole with {@code pauseAll} and the manager is torn down with
+ * {@code shutdown}.
  */
 public class UploadManager {
     @NonNull private final UploadInteractor uploadInteractor;
@@ -46,67 +69,114 @@ public class UploadManager {
      */
     @NonNull private final Observable<Status> statusObservable;
 
+    /**
+     * Persists status updates; completes once the {@code statusSubject} has completed and the last
+     * status has been persisted.
+     */
+    @NonNull private final ConnectableObservable<Job> jobUpdates;
+
     @NonNull private final CompositeSubscription subscriptions;
 
+    @NonNull private final UploadExecutor uploadExecutor;
+
+    @NonNull private final BandwidthLimiter bandwidthLimiter;
+
+    @NonNull private final ProgressReporter progressReporter;
+
+    @Nullable private final Deduplicator deduplicator;
+
+    /**
+     * Consumes from the {@code progressReporter} ready to be shared with clients.
+     */
+    @NonNull private final Observable<UploadProgress> progressObservable;
+
+    /**
+     * Outcome of {@link #shutdown(long, TimeUnit)}, null until it is called.
+     * Guarded by {@code this}.
+     */
+    @Nullable private AsyncSubject<Boolean> shutdownResult;
+
     @VisibleForTesting
     UploadManager(@NonNull UploadInteractor uploadInteractor,
             @NonNull UploadErrorAdapter errorAdapter, @NonNull Subject<Job, Job> jobSubject,
             @NonNull Subject<Status, Status> statusSubject, boolean deleteRecordOnComplete) {
+        this(uploadInteractor, errorAdapter,
+                new UploadExecutor(uploadInteractor, errorAdapter,
+                        UploadExecutor.DEFAULT_MAX_CONCURRENT_UPLOADS), new BandwidthLimiter(),
+                null, jobSubject, statusSubject, deleteRecordOnComplete);
+    }
+
+    @VisibleForTesting
+    UploadManager(@NonNull UploadInteractor uploadInteractor,
+            @NonNull UploadErrorAdapter errorAdapter, @NonNull UploadExecutor uploadExecutor,
+            @NonNull BandwidthLimiter bandwidthLimiter, @Nullable Deduplicator deduplicator,
+            @NonNull Subject<Job, Job> jobSubject, @NonNull Subject<Status, Status> statusSubject,
+            boolean deleteRecordOnComplete) {
+        this(uploadInteractor, errorAdapter, uploadExecutor, bandwidthLimiter, deduplicator,
+                new ProgressReporter(), jobSubject, statusSubject, deleteRecordOnComplete);
+    }
+
+    @VisibleForTesting
+    UploadManager(@NonNull UploadInteractor uploadInteractor,
+            @NonNull UploadErrorAdapter errorAdapter, @NonNull UploadExecutor uploadExecutor,
+            @NonNull BandwidthLimiter bandwidthLimiter, @Nullable Deduplicator deduplicator,
+            @NonNull ProgressReporter progressReporter, @NonNull Subject<Job, Job> jobSubject,
+            @NonNull Subject<Status, Status> statusSubject, boolean deleteRecordOnComplete) {
         this.jobSubject = jobSubject;
         this.statusSubject = statusSubject;
 
         this.uploadInteractor = uploadInteractor;
+        this.uploadExecutor = uploadExecutor;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.progressReporter = progressReporter;
+        this.deduplicator = deduplicator;
 
         subscriptions = new CompositeSubscription();
 
         // repair any dangling uploads
         // eg. upload was previously in sending state and application terminated before
         // upload state could be changed
-        final Observable<Job> repair = uploadInteractor.getAll()
-                .filter(job -> job.status().statusType() == StatusType.SENDING)
+        // chunked uploads with an upload session resume from the last acknowledged chunk
+        final Observable<Job> repair = uploadInteractor
+                .getByStatus(StatusType.SENDING, StatusType.QUEUED)
+                .filter(job -> job.status().statusType() == StatusType.SENDING
+                        || isResumable(job))
                 .flatMap(job -> {
-                    final Status status = Status.createFailed(job.id(), ErrorType.TERMINATED);
+                    final Status status = job.uploadId() != null
+                            ? Status.createQueued(job.id())
+                            : Status.createFailed(job.id(), ErrorType.TERMINATED);
                     return uploadInteractor.update(status);
                 });
 
         // read items from the job subject
+        // cache the file size with the job so scheduling never has to touch the file system
+        // resolve duplicate content when deduplication is enabled
         // save them to the data store
         // enqueue items in to the status subject for processing
-        final Observable<Status> jobQueue = jobSubject.asObservable()
+        final Observable<Job> enqueuedJobs = jobSubject.asObservable()
                 .filter(job -> job.status().statusType() == StatusType.QUEUED)
-                .flatMap(job -> uploadInteractor
-                        .save(job)
-                        .onErrorResumeNext(error -> {
-                            final String jobId = job.id();
-                            final ErrorType errorType = errorAdapter.fromThrowable(error);
-                            final Status status = Status.createFailed(jobId, errorType);
-                            return Observable.just(job.withStatus(status));
-                        }))
+                .map(UploadManager::withFileSize);
+        final Observable<Status> jobQueue = (deduplicator != null
+                // digests are computed concurrently but jobs are resolved and saved one at a
+                // time so a job is persisted before the next job with the same content looks
+                // up its digest
+                ? enqueuedJobs.flatMap(deduplicator::hash).concatMap(this::resolveAndSave)
+                : enqueuedJobs.flatMap(this::resolveAndSave))
                 .map(Job::status);
 
         // update the status of incoming status items read from the status subject
-        final ConnectableObservable<Status> statusUpdates = statusSubject
+        jobUpdates = statusSubject
                 .asObservable()
                 .filter(this::canUpdateStatus)
                 .flatMap(uploadInteractor::update)
-                .map(Job::status)
                 .publish();
 
-        // consume items that have status type of queued and upload them
-        // TODO Parameterize upload concurrency. Currently limiting to one upload at a time.
-        final Observable<Status> uploadJobs = statusUpdates
-                .filter(status -> status.statusType() == StatusType.QUEUED)
-                .onBackpressureBuffer()
-                .flatMap(status -> {
-                    final String jobId = status.id();
-                    return uploadInteractor
-                            .upload(jobId)
-                            .onErrorResumeNext(error -> {
-                                final ErrorType errorType = errorAdapter.fromThrowable(error);
-                                final Status failedStatus = Status.createFailed(jobId, errorType);
-                                return Observable.just(failedStatus);
-                            });
-                }, 1);
+        final Observable<Status> statusUpdates = jobUpdates.map(Job::status);
+
+        // consume items that have status type of queued and hand them to the executor which
+        // runs up to the configured number of uploads concurrently in priority order
+        final Observable<Job> queuedJobs = jobUpdates
+                .filter(job -> job.status().statusType() == StatusType.QUEUED);
 
         // consume items that have status type of completed and delete the original file from disk
         final Observable<Boolean> deleteJobs = statusUpdates
@@ -121,7 +191,14 @@ public class UploadManager {
         final Observable<Job> deleteJobsFromDB = statusUpdates
                 .filter(status -> status.statusType() == StatusType.COMPLETED
                         && deleteRecordOnComplete)
-                .flatMap(status -> uploadInteractor.delete(status.id()));
+                .flatMap(status -> uploadInteractor.delete(status.id()))
+                .flatMap(job -> deduplicator != null
+                        ? deduplicator.forget(job)
+                        : Observable.just(job));
+
+        // release the progress of jobs which are no longer uploaded
+        final Observable<Status> finishedJobs = statusUpdates
+                .filter(status -> status.statusType() != StatusType.QUEUED);
 
         // status updates which are progress updates of how much has been uploaded can be too
         // much for the client to consume -- filter this out and apply a backpressure mode
@@ -135,13 +212,34 @@ public class UploadManager {
         // this will be used to share with clients
         statusObservable = statusUpdates.mergeWith(sending).share();
 
+        // the same progress instance is emitted for every update of a job, keep the latest
+        progressObservable = progressReporter.updates().onBackpressureLatest();
+
         subscriptions.add(jobQueue.subscribe(statusSubject::onNext));
-        subscriptions.add(uploadJobs.subscribe(statusSubject::onNext));
+        final BatchPolicy batchPolicy = uploadExecutor.batchPolicy();
+        if (batchPolicy == null || batchPolicy.getLingerMillis() == 0) {
+            // without linger time small jobs are still batched when several of them are pending
+            subscriptions.add(queuedJobs.subscribe(uploadExecutor::submit));
+        } else {
+            // small jobs linger for a while so that jobs queued in quick succession are handed
+            // to the executor together and can share a single request
+            final Observable<List<Job>> batchableJobs = queuedJobs
+                    .filter(batchPolicy::isBatchable)
+                    .buffer(batchPolicy.getLingerMillis(), TimeUnit.MILLISECONDS,
+                            batchPolicy.getMaxFiles(), Schedulers.computation())
+                    .filter(jobs -> !jobs.isEmpty());
+            subscriptions.add(queuedJobs
+                    .filter(job -> !batchPolicy.isBatchable(job))
+                    .subscribe(uploadExecutor::submit));
+            subscriptions.add(batchableJobs.subscribe(uploadExecutor::submitAll));
+        }
+        subscriptions.add(uploadExecutor.status().subscribe(statusSubject::onNext));
+        subscriptions.add(finishedJobs.subscribe(status -> progressReporter.remove(status.id())));
         subscriptions.add(deleteJobs.subscribe(Actions.empty()));
         subscriptions.add(deleteJobsFromDB.subscribe(Actions.empty()));
         subscriptions.add(repair.subscribe(job -> statusSubject.onNext(job.status())));
 
-        subscriptions.add(statusUpdates.connect());
+        subscriptions.add(jobUpdates.connect());
     }
 
     /**
@@ -158,6 +256,61 @@ public class UploadManager {
         return persistedStatus.concatWith(statusObservable);
     }
 
+    /**
+     * Count the persisted jobs by their status, eg. to show the number of pending uploads.
+     *
+     * @return number of jobs by {@link StatusType}; status types without any job are not included
+     */
+    @NonNull
+    public Observable<Map<StatusType, Integer>> countByStatus() {
+        return uploadInteractor.countByStatus();
+    }
+
+    /**
+     * Receive the progress of uploads in bytes. Each job has a single {@link UploadProgress}
+     * instance which is updated in place and emitted every time it changes, so progress bars can
+     * be driven without allocating an object per update. When the subscriber cannot keep up only
+     * the latest update is kept; {@link #getProgress(String)} always returns the current progress
+     * of a job.
+     *
+     * @return A stream of {@link UploadProgress} items of jobs being uploaded
+     */
+    @NonNull
+    public Observable<UploadProgress> progress() {
+        return progressObservable;
+    }
+
+    /**
+     * Retrieve the progress of a job being uploaded. The returned instance is updated in place
+     * until the job completes or fails.
+     *
+     * @param jobId Id of the {@link Job} being uploaded
+     * @return the progress of the upload or null if the job is not being uploaded
+     */
+    @Nullable
+    public UploadProgress getProgress(@NonNull String jobId) {
+        return progressReporter.get(jobId);
+    }
+
+    /**
+     * Smoothed transfer rate of all uploads in progress together.
+     *
+     * @return bytes sent per second or 0 if not known
+     */
+    public long getCurrentBytesPerSecond() {
+        return progressReporter.bytesPerSecond();
+    }
+
+    /**
+     * Estimated time until all uploads in progress are sent at the current aggregate transfer
+     * rate. Jobs waiting for an upload slot are not included.
+     *
+     * @return estimated time remaining in milliseconds or {@link Status#UNKNOWN_ETA}
+     */
+    public long getEstimatedTimeRemainingMillis() {
+        return progressReporter.etaMillis();
+    }
+
     /**
      * Enqueues a new {@link Job}
      */
@@ -166,27 +319,189 @@ public class UploadManager {
     }
 
     /**
-     * Retry a specific job
+     * Retry a specific job. The count of failed attempts used by automatic retries is reset.
      */
     public void retry(@NonNull String jobId) {
         final Observable<Status> observable = uploadInteractor
                 .get(jobId)
                 .filter(this::canRetry)
+                .flatMap(job -> uploadInteractor.save(job.withAttempts(0)))
                 .map(job -> Status.createQueued(job.id()));
         subscriptions.add(observable.subscribe(statusSubject::onNext));
     }
 
     /**
-     * Retry all failed jobs
+     * Retry all failed jobs. The count of failed attempts used by automatic retries is reset.
      */
     public void retryAll() {
         final Observable<Status> observable = uploadInteractor
-                .getAll()
+                .getByStatus(StatusType.FAILED)
                 .filter(this::canRetry)
+                .flatMap(job -> uploadInteractor.save(job.withAttempts(0)))
                 .map(job -> Status.createQueued(job.id()));
         subscriptions.add(observable.subscribe(statusSubject::onNext));
     }
 
+    /**
+     * Pause all uploads, eg. during heavy foreground work. No upload is started until
+     * {@link #resumeAll()} is called. Uploads in progress are stopped and their jobs are
+     * {@link StatusType#QUEUED} again; chunked uploads continue from the last acknowledged chunk
+     * once resumed. Jobs can still be enqueued while uploads are paused.
+     */
+    public void pauseAll() {
+        uploadExecutor.pause();
+        uploadExecutor.interrupt();
+    }
+
+    /**
+     * Resume uploading after {@link #pauseAll()}.
+     */
+    public void resumeAll() {
+        uploadExecutor.resume();
+    }
+
+    /**
+     * @return {@link Boolean#TRUE} if uploads are paused by {@link #pauseAll()} or
+     * {@link #shutdown(long, TimeUnit)}
+     */
+    public boolean isPaused() {
+        return uploadExecutor.isPaused();
+    }
+
+    /**
+     * Shut the manager down. No further upload is started and uploads in progress are given up
+     * to {@code timeout} to finish; uploads still running after the timeout are stopped and their
+     * jobs stay {@link StatusType#QUEUED}, chunked uploads having checkpointed their last
+     * acknowledged chunk. Once the last status update has been persisted, the data store and the
+     * digest index are closed, which flushes the store and stops their threads. Then all
+     * subscriptions are released and the {@link #status()} and {@link #progress()} streams
+     * complete.
+     * <br/>
+     * Calling this method again returns the outcome of the first call. Jobs enqueued after the
+     * shutdown are ignored.
+     *
+     * @param timeout maximum time to wait for uploads in progress
+     * @param unit unit of {@code timeout}
+     * @return emits {@link Boolean#TRUE} if all uploads in progress finished before the timeout
+     * and {@link Boolean#FALSE} otherwise, then completes
+     */
+    @NonNull
+    public Observable<Boolean> shutdown(long timeout, @NonNull TimeUnit unit) {
+        return shutdown(timeout, unit, Schedulers.computation());
+    }
+
+    @VisibleForTesting
+    @NonNull
+    Observable<Boolean> shutdown(long timeout, @NonNull TimeUnit unit,
+            @NonNull Scheduler scheduler) {
+        final AsyncSubject<Boolean> result;
+        synchronized (this) {
+            if (shutdownResult != null) {
+                return shutdownResult.asObservable();
+            }
+            result = AsyncSubject.create();
+            shutdownResult = result;
+        }
+
+        uploadExecutor.pause();
+        Observable.merge(uploadExecutor.activeCountChanges(),
+                Observable.fromCallable(uploadExecutor::activeCount))
+                .filter(count -> count == 0)
+                .map(count -> true)
+                .first()
+                .timeout(timeout, unit, Observable.just(false), scheduler)
+                .subscribe(finished -> {
+                    if (!finished) {
+                        uploadExecutor.interrupt();
+                    }
+                    terminate(finished, result);
+                });
+        return result.asObservable();
+    }
+
+    /**
+     * Completes the subjects and releases all subscriptions once the last status update has been
+     * persisted.
+     */
+    private void terminate(boolean finished, @NonNull AsyncSubject<Boolean> result) {
+        uploadExecutor.shutdown();
+        jobUpdates.ignoreElements().subscribe(Actions.empty(),
+                error -> release(finished, result),
+                () -> release(finished, result));
+        jobSubject.onCompleted();
+        statusSubject.onCompleted();
+    }
+
+    private void release(boolean finished, @NonNull AsyncSubject<Boolean> result) {
+        // the data store may still hold writes in memory, eg. with write-behind
+        uploadInteractor.close()
+                .ignoreElements()
+                .onErrorResumeNext(Observable.empty())
+                .subscribe(Actions.empty(), Actions.empty(), () -> {
+                    if (deduplicator != null) {
+                        deduplicator.close();
+                    }
+                    progressReporter.complete();
+                    subscriptions.unsubscribe();
+                    result.onNext(finished);
+                    result.onCompleted();
+                });
+    }
+
+    /**
+     * Cancel a job. A queued job is never uploaded and the upload of a job in progress is stopped
+     * right away, freeing its upload slot. The job keeps the {@link StatusType#CANCELLED} status
+     * and its file is not deleted. Completed jobs cannot be cancelled.
+     */
+    public void cancel(@NonNull String jobId) {
+        uploadExecutor.cancel(jobId);
+        final Observable<Status> observable = uploadInteractor
+                .get(jobId)
+                .filter(this::canCancel)
+                .map(job -> Status.createCancelled(job.id()));
+        subscriptions.add(observable.subscribe(statusSubject::onNext));
+    }
+
+    /**
+     * Pause a queued job or a job being uploaded. The upload is stopped right away, freeing its
+     * upload slot, and the job keeps the {@link StatusType#PAUSED} status until it is resumed
+     * with {@link #resume(String)}.
+     */
+    public void pause(@NonNull String jobId) {
+        // only queued jobs are pending or running in the executor
+        uploadExecutor.cancel(jobId);
+        final Observable<Status> observable = uploadInteractor
+                .get(jobId)
+                .filter(job -> job.status().statusType() == StatusType.QUEUED)
+                .map(job -> Status.createPaused(job.id()));
+        subscriptions.add(observable.subscribe(statusSubject::onNext));
+    }
+
+    /**
+     * Resume a paused job. The job is queued again; a chunked upload continues from the last
+     * chunk acknowledged by the server, other uploads start from the beginning of the file.
+     */
+    public void resume(@NonNull String jobId) {
+        final Observable<Status> observable = uploadInteractor
+                .get(jobId)
+                .filter(job -> job.status().statusType() == StatusType.PAUSED)
+                .map(job -> Status.createQueued(job.id()));
+        subscriptions.add(observable.subscribe(statusSubject::onNext));
+    }
+
+    /**
+     * Receive updates of the state of the {@link CircuitBreaker} guarding the upload service.
+     * While the breaker is {@link CircuitBreaker.State#OPEN} no uploads are started and queued
+     * jobs keep their {@link StatusType#QUEUED} status.
+     *
+     * @return A stream of {@link CircuitBreaker.State} items or an empty stream if no circuit
+     * breaker is configured
+     */
+    @NonNull
+    public Observable<CircuitBreaker.State> circuitBreakerState() {
+        return uploadExecutor.circuitBreakerState();
+    }
+
     /**
      * Retrieve the {@link Job} associated with the provided {@code jobId} if one exists, otherwise
      * a {@link Job#INVALID_JOB} is returned.
@@ -200,16 +515,115 @@ public class UploadManager {
         return uploadInteractor.get(jobId);
     }
 
+    /**
+     * Number of upload slots currently busy running an upload.
+     *
+     * @return count of uploads in progress, never more than the configured maximum
+     */
+    public int getActiveUploadCount() {
+        return uploadExecutor.activeCount();
+    }
+
+    /**
+     * Number of queued jobs waiting for an upload slot to become available.
+     *
+     * @return count of jobs waiting to be uploaded
+     */
+    public int getPendingUploadCount() {
+        return uploadExecutor.pendingCount();
+    }
+
+    /**
+     * Number of uploads allowed to run at the same time. With adaptive concurrency enabled this
+     * value changes over time based on the observed network conditions.
+     *
+     * @return current upload concurrency limit
+     */
+    public int getMaxConcurrentUploads() {
+        return uploadExecutor.maxConcurrentUploads();
+    }
+
+    /**
+     * Limits the combined upload rate of all jobs. Takes effect immediately, including for uploads
+     * which are already in progress.
+     *
+     * @param bytesPerSecond maximum bytes per second or {@link BandwidthLimiter#UNLIMITED}
+     */
+    public void setMaxBytesPerSecond(long bytesPerSecond) {
+        bandwidthLimiter.setMaxBytesPerSecond(bytesPerSecond);
+    }
+
+    public long getMaxBytesPerSecond() {
+        return bandwidthLimiter.getMaxBytesPerSecond();
+    }
+
+    /**
+     * Limits the upload rate of each individual job. Takes effect immediately, including for
+     * uploads which are already in progress.
+     *
+     * @param bytesPerSecond maximum bytes per second or {@link BandwidthLimiter#UNLIMITED}
+     */
+    public void setMaxBytesPerSecondPerJob(long bytesPerSecond) {
+        bandwidthLimiter.setMaxBytesPerSecondPerJob(bytesPerSecond);
+    }
+
+    public long getMaxBytesPerSecondPerJob() {
+        return bandwidthLimiter.getMaxBytesPerSecondPerJob();
+    }
+
+    /**
+     * Resolves the enqueued job against duplicate content when deduplication is enabled and saves
+     * it to the data store. A job which could not be saved is emitted with a failed status.
+     */
+    @NonNull
+    private Observable<Job> resolveAndSave(@NonNull Job job) {
+        return (deduplicator != null ? deduplicator.resolve(job) : Observable.just(job))
+                .flatMap(resolved -> resolved.id().equals(job.id())
+                        ? uploadInteractor.save(resolved)
+                        // the content is already being uploaded by an existing job
+                        : Observable.just(resolved))
+                .onErrorResumeNext(error -> {
+                    final String jobId = job.id();
+                    final ErrorType errorType = errorAdapter.fromThrowable(error);
+                    final Status status = Status.createFailed(jobId, errorType);
+                    return Observable.just(job.withStatus(status));
+                });
+    }
+
+    /**
+     * Reads the size of the job's file once, when the job is enqueued. A size set by the client
+     * is kept.
+     */
+    @NonNull
+    private static Job withFileSize(@NonNull Job job) {
+        return job.size() == Job.SIZE_UNKNOWN
+                ? job.withSize(new File(job.filepath()).length())
+                : job;
+    }
+
     private boolean canRetry(@NonNull Job job) {
         final Status status = job.status();
         return status.statusType() == StatusType.FAILED && status.error() != ErrorType.UNKNOWN;
     }
 
+    private boolean canCancel(@NonNull Job job) {
+        final StatusType statusType = job.status().statusType();
+        return statusType == StatusType.QUEUED
+                || statusType == StatusType.FAILED
+                || statusType == StatusType.PAUSED;
+    }
+
+    private boolean isResumable(@NonNull Job job) {
+        return job.status().statusType() == StatusType.QUEUED && job.uploadId() != null;
+    }
+
     private boolean canUpdateStatus(@NonNull Status status) {
         final StatusType statusType = status.statusType();
         return statusType == StatusType.COMPLETED
                 || statusType == StatusType.FAILED
-                || statusType == StatusType.QUEUED;
+                || statusType == StatusType.QUEUED
+                || statusType == StatusType.PAUSED
+                || statusType == StatusType.CANCELLED;
     }
 
     @NonNull
@@ -222,9 +636,35 @@ public class UploadManager {
      */
     public static class Builder {
         private UploadService uploadService;
+        private ChunkedUploadService chunkedUploadService;
+        private long chunkSize;
+        private MultipartUploadService multipartUploadService;
+        private long partSize;
+        private int maxParallelParts;
         private UploadDataStore uploadDataStore;
+        private int maxCachedJobs;
         private UploadErrorAdapter uploadErrorAdapter;
         private boolean deleteRecordOnComplete;
+        private int maxConcurrentUploads = UploadExecutor.DEFAULT_MAX_CONCURRENT_UPLOADS;
+        private boolean adaptiveConcurrency;
+        private int minConcurrentUploads;
+        private int maxAdaptiveConcurrentUploads;
+        private SchedulingPolicy schedulingPolicy = SchedulingPolicy.PRIORITY;
+        private long maxQueueWaitMillis = UploadQueue.AGING_DISABLED;
+        private int maxPendingJobs = UploadExecutor.UNBOUNDED_PENDING_JOBS;
+        private long maxBytesPerSecond = BandwidthLimiter.UNLIMITED;
+        private RetryPolicy retryPolicy;
+        private CircuitBreaker circuitBreaker;
+        private long maxBytesPerSecondPerJob = BandwidthLimiter.UNLIMITED;
+        private DigestIndex digestIndex;
+        private BatchUploadService batchUploadService;
+        private BatchPolicy batchPolicy;
+        private Compression compression = Compression.NONE;
+        private BufferPool bufferPool;
+        private ProgressSampler progressSampler = new ProgressSampler(
+                ProgressSampler.DEFAULT_MIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS,
+                ProgressSampler.DEFAULT_MIN_BYTES, ProgressSampler.DEFAULT_MIN_PERCENT);
+        private boolean statusProgress = true;
 
         private Builder() {
         }
@@ -241,9 +681,145 @@ public class UploadManager {
             return this;
         }
 
+        /**
+         * Upload files in chunks through a resumable upload session instead of a single request.
+         * The session and the number of bytes acknowledged by the server are checkpointed in the
+         * {@link UploadDataStore} after every chunk, so an upload which is interrupted by an error
+         * or by the application being terminated resumes from the last acknowledged chunk.
+         * Replaces the service set with {@link #withUploadService(UploadService)}.
+         *
+         * @param chunkedUploadService upload's content to a remote endpoint in chunks
+         * @param chunkSize maximum number of bytes sent per request
+         * @return Builder
+         */
+        public Builder withChunkedUploadService(@NonNull ChunkedUploadService chunkedUploadService,
+                long chunkSize) {
+            this.chunkedUploadService = chunkedUploadService;
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Upload files as several parts which are sent at the same time over separate requests.
+         * Sending parts in parallel makes better use of high latency links where a single
+         * connection cannot reach the available bandwidth. A failed part is sent again up to
+         * {@value Uploader#DEFAULT_PART_RETRIES} times after a jittered exponential backoff before
+         * the upload fails. A failed or cancelled upload is aborted.
+         * Replaces the services set with {@link #withUploadService(UploadService)} and
+         * {@link #withChunkedUploadService(ChunkedUploadService, long)}.
+         *
+         * @param multipartUploadService upload's content to a remote endpoint in parts
+         * @param partSize maximum number of bytes per part
+         * @param maxParallelParts maximum number of parts of a file uploaded at the same time
+         * @return Builder
+         */
+        public Builder withMultipartUploadService(
+                @NonNull MultipartUploadService multipartUploadService, long partSize,
+                int maxParallelParts) {
+            this.multipartUploadService = multipartUploadService;
+            this.partSize = partSize;
+            this.maxParallelParts = maxParallelParts;
+            return this;
+        }
+
+        /**
+         * Upload small files together in a single multipart request. Jobs which are small enough
+         * according to the {@code batchPolicy} are grouped when they are queued within the linger
+         * time of each other; a failure of the request fails every job of the batch while a file
+         * rejected by the remote endpoint fails only its own job. Larger files are uploaded with
+         * the other configured service.
+         *
+         * @param batchUploadService upload's content of several files in a single request
+         * @param batchPolicy defines which jobs are uploaded together
+         * @return Builder
+         */
+        public Builder withBatchUploadService(@NonNull BatchUploadService batchUploadService,
+                @NonNull BatchPolicy batchPolicy) {
+            this.batchUploadService = batchUploadService;
+            this.batchPolicy = batchPolicy;
+            return this;
+        }
+
+        /**
+         * Compress files while they are uploaded. Files are compressed on the fly and sent with
+         * chunked transfer encoding and a {@code Content-Encoding} header on the file part;
+         * progress is still reported in bytes of the original file. Only applies to files
+         * uploaded in a single request with the {@link UploadService} or
+         * {@link BatchUploadService} as the servers acknowledge chunks and parts by their
+         * offset in the original file.
+         * Compression is disabled by default.
+         *
+         * @param compression Encoding applied to uploaded files
+         * @return Builder
+         */
+        public Builder withCompression(@NonNull Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Read files through a {@link FileChannelRequestBody} into buffers of {@code bufferSize}
+         * bytes taken from a pool shared by all uploads, instead of 8 KB reads. Recommended for
+         * uploading files of hundreds of megabytes over fast links where small reads and frequent
+         * progress updates cost noticeable CPU, eg. 64 KB to 1 MB buffers. At most
+         * {@code maxBuffers} buffers are in use at a time; uploads wait for a free buffer so
+         * streaming never uses more than {@code bufferSize * maxBuffers} bytes. Compressed files
+         * are always read through an {@link RxRequestBody}.
+         *
+         * @param bufferSize Number of bytes read from a file at a time, eg.
+         * {@value BufferPool#DEFAULT_BUFFER_SIZE}
+         * @param maxBuffers Maximum number of buffers in use at a time, eg.
+         * {@value BufferPool#DEFAULT_MAX_BUFFERS}
+         * @return Builder
+         */
+        public Builder withBufferPool(int bufferSize, int maxBuffers) {
+            this.bufferPool = new BufferPool(bufferSize, maxBuffers);
+            return this;
+        }
+
+        /**
+         * Limit how often the progress of an upload is reported. A progress update is only
+         * emitted once {@code minInterval} has elapsed since the previous update and the upload
+         * has advanced by at least {@code minBytes} or {@code minPercent} percent. The first and
+         * the final progress update of an upload are always emitted.
+         * By default progress is reported at most every
+         * {@value ProgressSampler#DEFAULT_MIN_INTERVAL_MILLIS} ms once the upload has advanced by
+         * {@value ProgressSampler#DEFAULT_MIN_BYTES} bytes or
+         * {@value ProgressSampler#DEFAULT_MIN_PERCENT} percent. A zero interval, one byte and zero
+         * percent report progress after every write.
+         *
+         * @param minInterval Minimum time between two progress updates
+         * @param unit Unit of {@code minInterval}
+         * @param minBytes Minimum number of bytes sent between two progress updates
+         * @param minPercent Minimum percent of the file sent between two progress updates or 0
+         * to only use {@code minBytes}
+         * @return Builder
+         */
+        public Builder withProgressSampling(long minInterval, @NonNull TimeUnit unit,
+                long minBytes, int minPercent) {
+            this.progressSampler = new ProgressSampler(minInterval, unit, minBytes, minPercent);
+            return this;
+        }
+
+        /**
+         * Report the progress of uploads through {@link UploadManager#progress()} only. By
+         * default every progress update is also emitted as a {@link StatusType#SENDING}
+         * {@link Status}; when disabled {@link UploadManager#status()} emits a single
+         * {@link StatusType#SENDING} item when an upload starts and is otherwise left to
+         * lifecycle transitions. Progress is then not allocated per update, but adaptive
+         * concurrency only observes the throughput of completed uploads.
+         *
+         * @param statusProgress false to report progress through {@link UploadProgress} only
+         * @return Builder
+         */
+        public Builder withProgressInStatus(boolean statusProgress) {
+            this.statusProgress = statusProgress;
+            return this;
+        }
+
         /**
          * Define the data store to persist {@link Job} items.
-         * Required (or use {@code withSimpleUploadDataStore})
+         * Required (or use {@code withSimpleUploadDataStore} or {@code withSqliteUploadDataStore})
          *
          * @param uploadDataStore Data store to persist jobs
          * @return Builder
@@ -263,6 +839,51 @@ public class UploadManager {
             return this;
         }
 
+        /**
+         * Use the {@link SimpleUploadDataStore} data store to persist jobs and coalesce writes
+         * made within {@code commitWindow} into a single commit. Writes which have not been
+         * committed yet are flushed by {@link UploadManager#shutdown(long, TimeUnit)}.
+         *
+         * @param durability defines when writes are committed
+         * @param commitWindow time during which writes are coalesced, eg.
+         * {@value SimpleUploadDataStore#DEFAULT_COMMIT_WINDOW_MILLIS} ms
+         * @param unit unit of {@code commitWindow}
+         * @return Builder
+         */
+        public Builder withSimpleUploadDataStore(@NonNull Context context,
+                @NonNull SimpleUploadDataStore.Durability durability, long commitWindow,
+                @NonNull TimeUnit unit) {
+            this.uploadDataStore =
+                    SimpleUploadDataStore.create(context, durability, commitWindow, unit);
+            return this;
+        }
+
+        /**
+         * Use the {@link SqliteUploadDataStore} data store to persist jobs. Jobs persisted by the
+         * {@link SimpleUploadDataStore} are moved into the database.
+         *
+         * @return Builder
+         */
+        public Builder withSqliteUploadDataStore(@NonNull Context context) {
+            this.uploadDataStore = SqliteUploadDataStore.create(context);
+            return this;
+        }
+
+        /**
+         * Keep up to {@code maxJobs} recently used jobs in memory in front of the data store, see
+         * {@link CachingUploadDataStore}. Looking up a job before and after each upload is then
+         * served without reading the data store. The data store must not be modified other than
+         * through the {@link UploadManager}.
+         * Jobs are not cached by default.
+         *
+         * @param maxJobs maximum number of jobs kept in memory
+         * @return Builder
+         */
+        public Builder withJobCache(int maxJobs) {
+            this.maxCachedJobs = maxJobs;
+            return this;
+        }
+
         /**
          * Defines the adapter to translate exceptions to {@link ErrorType}.
          * Required
@@ -290,12 +911,187 @@ public class UploadManager {
             return this;
         }
 
+        /**
+         * Maximum number of uploads to run at the same time. Each upload occupies a slot until it
+         * completes or fails, at which point the next queued job is started.
+         * The default is {@value UploadExecutor#DEFAULT_MAX_CONCURRENT_UPLOADS}.
+         *
+         * @param maxConcurrentUploads number of concurrent uploads, must be at least one
+         * @return Builder
+         */
+        public Builder withMaxConcurrentUploads(int maxConcurrentUploads) {
+            this.maxConcurrentUploads = maxConcurrentUploads;
+            return this;
+        }
+
+        /**
+         * Continuously tunes the number of concurrent uploads between {@code min} and {@code max}.
+         * The limit starts at the value given to {@link #withMaxConcurrentUploads(int)} and grows
+         * by one while queued jobs are waiting and aggregate throughput keeps improving. It is
+         * halved when uploads fail with {@link ErrorType#NETWORK} or time out.
+         *
+         * @param min lower bound of concurrent uploads, must be at least one
+         * @param max upper bound of concurrent uploads
+         * @return Builder
+         */
+        public Builder withAdaptiveConcurrency(int min, int max) {
+            this.adaptiveConcurrency = true;
+            this.minConcurrentUploads = min;
+            this.maxAdaptiveConcurrentUploads = max;
+            return this;
+        }
+
+        /**
+         * Defines the order in which queued jobs are uploaded. Jobs with a higher priority are
+         * always uploaded first, the policy decides the order among jobs of the same priority.
+         * The default is {@link SchedulingPolicy#PRIORITY}.
+         *
+         * @param schedulingPolicy order of queued jobs
+         * @return Builder
+         */
+        public Builder withSchedulingPolicy(@NonNull SchedulingPolicy schedulingPolicy) {
+            this.schedulingPolicy = schedulingPolicy;
+            return this;
+        }
+
+        /**
+         * Ages queued jobs so that none is starved by the {@link SchedulingPolicy}. A job which
+         * has been waiting longer than {@code maxWait} is uploaded ahead of all other queued jobs,
+         * oldest first.
+         * Aging is disabled by default.
+         *
+         * @param maxWait maximum time a job waits before it is promoted
+         * @param unit unit of {@code maxWait}
+         * @return Builder
+         */
+        public Builder withQueueAging(long maxWait, @NonNull TimeUnit unit) {
+            this.maxQueueWaitMillis = unit.toMillis(maxWait);
+            return this;
+        }
+
+        /**
+         * Limits the number of queued jobs held in memory. Jobs are always persisted before they
+         * are queued; jobs queued while {@code maxPendingJobs} jobs are already waiting for an
+         * upload slot stay in the {@link UploadDataStore} only and are read back in batches as
+         * slots free up, so enqueuing a large backlog does not grow memory usage. Within the
+         * batches read back jobs keep their priority order, but a job left in the store waits for
+         * the jobs already held in memory.
+         * By default all queued jobs are held in memory.
+         * The {@link SimpleUploadDataStore} cannot read jobs back in batches and is rejected by
+         * {@link #build()}; use the {@link SqliteUploadDataStore} instead.
+         *
+         * @param maxPendingJobs maximum number of queued jobs held in memory or
+         * {@value UploadExecutor#UNBOUNDED_PENDING_JOBS} for no limit
+         * @return Builder
+         */
+        public Builder withMaxPendingJobsInMemory(int maxPendingJobs) {
+            this.maxPendingJobs = maxPendingJobs;
+            return this;
+        }
+
+        /**
+         * Limits the combined upload rate of all jobs. Can be changed later with
+         * {@link UploadManager#setMaxBytesPerSecond(long)}.
+         * The default is unlimited.
+         *
+         * @param bytesPerSecond maximum bytes per second or {@link BandwidthLimiter#UNLIMITED}
+         * @return Builder
+         */
+        public Builder withMaxBytesPerSecond(long bytesPerSecond) {
+            this.maxBytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Limits the upload rate of each individual job. Can be changed later with
+         * {@link UploadManager#setMaxBytesPerSecondPerJob(long)}.
+         * The default is unlimited.
+         *
+         * @param bytesPerSecond maximum bytes per second or {@link BandwidthLimiter#UNLIMITED}
+         * @return Builder
+         */
+        public Builder withMaxBytesPerSecondPerJob(long bytesPerSecond) {
+            this.maxBytesPerSecondPerJob = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Automatically retry failed uploads according to the provided policy. Only failures
+         * accepted by {@link UploadErrorAdapter#canRetry(Throwable)} are retried. By default
+         * failed jobs are only retried when {@link UploadManager#retry(String)} or
+         * {@link UploadManager#retryAll()} is called.
+         *
+         * @param retryPolicy number of attempts and backoff between attempts
+         * @return Builder
+         */
+        public Builder withRetryPolicy(@NonNull RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Guard the upload service with a circuit breaker. While the backend keeps failing with
+         * {@link ErrorType#SERVICE} or {@link ErrorType#NETWORK} errors the breaker opens and the
+         * whole queue is paused until probe uploads succeed again.
+         *
+         * @param circuitBreaker breaker guarding the upload service
+         * @return Builder
+         */
+        public Builder withCircuitBreaker(@NonNull CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Skip uploading content which has already been enqueued. The SHA-256 digest of each
+         * enqueued file is computed in the background and recorded in the {@code digestIndex}.
+         * A job whose content was already uploaded completes immediately with the response of
+         * the earlier upload. A job whose content is still queued or being uploaded is not
+         * persisted and the status of the existing job is emitted instead. The digest of a job is
+         * removed from the index when its record is deleted, so with
+         * {@link #withDeleteRecordOnComplete(boolean)} only content which is still queued or being
+         * uploaded is deduplicated.
+         * Deduplication is disabled by default.
+         *
+         * @param digestIndex Index to persist content digests
+         * @return Builder
+         */
+        public Builder withDeduplication(@NonNull DigestIndex digestIndex) {
+            this.digestIndex = digestIndex;
+            return this;
+        }
+
+        /**
+         * Skip uploading content which has already been enqueued and use the
+         * {@link SimpleDigestIndex} to persist content digests.
+         *
+         * @return Builder
+         * @see #withDeduplication(DigestIndex)
+         */
+        public Builder withSimpleDeduplication(@NonNull Context context) {
+            this.digestIndex = SimpleDigestIndex.create(context);
+            return this;
+        }
+
         @NonNull
         public UploadManager build() {
-            if (uploadService == null) {
+            if (uploadService == null && chunkedUploadService == null
+                    && multipartUploadService == null) {
                 throw new IllegalArgumentException("Must provide a valid upload service");
             }
 
+            if (chunkedUploadService != null && chunkSize < 1) {
+                throw new IllegalArgumentException("Must provide a valid chunk size");
+            }
+
+            if (multipartUploadService != null && (partSize < 1 || maxParallelParts < 1)) {
+                throw new IllegalArgumentException("Must provide a valid part size and count");
+            }
+
+            if (batchUploadService != null && batchPolicy == null) {
+                throw new IllegalArgumentException("Must provide a valid batch policy");
+            }
+
             if (uploadDataStore == null) {
                 throw new IllegalArgumentException("Must provide a valid upload data store");
             }
@@ -304,16 +1100,129 @@ public class UploadManager {
                 throw new IllegalArgumentException("Must provide a valid upload error adapter");
             }
 
+            if (maxCachedJobs < 0) {
+                throw new IllegalArgumentException("Job cache size must not be negative");
+            }
+
+            if (maxConcurrentUploads < 1) {
+                throw new IllegalArgumentException("Must allow at least one concurrent upload");
+            }
+
+            if (adaptiveConcurrency && (minConcurrentUploads < 1
+                    || maxAdaptiveConcurrentUploads < minConcurrentUploads)) {
+                throw new IllegalArgumentException("Must provide valid adaptive concurrency bounds");
+            }
+
+            if (compression == null) {
+                throw new IllegalArgumentException("Must provide a valid compression");
+            }
+
+            if (schedulingPolicy == null) {
+                throw new IllegalArgumentException("Must provide a valid scheduling policy");
+            }
+
+            if (maxQueueWaitMillis < 0) {
+                throw new IllegalArgumentException("Queue aging must not be negative");
+            }
+
+            if (maxPendingJobs < 0) {
+                throw new IllegalArgumentException("Pending jobs limit must not be negative");
+            }
+
+            if (maxPendingJobs != UploadExecutor.UNBOUNDED_PENDING_JOBS
+                    && uploadDataStore instanceof SimpleUploadDataStore) {
+                throw new IllegalArgumentException(
+                        "Pending jobs limit requires a data store which reads pages of jobs, "
+                                + "eg. the SqliteUploadDataStore");
+            }
+
+            if (maxBytesPerSecond < 0 || maxBytesPerSecondPerJob < 0) {
+                throw new IllegalArgumentException("Bandwidth limits must not be negative");
+            }
+
+            final UploadDataStore dataStore = maxCachedJobs > 0
+                    ? new CachingUploadDataStore(uploadDataStore, maxCachedJobs)
+                    : uploadDataStore;
             final Subject<Job, Job> jobSubject = PublishSubject.<Job>create().toSerialized();
             final Subject<Status, Status> statusSubject =
                     PublishSubject.<Status>create().toSerialized();
 
-            final Uploader uploader = Uploader.create(uploadService);
+            final BandwidthLimiter bandwidthLimiter =
+                    new BandwidthLimiter(maxBytesPerSecond, maxBytesPerSecondPerJob);
+            final Uploader uploader;
+            if (multipartUploadService != null) {
+                final MultipartUploadService service = circuitBreaker != null
+                        ? new CircuitBreakerMultipartUploadService<>(multipartUploadService,
+                                circuitBreaker, uploadErrorAdapter)
+                        : multipartUploadService;
+                uploader = Uploader.createMultipart(service, partSize, maxParallelParts,
+                        bandwidthLimiter);
+            } else if (chunkedUploadService != null) {
+                final ChunkedUploadService service = circuitBreaker != null
+                        ? new CircuitBreakerChunkedUploadService<>(chunkedUploadService,
+                                circuitBreaker, uploadErrorAdapter)
+                        : chunkedUploadService;
+                uploader = Uploader.createChunked(service, chunkSize,
+                        dataStore::updateUploadSession, bandwidthLimiter);
+            } else {
+                final UploadService service = circuitBreaker != null
+                        ? new CircuitBreakerUploadService<>(uploadService, circuitBreaker,
+                                uploadErrorAdapter)
+                        : uploadService;
+                uploader = Uploader.create(service, bandwidthLimiter);
+            }
+            uploader.setCompression(compression);
+            if (bufferPool != null) {
+                uploader.setBufferPool(bufferPool);
+            }
+            uploader.setProgressSampler(progressSampler);
+            uploader.setStatusUpdates(statusProgress);
+            if (batchUploadService != null) {
+                uploader.setBatchUploadService(circuitBreaker != null
+                        ? new CircuitBreakerBatchUploadService<>(batchUploadService,
+                                circuitBreaker, uploadErrorAdapter)
+                        : batchUploadService);
+            }
             final UploadInteractor uploadInteractor =
-                    UploadInteractorImpl.create(uploader, uploadDataStore, uploadErrorAdapter);
+                    UploadInteractorImpl.create(uploader, dataStore, uploadErrorAdapter);
+            final UploadQueue uploadQueue =
+                    new UploadQueue(schedulingPolicy, maxQueueWaitMillis, Schedulers.computation());
+            final UploadExecutor uploadExecutor;
+            if (adaptiveConcurrency) {
+                final AdaptiveConcurrencyController concurrencyController =
+                        new AdaptiveConcurrencyController(maxConcurrentUploads,
+                                minConcurrentUploads, maxAdaptiveConcurrentUploads,
+                                AdaptiveConcurrencyController.DEFAULT_WINDOW_MILLIS,
+                                Schedulers.computation());
+                uploadExecutor = new UploadExecutor(uploadInteractor, uploadErrorAdapter,
+                        uploadQueue, concurrencyController);
+            } else {
+                uploadExecutor = new UploadExecutor(uploadInteractor, uploadErrorAdapter,
+                        maxConcurrentUploads, uploadQueue);
+            }
+
+            if (retryPolicy != null) {
+                uploadExecutor.setRetryPolicy(retryPolicy, Schedulers.computation());
+            }
+
+            if (circuitBreaker != null) {
+                uploadExecutor.setCircuitBreaker(circuitBreaker);
+            }
+
+            if (batchUploadService != null) {
+                uploadExecutor.setBatchPolicy(batchPolicy);
+            }
+
+            if (maxPendingJobs != UploadExecutor.UNBOUNDED_PENDING_JOBS) {
+                uploadExecutor.setMaxPendingJobs(maxPendingJobs);
+            }
 
+            final Deduplicator deduplicator = digestIndex != null
+                    ? new Deduplicator(digestIndex, uploadInteractor, Schedulers.io())
+                    : null;
 
-            return new UploadManager(uploadInteractor, uploadErrorAdapter, jobSubject,
+            return new UploadManager(uploadInteractor, uploadErrorAdapter, uploadExecutor,
+                    bandwidthLimiter, deduplicator, uploader.progressReporter(), jobSubject,
                     statusSubject, deleteRecordOnComplete);
         }
     }
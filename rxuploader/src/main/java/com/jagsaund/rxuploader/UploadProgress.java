@@ -0,0 +1,86 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.throttle.ThroughputEstimator;
+
+/**
+ * Progress of an upload in bytes. A single instance is allocated per job when its upload starts
+ * and is updated in place after every write, so clients can drive a progress bar without an
+ * allocation per update. The same instance is emitted by {@link UploadManager#progress()} every
+ * time it changes and can be polled at any time through
+ * {@link UploadManager#getProgress(String)}.
+ * <br/>
+ * The instance is shared and mutable; read the values when they are needed rather than keeping
+ * the instance as a snapshot.
+ */
+public class UploadProgress {
+    @NonNull private final String jobId;
+    @NonNull private final ThroughputEstimator throughput;
+
+    private volatile long bytesSent;
+    private volatile long totalBytes;
+
+    UploadProgress(@NonNull String jobId, long totalBytes,
+            @NonNull ThroughputEstimator throughput) {
+        this.jobId = jobId;
+        this.totalBytes = totalBytes;
+        this.throughput = throughput;
+    }
+
+    @NonNull
+    public String jobId() {
+        return jobId;
+    }
+
+    /**
+     * @return number of bytes of the file sent so far
+     */
+    public long bytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return size of the file
+     */
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return percentage of the file sent, rounded down
+     */
+    public int percent() {
+        return Status.percent(bytesSent, totalBytes);
+    }
+
+    /**
+     * @return smoothed transfer rate of the upload or 0 if not known yet
+     */
+    public long bytesPerSecond() {
+        return throughput.bytesPerSecond();
+    }
+
+    /**
+     * @return estimated time until the whole file is sent at the current transfer rate or
+     * {@link Status#UNKNOWN_ETA}
+     */
+    public long etaMillis() {
+        return Status.eta(totalBytes - bytesSent, bytesPerSecond());
+    }
+
+    void reset(long totalBytes) {
+        this.totalBytes = totalBytes;
+        this.bytesSent = 0;
+        throughput.reset();
+    }
+
+    /**
+     * @param bytesSent number of bytes of the file sent so far
+     * @param delta number of bytes sent since the previous update
+     */
+    void update(long bytesSent, long delta) {
+        this.bytesSent = bytesSent;
+        throughput.onBytesSent(delta);
+    }
+}
@@ -0,0 +1,200 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.jagsaund.rxuploader.job.Job;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Holds {@link Job} items waiting to be uploaded. Jobs are kept in a binary heap ordered by
+ * {@link Job#priority()}, highest first. Jobs with the same priority are ordered according to the
+ * {@link SchedulingPolicy}.
+ * <br/>
+ * When aging is enabled, a job that has been waiting longer than the maximum wait time is returned
+ * ahead of all other jobs, oldest first. This bounds the time any job can be starved by jobs that
+ * the policy prefers.
+ * <br/>
+ * This class is not thread safe.
+ */
+class UploadQueue {
+    static final long AGING_DISABLED = 0;
+
+    private static final Comparator<Entry> PRIORITY_ORDER = (lhs, rhs) -> {
+        final int priority = Integer.compare(rhs.job.priority(), lhs.job.priority());
+        return priority != 0 ? priority : Long.compare(lhs.sequence, rhs.sequence);
+    };
+
+    private static final Comparator<Entry> SHORTEST_JOB_FIRST_ORDER = (lhs, rhs) -> {
+        final int priority = Integer.compare(rhs.job.priority(), lhs.job.priority());
+        if (priority != 0) {
+            return priority;
+        }
+        final int size = Long.compare(lhs.job.size(), rhs.job.size());
+        return size != 0 ? size : Long.compare(lhs.sequence, rhs.sequence);
+    };
+
+    @NonNull private final Scheduler clock;
+    @NonNull private final PriorityQueue<Entry> heap;
+    /**
+     * Entries which have not been taken yet by job id.
+     */
+    @NonNull private final Map<String, Entry> entries;
+
+    /**
+     * Entries in arrival order used to find jobs which exceeded the maximum wait time. Entries
+     * taken from the heap are discarded lazily.
+     */
+    @NonNull private final Queue<Entry> arrivals;
+
+    private final long maxWaitMillis;
+
+    private long sequence;
+
+    UploadQueue() {
+        this(SchedulingPolicy.PRIORITY, AGING_DISABLED, Schedulers.immediate());
+    }
+
+    /**
+     * @param policy order of jobs sharing the same priority
+     * @param maxWaitMillis maximum time a job waits before it is promoted ahead of all other jobs
+     * or {@link #AGING_DISABLED}
+     * @param clock source of the current time
+     */
+    UploadQueue(@NonNull SchedulingPolicy policy, long maxWaitMillis, @NonNull Scheduler clock) {
+        this.maxWaitMillis = maxWaitMillis;
+        this.clock = clock;
+
+        final Comparator<Entry> order = policy == SchedulingPolicy.SHORTEST_JOB_FIRST
+                ? SHORTEST_JOB_FIRST_ORDER
+                : PRIORITY_ORDER;
+        heap = new PriorityQueue<>(16, order);
+        entries = new HashMap<>();
+        arrivals = new ArrayDeque<>();
+    }
+
+    /**
+     * Adds the job to the queue unless a job with the same id is already queued.
+     *
+     * @param job the job to add
+     * @return {@link Boolean#TRUE} if the job was added and {@link Boolean#FALSE} otherwise
+     */
+    boolean offer(@NonNull Job job) {
+        if (entries.containsKey(job.id())) {
+            return false;
+        }
+        final Entry entry = new Entry(job, sequence++, clock.now());
+        entries.put(job.id(), entry);
+        heap.offer(entry);
+        if (maxWaitMillis > AGING_DISABLED) {
+            arrivals.offer(entry);
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns the job that should be uploaded next.
+     *
+     * @return the next job or null if the queue is empty
+     */
+    @Nullable
+    Job poll() {
+        Entry entry = pollExpired();
+        if (entry == null) {
+            do {
+                entry = heap.poll();
+            } while (entry != null && entry.taken);
+        }
+        if (entry == null) {
+            return null;
+        }
+        entry.taken = true;
+        entries.remove(entry.job.id());
+        return entry.job;
+    }
+
+    /**
+     * Removes the job with the given id from the queue.
+     *
+     * @param jobId id of the job to remove
+     * @return {@link Boolean#TRUE} if the job was queued and {@link Boolean#FALSE} otherwise
+     */
+    boolean remove(@NonNull String jobId) {
+        final Entry entry = entries.remove(jobId);
+        if (entry == null) {
+            return false;
+        }
+        // the entry stays in the heap and is skipped once it surfaces
+        entry.taken = true;
+        return true;
+    }
+
+    /**
+     * Returns the job that {@link #poll()} would return without removing it.
+     *
+     * @return the next job or null if the queue is empty
+     */
+    @Nullable
+    Job peek() {
+        final Entry expired = peekExpired();
+        if (expired != null) {
+            return expired.job;
+        }
+        while (!heap.isEmpty() && heap.peek().taken) {
+            heap.poll();
+        }
+        final Entry entry = heap.peek();
+        return entry != null ? entry.job : null;
+    }
+
+    boolean contains(@NonNull String jobId) {
+        return entries.containsKey(jobId);
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    @Nullable
+    private Entry pollExpired() {
+        // the entry stays in the heap and is skipped once it surfaces
+        return peekExpired() != null ? arrivals.poll() : null;
+    }
+
+    @Nullable
+    private Entry peekExpired() {
+        while (!arrivals.isEmpty() && arrivals.peek().taken) {
+            arrivals.poll();
+        }
+
+        final Entry oldest = arrivals.peek();
+        if (oldest == null || clock.now() - oldest.enqueuedAt < maxWaitMillis) {
+            return null;
+        }
+        return oldest;
+    }
+
+    private static class Entry {
+        @NonNull final Job job;
+        final long sequence;
+        final long enqueuedAt;
+
+        boolean taken;
+
+        Entry(@NonNull Job job, long sequence, long enqueuedAt) {
+            this.job = job;
+            this.sequence = sequence;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
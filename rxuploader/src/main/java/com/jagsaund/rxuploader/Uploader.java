@@ -3,46 +3,208 @@ package com.jagsaund.rxuploader;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import com.jagsaund.rxuploader.job.ErrorType;
 import com.jagsaund.rxuploader.job.Job;
 import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.rx.BufferPool;
+import com.jagsaund.rxuploader.rx.Compression;
+import com.jagsaund.rxuploader.rx.FileChannelRequestBody;
+import com.jagsaund.rxuploader.rx.ProgressListener;
+import com.jagsaund.rxuploader.rx.ProgressSampler;
 import com.jagsaund.rxuploader.rx.RxRequestBody;
+import com.jagsaund.rxuploader.store.BatchUploadService;
+import com.jagsaund.rxuploader.store.ChunkedUploadService;
+import com.jagsaund.rxuploader.store.MultipartUploadService;
 import com.jagsaund.rxuploader.store.UploadService;
+import com.jagsaund.rxuploader.throttle.BandwidthLimiter;
+import com.jagsaund.rxuploader.throttle.TokenBucket;
 import com.jagsaund.rxuploader.utils.StringUtils;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.Headers;
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
 import rx.Emitter;
 import rx.Observable;
 import rx.Scheduler;
+import rx.Single;
 import rx.SingleSubscriber;
 import rx.Subscription;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.functions.Actions;
+import rx.functions.Func3;
 import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+import rx.subscriptions.SerialSubscription;
+import rx.subscriptions.Subscriptions;
 
 class Uploader {
     private static final String DEFAULT_FORM_DATA_NAME = "file";
 
-    @NonNull private final UploadService uploadService;
+    /**
+     * Number of times a failed part of a multipart upload is sent again before the whole upload
+     * fails.
+     */
+    static final int DEFAULT_PART_RETRIES = 3;
+
+    /**
+     * Upper bounds of the jittered delay before a failed part is sent again.
+     */
+    private static final long DEFAULT_PART_RETRY_BASE_DELAY_MILLIS = 500;
+    private static final long DEFAULT_PART_RETRY_MAX_DELAY_MILLIS = 10000;
+
+    @Nullable private final UploadService uploadService;
+    @Nullable private final ChunkedUploadService chunkedUploadService;
+    @Nullable private final MultipartUploadService<?> multipartUploadService;
     @NonNull private final Scheduler worker;
+    @NonNull private final BandwidthLimiter bandwidthLimiter;
+    @NonNull private final Func3<String, String, Long, Observable<Job>> checkpoint;
+
+    private final long chunkSize;
+    private final long partSize;
+    private final int maxParallelParts;
 
     @Nullable private String formDataName;
 
+    @NonNull private Compression compression = Compression.NONE;
+
+    /**
+     * Buffers of {@link FileChannelRequestBody} instances or null to read files through an
+     * {@link RxRequestBody}.
+     */
+    @Nullable private BufferPool bufferPool;
+
+    @NonNull private final ProgressReporter progressReporter = new ProgressReporter();
+
+    @Nullable private BatchUploadService batchUploadService;
+
+    @NonNull private RetryPolicy partRetryPolicy =
+            new RetryPolicy(DEFAULT_PART_RETRIES + 1, DEFAULT_PART_RETRY_BASE_DELAY_MILLIS,
+                    DEFAULT_PART_RETRY_MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    @NonNull private Scheduler partRetryScheduler = Schedulers.computation();
+
     @VisibleForTesting
     Uploader(@NonNull UploadService uploadService, @NonNull Scheduler worker) {
+        this(uploadService, worker, new BandwidthLimiter());
+    }
+
+    @VisibleForTesting
+    Uploader(@NonNull UploadService uploadService, @NonNull Scheduler worker,
+            @NonNull BandwidthLimiter bandwidthLimiter) {
         this.uploadService = uploadService;
         this.worker = worker;
+        this.bandwidthLimiter = bandwidthLimiter;
+        chunkedUploadService = null;
+        checkpoint = (jobId, uploadId, offset) -> Observable.just(Job.INVALID_JOB);
+        chunkSize = 0;
+        multipartUploadService = null;
+        partSize = 0;
+        maxParallelParts = 0;
+    }
+
+    @VisibleForTesting
+    Uploader(@NonNull ChunkedUploadService chunkedUploadService, long chunkSize,
+            @NonNull Func3<String, String, Long, Observable<Job>> checkpoint,
+            @NonNull Scheduler worker, @NonNull BandwidthLimiter bandwidthLimiter) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least one byte");
+        }
+        this.chunkedUploadService = chunkedUploadService;
+        this.chunkSize = chunkSize;
+        this.checkpoint = checkpoint;
+        this.worker = worker;
+        this.bandwidthLimiter = bandwidthLimiter;
+        uploadService = null;
+        multipartUploadService = null;
+        partSize = 0;
+        maxParallelParts = 0;
+    }
+
+    @VisibleForTesting
+    Uploader(@NonNull MultipartUploadService<?> multipartUploadService, long partSize,
+            int maxParallelParts, @NonNull Scheduler worker,
+            @NonNull BandwidthLimiter bandwidthLimiter) {
+        if (partSize < 1) {
+            throw new IllegalArgumentException("Part size must be at least one byte");
+        }
+        if (maxParallelParts < 1) {
+            throw new IllegalArgumentException("Must allow at least one part at a time");
+        }
+        this.multipartUploadService = multipartUploadService;
+        this.partSize = partSize;
+        this.maxParallelParts = maxParallelParts;
+        this.worker = worker;
+        this.bandwidthLimiter = bandwidthLimiter;
+        uploadService = null;
+        chunkedUploadService = null;
+        checkpoint = (jobId, uploadId, offset) -> Observable.just(Job.INVALID_JOB);
+        chunkSize = 0;
     }
 
     /**
      * Construct a new upload that will execute upload operations on the {@code Schedulers.io}
-     * scheduler.
+     * scheduler and paces writes using the provided {@code bandwidthLimiter}.
      *
      * @param uploadService Service to communicate to backend
+     * @param bandwidthLimiter Limits the rate at which content is uploaded
      * @return A new uploader instance.
      */
     @NonNull
-    static Uploader create(@NonNull UploadService uploadService) {
-        return new Uploader(uploadService, Schedulers.io());
+    static Uploader create(@NonNull UploadService uploadService,
+            @NonNull BandwidthLimiter bandwidthLimiter) {
+        return new Uploader(uploadService, Schedulers.io(), bandwidthLimiter);
+    }
+
+    /**
+     * Construct a new uploader which uploads files in chunks of {@code chunkSize} bytes through a
+     * resumable upload session. The upload session and every acknowledged chunk are recorded with
+     * the {@code checkpoint} function, called with the id of the job, the id of the session and
+     * the number of acknowledged bytes, so an interrupted upload resumes from the last
+     * acknowledged chunk.
+     *
+     * @param chunkedUploadService Service to communicate to backend
+     * @param chunkSize Maximum number of bytes sent per request
+     * @param checkpoint Persists the progress of the upload
+     * @param bandwidthLimiter Limits the rate at which content is uploaded
+     * @return A new uploader instance.
+     */
+    @NonNull
+    static Uploader createChunked(@NonNull ChunkedUploadService chunkedUploadService,
+            long chunkSize, @NonNull Func3<String, String, Long, Observable<Job>> checkpoint,
+            @NonNull BandwidthLimiter bandwidthLimiter) {
+        return new Uploader(chunkedUploadService, chunkSize, checkpoint, Schedulers.io(),
+                bandwidthLimiter);
+    }
+
+    /**
+     * Construct a new uploader which splits files into parts of {@code partSize} bytes and
+     * uploads up to {@code maxParallelParts} parts at the same time over separate requests.
+     *
+     * @param multipartUploadService Service to communicate to backend
+     * @param partSize Maximum number of bytes per part
+     * @param maxParallelParts Maximum number of parts uploaded at the same time
+     * @param bandwidthLimiter Limits the rate at which content is uploaded
+     * @return A new uploader instance.
+     */
+    @NonNull
+    static Uploader createMultipart(@NonNull MultipartUploadService<?> multipartUploadService,
+            long partSize, int maxParallelParts, @NonNull BandwidthLimiter bandwidthLimiter) {
+        return new Uploader(multipartUploadService, partSize, maxParallelParts, Schedulers.io(),
+                bandwidthLimiter);
     }
 
     /**
@@ -55,6 +217,103 @@ class Uploader {
         formDataName = name;
     }
 
+    /**
+     * Sets the encoding applied to files uploaded in a single request, including batches. Files
+     * uploaded in chunks or parts are never compressed as the server acknowledges ranges of the
+     * original file.
+     * The default is {@link Compression#NONE}.
+     *
+     * @param compression Encoding applied to uploaded files
+     */
+    public void setCompression(@NonNull Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Reads uncompressed files through a {@link FileChannelRequestBody} into buffers of the
+     * {@code bufferPool} instead of an {@link RxRequestBody}. Large reads reduce the CPU spent on
+     * system calls and progress updates for large files, the pool bounds the memory used by
+     * concurrent uploads. Does not apply to batches, which hold small files.
+     *
+     * @param bufferPool Buffers shared by all uploads
+     */
+    public void setBufferPool(@NonNull BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Limits how often the progress of each upload is reported.
+     *
+     * @param progressSampler Thresholds which must be reached between two progress updates
+     */
+    public void setProgressSampler(@NonNull ProgressSampler progressSampler) {
+        progressReporter.setProgressSampler(progressSampler);
+    }
+
+    /**
+     * Reports the progress of each upload in its {@link UploadProgress} only, instead of also
+     * emitting a {@link Status} after every update. The first update of an upload is still
+     * emitted as a {@link Status} to mark the transition to sending.
+     *
+     * @param statusUpdates false to report progress in {@link UploadProgress} only
+     */
+    public void setStatusUpdates(boolean statusUpdates) {
+        progressReporter.setStatusUpdates(statusUpdates);
+    }
+
+    /**
+     * Sets how failed parts of a multipart upload are sent again.
+     * The default sends a part again up to {@value DEFAULT_PART_RETRIES} times.
+     *
+     * @param partRetryPolicy number of attempts and backoff between attempts of each part
+     * @param scheduler scheduler the backoff delays run on
+     */
+    @VisibleForTesting
+    void setPartRetryPolicy(@NonNull RetryPolicy partRetryPolicy, @NonNull Scheduler scheduler) {
+        this.partRetryPolicy = partRetryPolicy;
+        this.partRetryScheduler = scheduler;
+    }
+
+    /**
+     * @return the progress of the uploads in bytes
+     */
+    @NonNull
+    ProgressReporter progressReporter() {
+        return progressReporter;
+    }
+
+    /**
+     * Sets the service used by {@link #uploadBatch(List, List)}.
+     *
+     * @param batchUploadService Service to upload several files in a single request
+     */
+    public void setBatchUploadService(@NonNull BatchUploadService batchUploadService) {
+        this.batchUploadService = batchUploadService;
+    }
+
+    /**
+     * Uploads the files of several jobs in a single request to the provided
+     * {@linkplain BatchUploadService}. Status updates are emitted for each job individually.
+     * A job whose file is rejected by the service fails with {@link ErrorType#SERVICE}.
+     * The operation is performed on the IO Scheduler ({@code Schedulers.io}).
+     *
+     * @param jobs Provide information necessary to process the upload requests
+     * @param files The content to upload, in the order of {@code jobs}
+     * @return An {@linkplain Observable} which emits {@linkplain Status} updates of all jobs.
+     */
+    @NonNull
+    public Observable<Status> uploadBatch(@NonNull List<Job> jobs, @NonNull List<File> files) {
+        final BatchUploadService service = batchUploadService;
+        if (service == null) {
+            return Observable.error(new IllegalStateException("No batch upload service"));
+        }
+        final String name = StringUtils.getOrDefault(formDataName, DEFAULT_FORM_DATA_NAME);
+        return new BatchUploadObservable(service, jobs, files, name, bandwidthLimiter,
+                compression, progressReporter)
+                .create()
+                .subscribeOn(worker);
+    }
+
     /**
      * Uploads the file to the provided {@linkplain UploadService}.
      * Status updates (queued, sending, failed, completed) are communicated to the client as a
@@ -67,24 +326,96 @@ class Uploader {
      */
     @NonNull
     public Observable<Status> upload(@NonNull Job job, @NonNull File file) {
+        if (multipartUploadService != null) {
+            return new MultipartUploadObservable(multipartUploadService, job, file, partSize,
+                    maxParallelParts, partRetryPolicy, partRetryScheduler, worker,
+                    bandwidthLimiter, bufferPool, progressReporter)
+                    .create();
+        }
+
+        if (chunkedUploadService != null) {
+            return new ChunkedUploadObservable(chunkedUploadService, job, file, chunkSize,
+                    checkpoint, bandwidthLimiter, bufferPool, progressReporter)
+                    .create()
+                    .subscribeOn(worker);
+        }
+
         final String name = StringUtils.getOrDefault(formDataName, DEFAULT_FORM_DATA_NAME);
-        return new UploadObservable(uploadService, job, file, name)
+        return new UploadObservable(uploadService, job, file, name, bandwidthLimiter,
+                compression, bufferPool, progressReporter)
                 .create()
                 .subscribeOn(worker);
     }
 
+    /**
+     * Creates the form data part of a file. The part of a compressed file declares its
+     * {@code Content-Encoding}.
+     */
+    @NonNull
+    static MultipartBody.Part createFormData(@NonNull String name, @NonNull String filename,
+            @NonNull RequestBody body, @NonNull Compression compression) {
+        final String contentEncoding = compression.contentEncoding();
+        if (contentEncoding == null) {
+            return MultipartBody.Part.createFormData(name, filename, body);
+        }
+
+        final StringBuilder disposition = new StringBuilder("form-data; name=");
+        appendQuotedString(disposition, name);
+        disposition.append("; filename=");
+        appendQuotedString(disposition, filename);
+        return MultipartBody.Part.create(Headers.of(
+                "Content-Disposition", disposition.toString(),
+                "Content-Encoding", contentEncoding), body);
+    }
+
+    /**
+     * Appends a quoted header parameter value the same way as
+     * {@link MultipartBody.Part#createFormData(String, String, RequestBody)}.
+     */
+    private static void appendQuotedString(@NonNull StringBuilder target, @NonNull String key) {
+        target.append('"');
+        for (int i = 0; i < key.length(); i++) {
+            final char ch = key.charAt(i);
+            switch (ch) {
+                case '\n':
+                    target.append("%0A");
+                    break;
+                case '\r':
+                    target.append("%0D");
+                    break;
+                case '"':
+                    target.append("%22");
+                    break;
+                default:
+                    target.append(ch);
+                    break;
+            }
+        }
+        target.append('"');
+    }
+
     static class UploadObservable {
         @NonNull private final UploadService uploadService;
         @NonNull private final Job job;
         @NonNull private final File file;
         @NonNull private final String formDataName;
+        @NonNull private final BandwidthLimiter bandwidthLimiter;
+        @NonNull private final Compression compression;
+        @Nullable private final BufferPool bufferPool;
+        @NonNull private final ProgressReporter progressReporter;
 
         UploadObservable(@NonNull UploadService uploadService, @NonNull Job job, @NonNull File file,
-                @NonNull String formDataName) {
+                @NonNull String formDataName, @NonNull BandwidthLimiter bandwidthLimiter,
+                @NonNull Compression compression, @Nullable BufferPool bufferPool,
+                @NonNull ProgressReporter progressReporter) {
             this.uploadService = uploadService;
             this.job = job;
             this.file = file;
             this.formDataName = formDataName;
+            this.bandwidthLimiter = bandwidthLimiter;
+            this.compression = compression;
+            this.bufferPool = bufferPool;
+            this.progressReporter = progressReporter;
         }
 
         @NonNull
@@ -92,8 +423,16 @@ class Uploader {
             return Observable.create(emitter -> {
                 final RequestBody fileBody;
                 final String jobId = job.id();
+                final long size = file.length();
+                final ProgressListener listener =
+                        progressReporter.listener(emitter, jobId, size);
                 try {
-                    fileBody = RxRequestBody.create(emitter, jobId, file, job.mimeType());
+                    fileBody = bufferPool != null && compression == Compression.NONE
+                            ? FileChannelRequestBody.create(listener, file, job.mimeType(), 0,
+                                    size, bufferPool, bandwidthLimiter,
+                                    bandwidthLimiter.newJobBucket())
+                            : RxRequestBody.create(listener, file, job.mimeType(),
+                                    bandwidthLimiter, compression);
                 } catch(@NonNull FileNotFoundException e) {
                     emitter.onError(e);
                     return;
@@ -102,7 +441,7 @@ class Uploader {
                 final String filename = file.getName();
 
                 final MultipartBody.Part body =
-                        MultipartBody.Part.createFormData(formDataName, filename, fileBody);
+                        createFormData(formDataName, filename, fileBody, compression);
                 final Subscription subscription = uploadService.upload(job.metadata(), body)
                         .subscribe(new SingleSubscriber() {
                             @Override
@@ -120,4 +459,381 @@ class Uploader {
             }, Emitter.BackpressureMode.LATEST);
         }
     }
+
+    /**
+     * Uploads a file through a {@link ChunkedUploadService}. Requests are issued one after another
+     * on the subscribing thread. Each chunk is only appended once the previous one has been
+     * acknowledged and checkpointed.
+     */
+    static class ChunkedUploadObservable {
+        @NonNull private final ChunkedUploadService uploadService;
+        @NonNull private final Job job;
+        @NonNull private final File file;
+        @NonNull private final Func3<String, String, Long, Observable<Job>> checkpoint;
+        @NonNull private final BandwidthLimiter bandwidthLimiter;
+        @Nullable private final BufferPool bufferPool;
+        @NonNull private final ProgressReporter progressReporter;
+
+        private final long chunkSize;
+
+        ChunkedUploadObservable(@NonNull ChunkedUploadService uploadService, @NonNull Job job,
+                @NonNull File file, long chunkSize,
+                @NonNull Func3<String, String, Long, Observable<Job>> checkpoint,
+                @NonNull BandwidthLimiter bandwidthLimiter, @Nullable BufferPool bufferPool,
+                @NonNull ProgressReporter progressReporter) {
+            this.uploadService = uploadService;
+            this.job = job;
+            this.file = file;
+            this.chunkSize = chunkSize;
+            this.checkpoint = checkpoint;
+            this.bandwidthLimiter = bandwidthLimiter;
+            this.bufferPool = bufferPool;
+            this.progressReporter = progressReporter;
+        }
+
+        @NonNull
+        Observable<Status> create() {
+            return Observable.create(emitter -> {
+                // unsubscribing cancels the request in flight and stops the upload
+                final SerialSubscription call = new SerialSubscription();
+                emitter.setSubscription(call);
+
+                final String jobId = job.id();
+                final long size = file.length();
+                // chunks share the progress and the bandwidth of the upload
+                final ProgressListener listener =
+                        progressReporter.listener(emitter, jobId, size);
+                final TokenBucket jobBucket = bandwidthLimiter.newJobBucket();
+                try {
+                    if (!file.exists()) {
+                        throw new FileNotFoundException();
+                    }
+
+                    // only the session is checkpointed, the job may be paused meanwhile
+                    String uploadId = job.uploadId();
+                    long offset = job.offset();
+                    if (uploadId == null || offset > size) {
+                        final Single<String> init = uploadService.init(job.metadata(),
+                                file.getName(), job.mimeType(), size);
+                        uploadId = await(init, call);
+                        offset = 0;
+                        await(checkpoint.call(jobId, uploadId, offset).toSingle(), call);
+                    }
+
+                    while (offset < size) {
+                        final long length = Math.min(chunkSize, size - offset);
+                        final long chunkOffset = offset;
+                        final ProgressListener chunkListener =
+                                bytesWritten -> listener.onProgress(chunkOffset + bytesWritten);
+                        final RequestBody chunk = bufferPool != null
+                                ? FileChannelRequestBody.create(chunkListener, file,
+                                        job.mimeType(), offset, length, bufferPool,
+                                        bandwidthLimiter, jobBucket)
+                                : RxRequestBody.create(chunkListener, file, job.mimeType(),
+                                        offset, length, bandwidthLimiter, jobBucket);
+                        final Single<Long> append = uploadService.append(uploadId, offset, chunk);
+                        final long confirmed = await(append, call);
+                        if (confirmed <= offset || confirmed > size) {
+                            throw new IOException("Invalid offset confirmed: " + confirmed);
+                        }
+
+                        offset = confirmed;
+                        await(checkpoint.call(jobId, uploadId, offset).toSingle(), call);
+                    }
+
+                    final Object response = await(uploadService.complete(uploadId), call);
+                    emitter.onNext(Status.createCompleted(jobId, response));
+                    emitter.onCompleted();
+                } catch (CancellationException e) {
+                    // the subscriber is gone, nobody is left to notify
+                } catch (Throwable e) {
+                    Exceptions.throwIfFatal(e);
+                    emitter.onError(e);
+                }
+            }, Emitter.BackpressureMode.LATEST);
+        }
+
+        /**
+         * Blocks until the {@code single} emits its value. The original error is rethrown as is so
+         * the {@link UploadErrorAdapter} sees the same exceptions as for a regular upload.
+         *
+         * @throws CancellationException if {@code call} is unsubscribed while waiting
+         */
+        @SuppressWarnings("unchecked")
+        private static <R> R await(@NonNull Single<R> single, @NonNull SerialSubscription call)
+                throws Throwable {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicReference<Object> value = new AtomicReference<>();
+            final AtomicReference<Throwable> error = new AtomicReference<>();
+
+            final Subscription subscription = single.subscribe(result -> {
+                value.set(result);
+                latch.countDown();
+            }, throwable -> {
+                error.set(throwable);
+                latch.countDown();
+            });
+            call.set(Subscriptions.from(subscription, Subscriptions.create(latch::countDown)));
+
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                subscription.unsubscribe();
+                throw new InterruptedIOException();
+            }
+
+            if (error.get() != null) {
+                throw error.get();
+            }
+            if (call.isUnsubscribed()) {
+                throw new CancellationException();
+            }
+            return (R) value.get();
+        }
+    }
+
+    /**
+     * Uploads a file through a {@link MultipartUploadService}. The file is split into ranges of
+     * the part size which are uploaded concurrently, each on its own thread of the worker. A failed
+     * part is sent again on its own after a backoff delay without affecting the other parts.
+     * Progress of all parts is aggregated into a single stream of {@link Status} items.
+     * <br/>
+     * An upload which fails or is unsubscribed from after it was initiated is aborted so the
+     * server can discard the parts it has received.
+     */
+    static class MultipartUploadObservable {
+        @NonNull private final MultipartUploadService<?> uploadService;
+        @NonNull private final Job job;
+        @NonNull private final File file;
+        @NonNull private final Scheduler worker;
+        @NonNull private final BandwidthLimiter bandwidthLimiter;
+        @Nullable private final BufferPool bufferPool;
+        @NonNull private final ProgressReporter progressReporter;
+
+        @NonNull private final RetryPolicy partRetryPolicy;
+        @NonNull private final Scheduler retryScheduler;
+
+        private final long partSize;
+        private final int maxParallelParts;
+
+        MultipartUploadObservable(@NonNull MultipartUploadService<?> uploadService,
+                @NonNull Job job, @NonNull File file, long partSize, int maxParallelParts,
+                @NonNull RetryPolicy partRetryPolicy, @NonNull Scheduler retryScheduler,
+                @NonNull Scheduler worker, @NonNull BandwidthLimiter bandwidthLimiter,
+                @Nullable BufferPool bufferPool, @NonNull ProgressReporter progressReporter) {
+            this.uploadService = uploadService;
+            this.job = job;
+            this.file = file;
+            this.partSize = partSize;
+            this.maxParallelParts = maxParallelParts;
+            this.partRetryPolicy = partRetryPolicy;
+            this.retryScheduler = retryScheduler;
+            this.worker = worker;
+            this.bandwidthLimiter = bandwidthLimiter;
+            this.bufferPool = bufferPool;
+            this.progressReporter = progressReporter;
+        }
+
+        @NonNull
+        Observable<Status> create() {
+            return Observable.defer(() -> {
+                if (!file.exists()) {
+                    return Observable.error(new FileNotFoundException());
+                }
+
+                final String jobId = job.id();
+                final long size = file.length();
+                final int partCount = (int) Math.max(1, (size + partSize - 1) / partSize);
+                final String[] partTags = new String[partCount];
+                final PartProgress partProgress = new PartProgress(partCount);
+                final TokenBucket jobBucket = bandwidthLimiter.newJobBucket();
+
+                // parts report progress from their own threads, the subject serializes them
+                final Subject<Status, Status> progress =
+                        PublishSubject.<Status>create().toSerialized();
+                final ProgressListener uploadListener =
+                        progressReporter.listener(progress, jobId, size);
+
+                final Observable<Status> upload = uploadService
+                        .initiate(job.metadata(), file.getName(), job.mimeType(), size)
+                        .subscribeOn(worker)
+                        .toObservable()
+                        .flatMap(uploadId -> {
+                            final Observable<Status> parts = Observable.range(0, partCount)
+                                    .flatMap(index -> {
+                                        final ProgressListener listener = bytesWritten -> {
+                                            // emit while holding the lock to keep progress in
+                                            // order
+                                            synchronized (partProgress) {
+                                                uploadListener.onProgress(
+                                                        partProgress.update(index, bytesWritten));
+                                            }
+                                        };
+                                        return uploadPart(uploadId, index, size, listener,
+                                                jobBucket).doOnNext(tag -> partTags[index] = tag);
+                                    }, maxParallelParts)
+                                    .toList()
+                                    .flatMap(__ -> uploadService
+                                            .complete(uploadId, Arrays.asList(partTags))
+                                            .toObservable()
+                                            .map(response -> Status
+                                                    .createCompleted(jobId, response)));
+                            return abortUnlessCompleted(uploadId, parts);
+                        })
+                        .doOnTerminate(progress::onCompleted);
+
+                return Observable.merge(progress.onBackpressureLatest(), upload);
+            });
+        }
+
+        @NonNull
+        private Observable<String> uploadPart(@NonNull String uploadId, int index, long size,
+                @NonNull ProgressListener listener, @NonNull TokenBucket jobBucket) {
+            return Observable.defer(() -> {
+                final long offset = index * partSize;
+                final long length = Math.min(partSize, size - offset);
+                final RequestBody part;
+                try {
+                    part = bufferPool != null
+                            ? FileChannelRequestBody.create(listener, file, job.mimeType(),
+                                    offset, length, bufferPool, bandwidthLimiter, jobBucket)
+                            : RxRequestBody.create(listener, file, job.mimeType(), offset,
+                                    length, bandwidthLimiter, jobBucket);
+                } catch (IOException e) {
+                    return Observable.error(e);
+                }
+                return uploadService.uploadPart(uploadId, index + 1, part).toObservable();
+            })
+                    .subscribeOn(worker)
+                    .retryWhen(errors -> {
+                        final AtomicInteger failedAttempts = new AtomicInteger();
+                        return errors.flatMap(error -> {
+                            final int failed = failedAttempts.incrementAndGet();
+                            // a rejected part means the backend is down, retrying it is pointless
+                            if (error instanceof CircuitBreakerOpenException
+                                    || !partRetryPolicy.canRetry(failed)) {
+                                return Observable.<Long>error(error);
+                            }
+                            return Observable.timer(partRetryPolicy.delayMillis(failed),
+                                    TimeUnit.MILLISECONDS, retryScheduler);
+                        });
+                    });
+        }
+
+        /**
+         * Aborts the multipart upload if the {@code upload} fails or is unsubscribed from before
+         * it has completed. The outcome of the abort is ignored; a server which missed it must
+         * expire the upload on its own.
+         */
+        @NonNull
+        private Observable<Status> abortUnlessCompleted(@NonNull String uploadId,
+                @NonNull Observable<Status> upload) {
+            final AtomicBoolean terminated = new AtomicBoolean();
+            final Action0 abort = () -> {
+                if (terminated.compareAndSet(false, true)) {
+                    uploadService.abort(uploadId)
+                            .subscribeOn(worker)
+                            .subscribe(Actions.empty(), Actions.empty());
+                }
+            };
+            return upload
+                    .doOnCompleted(() -> terminated.set(true))
+                    .doOnError(error -> abort.call())
+                    .doOnUnsubscribe(abort);
+        }
+    }
+
+    /**
+     * Tracks the bytes written of every part. A part which is sent again starts over from zero.
+     */
+    private static class PartProgress {
+        @NonNull private final long[] written;
+
+        private long sent;
+
+        PartProgress(int partCount) {
+            written = new long[partCount];
+        }
+
+        /**
+         * @param index index of the part
+         * @param bytesWritten number of bytes of the part written so far
+         * @return number of bytes written of all parts
+         */
+        synchronized long update(int index, long bytesWritten) {
+            sent += bytesWritten - written[index];
+            written[index] = bytesWritten;
+            return sent;
+        }
+    }
+
+    static class BatchUploadObservable {
+        @NonNull private final BatchUploadService uploadService;
+        @NonNull private final List<Job> jobs;
+        @NonNull private final List<File> files;
+        @NonNull private final String formDataName;
+        @NonNull private final BandwidthLimiter bandwidthLimiter;
+        @NonNull private final Compression compression;
+        @NonNull private final ProgressReporter progressReporter;
+
+        BatchUploadObservable(@NonNull BatchUploadService uploadService, @NonNull List<Job> jobs,
+                @NonNull List<File> files, @NonNull String formDataName,
+                @NonNull BandwidthLimiter bandwidthLimiter, @NonNull Compression compression,
+                @NonNull ProgressReporter progressReporter) {
+            this.uploadService = uploadService;
+            this.jobs = jobs;
+            this.files = files;
+            this.formDataName = formDataName;
+            this.bandwidthLimiter = bandwidthLimiter;
+            this.compression = compression;
+            this.progressReporter = progressReporter;
+        }
+
+        @NonNull
+        Observable<Status> create() {
+            return Observable.create(emitter -> {
+                final List<Map<String, Object>> metadata = new ArrayList<>(jobs.size());
+                final List<MultipartBody.Part> parts = new ArrayList<>(jobs.size());
+                for (int i = 0; i < jobs.size(); i++) {
+                    final Job job = jobs.get(i);
+                    final File file = files.get(i);
+                    final RequestBody fileBody;
+                    try {
+                        fileBody = RxRequestBody.create(
+                                progressReporter.listener(emitter, job.id(), file.length()),
+                                file, job.mimeType(), bandwidthLimiter, compression);
+                    } catch(@NonNull FileNotFoundException e) {
+                        emitter.onError(e);
+                        return;
+                    }
+                    metadata.add(job.metadata());
+                    parts.add(createFormData(formDataName, file.getName(), fileBody,
+                            compression));
+                }
+
+                final Subscription subscription = uploadService.upload(metadata, parts)
+                        .subscribe(new SingleSubscriber<List<?>>() {
+                            @Override
+                            public void onSuccess(@NonNull List<?> responses) {
+                                // fan the responses back out to the individual jobs
+                                for (int i = 0; i < jobs.size(); i++) {
+                                    final String jobId = jobs.get(i).id();
+                                    final Object response =
+                                            i < responses.size() ? responses.get(i) : null;
+                                    emitter.onNext(response != null
+                                            ? Status.createCompleted(jobId, response)
+                                            : Status.createFailed(jobId, ErrorType.SERVICE));
+                                }
+                                emitter.onCompleted();
+                            }
+
+                            @Override
+                            public void onError(@NonNull Throwable error) {
+                                emitter.onError(error);
+                            }
+                        });
+                emitter.setSubscription(subscription);
+            }, Emitter.BackpressureMode.BUFFER);
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.jagsaund.rxuploader.job;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import com.google.auto.value.AutoValue;
 import com.google.gson.Gson;
 import com.google.gson.TypeAdapter;
@@ -11,6 +12,27 @@ import java.util.Map;
 public abstract class Job {
     public static final String INVALID_JOB_ID = "invalid_job_id";
     public static final Map<String, Object> INVALID_METADATA = Collections.emptyMap();
+
+    /**
+     * Priority for bulk or background uploads which should yield to all other uploads.
+     */
+    public static final int PRIORITY_LOW = -1;
+
+    /**
+     * Default priority of a job when none is specified.
+     */
+    public static final int PRIORITY_NORMAL = 0;
+
+    /**
+     * Priority for user initiated uploads which should be uploaded ahead of other queued jobs.
+     */
+    public static final int PRIORITY_HIGH = 1;
+
+    /**
+     * Size of a job whose file has not been inspected yet.
+     */
+    public static final long SIZE_UNKNOWN = 0;
+
     public static final Job INVALID_JOB = Job.builder()
             .setId(INVALID_JOB_ID)
             .setStatus(Status.createInvalid(INVALID_JOB_ID))
@@ -30,7 +52,10 @@ public abstract class Job {
 
     @NonNull
     public static Builder builder() {
-        return new AutoValue_Job.Builder();
+        return new AutoValue_Job.Builder().setPriority(PRIORITY_NORMAL)
+                .setSize(SIZE_UNKNOWN)
+                .setAttempts(0)
+                .setOffset(0);
     }
 
     @NonNull
@@ -56,6 +81,87 @@ public abstract class Job {
     @NonNull
     public abstract String mimeType();
 
+    /**
+     * Scheduling priority of the job. Queued jobs with a higher priority are uploaded before jobs
+     * with a lower priority. Jobs with the same priority are uploaded in the order they were
+     * queued.
+     *
+     * @return priority of the job, defaults to {@link #PRIORITY_NORMAL}
+     */
+    public abstract int priority();
+
+    @NonNull
+    public Job withPriority(int priority) {
+        return toBuilder().setPriority(priority).build();
+    }
+
+    /**
+     * Size in bytes of the file to upload. The size is read from the file when the job is
+     * enqueued and cached with the job to avoid hitting the file system while scheduling.
+     *
+     * @return size of the file in bytes or {@link #SIZE_UNKNOWN}
+     */
+    public abstract long size();
+
+    @NonNull
+    public Job withSize(long size) {
+        return toBuilder().setSize(size).build();
+    }
+
+    /**
+     * Number of failed upload attempts which were eligible for an automatic retry. Reset when the
+     * job is retried manually.
+     *
+     * @return number of failed attempts
+     */
+    public abstract int attempts();
+
+    @NonNull
+    public Job withAttempts(int attempts) {
+        return toBuilder().setAttempts(attempts).build();
+    }
+
+    /**
+     * Hex encoded SHA-256 digest of the file contents. Only computed when deduplication is enabled.
+     *
+     * @return digest of the file or null if it has not been computed
+     */
+    @Nullable
+    public abstract String digest();
+
+    @NonNull
+    public Job withDigest(@Nullable String digest) {
+        return toBuilder().setDigest(digest).build();
+    }
+
+    /**
+     * Id of the session of a chunked upload, assigned by the server when the upload is started.
+     *
+     * @return session id or null if no chunked upload has been started
+     */
+    @Nullable
+    public abstract String uploadId();
+
+    /**
+     * Number of bytes of a chunked upload acknowledged by the server. An interrupted upload
+     * resumes from this offset.
+     *
+     * @return confirmed number of bytes
+     */
+    public abstract long offset();
+
+    /**
+     * Records the progress of a chunked upload.
+     *
+     * @param uploadId session id assigned by the server
+     * @param offset number of bytes acknowledged by the server
+     * @return a copy of this job with the upload session
+     */
+    @NonNull
+    public Job withUploadSession(@Nullable String uploadId, long offset) {
+        return toBuilder().setUploadId(uploadId).setOffset(offset).build();
+    }
+
     @AutoValue.Builder
     public abstract static class Builder {
         public abstract Builder setId(String jobId);
@@ -68,6 +174,18 @@ public abstract class Job {
 
         public abstract Builder setMimeType(String mimeType);
 
+        public abstract Builder setPriority(int priority);
+
+        public abstract Builder setSize(long size);
+
+        public abstract Builder setAttempts(int attempts);
+
+        public abstract Builder setDigest(@Nullable String digest);
+
+        public abstract Builder setUploadId(@Nullable String uploadId);
+
+        public abstract Builder setOffset(long offset);
+
         public abstract Job build();
     }
 }
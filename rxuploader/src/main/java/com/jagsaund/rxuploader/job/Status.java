@@ -4,7 +4,19 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import com.google.gson.annotations.Expose;
 
+/**
+ * State of an upload. A {@link StatusType#SENDING} status carries the progress of the upload in
+ * bytes along with the smoothed transfer rate and the estimated time remaining.
+ * <br/>
+ * Two statuses are equal when they describe the same state and percentage of progress; byte
+ * counts and rates are measurements and are not compared.
+ */
 public class Status {
+    /**
+     * Value of {@link #etaMillis()} when the time remaining is not known.
+     */
+    public static final long UNKNOWN_ETA = -1;
+
     @NonNull private final StatusType status;
     @NonNull private final String id;
 
@@ -16,13 +28,31 @@ public class Status {
     @Expose(serialize = false,
             deserialize = false) @Nullable private final Object response;
 
+    @Expose(serialize = false,
+            deserialize = false) private final long bytesSent;
+
+    @Expose(serialize = false,
+            deserialize = false) private final long totalBytes;
+
+    @Expose(serialize = false,
+            deserialize = false) private final long bytesPerSecond;
+
     private Status(@NonNull String id, @NonNull StatusType status, int progress,
             @Nullable ErrorType error, @Nullable Object response) {
+        this(id, status, progress, error, response, 0, 0, 0);
+    }
+
+    private Status(@NonNull String id, @NonNull StatusType status, int progress,
+            @Nullable ErrorType error, @Nullable Object response, long bytesSent,
+            long totalBytes, long bytesPerSecond) {
         this.id = id;
         this.status = status;
         this.progress = progress;
         this.error = error;
         this.response = response;
+        this.bytesSent = bytesSent;
+        this.totalBytes = totalBytes;
+        this.bytesPerSecond = bytesPerSecond;
     }
 
     @NonNull
@@ -35,6 +65,39 @@ public class Status {
         return new Status(id, StatusType.SENDING, progress, null, null);
     }
 
+    /**
+     * @param bytesSent number of bytes of the file sent so far
+     * @param totalBytes size of the file
+     */
+    @NonNull
+    public static Status createSending(@NonNull String id, long bytesSent, long totalBytes) {
+        return createSending(id, bytesSent, totalBytes, 0);
+    }
+
+    /**
+     * @param bytesSent number of bytes of the file sent so far
+     * @param totalBytes size of the file
+     * @param bytesPerSecond smoothed transfer rate of the upload or 0 if not known yet
+     */
+    @NonNull
+    public static Status createSending(@NonNull String id, long bytesSent, long totalBytes,
+            long bytesPerSecond) {
+        return new Status(id, StatusType.SENDING, percent(bytesSent, totalBytes), null, null,
+                bytesSent, totalBytes, bytesPerSecond);
+    }
+
+    /**
+     * @param bytesSent number of bytes of the file sent so far
+     * @param totalBytes size of the file
+     * @return percentage of the file sent, rounded down
+     */
+    public static int percent(long bytesSent, long totalBytes) {
+        if (totalBytes <= 0) {
+            return 0;
+        }
+        return (int) (Math.min(bytesSent, totalBytes) * 100 / totalBytes);
+    }
+
     @NonNull
     public static Status createCompleted(@NonNull String id, @Nullable Object response) {
         return new Status(id, StatusType.COMPLETED, 0, null, response);
@@ -45,6 +108,16 @@ public class Status {
         return new Status(id, StatusType.FAILED, 0, error, null);
     }
 
+    @NonNull
+    public static Status createPaused(@NonNull String id) {
+        return new Status(id, StatusType.PAUSED, 0, null, null);
+    }
+
+    @NonNull
+    public static Status createCancelled(@NonNull String id) {
+        return new Status(id, StatusType.CANCELLED, 0, null, null);
+    }
+
     @NonNull
     public static Status createInvalid(@NonNull String id) {
         return new Status(id, StatusType.INVALID, 0, null, null);
@@ -60,10 +133,54 @@ public class Status {
         return status;
     }
 
+    /**
+     * @return percentage of the file sent, see {@link #bytesSent()} for the exact progress
+     */
     public int progress() {
         return progress;
     }
 
+    /**
+     * @return number of bytes of the file sent so far or 0 if not known
+     */
+    public long bytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return size of the file or 0 if not known
+     */
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return smoothed transfer rate of the upload or 0 if not known
+     */
+    public long bytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return estimated time until the whole file is sent at the current transfer rate or
+     * {@link #UNKNOWN_ETA}
+     */
+    public long etaMillis() {
+        return eta(totalBytes - bytesSent, bytesPerSecond);
+    }
+
+    /**
+     * @param remainingBytes number of bytes left to send
+     * @param bytesPerSecond transfer rate
+     * @return time to send the remaining bytes at the given rate or {@link #UNKNOWN_ETA}
+     */
+    public static long eta(long remainingBytes, long bytesPerSecond) {
+        if (bytesPerSecond <= 0 || remainingBytes < 0) {
+            return UNKNOWN_ETA;
+        }
+        return remainingBytes * 1000 / bytesPerSecond;
+    }
+
     @NonNull
     public Status withProgress(int progress) {
         return createSending(id, progress);
@@ -112,6 +229,12 @@ public class Status {
                 + id
                 + ", progress="
                 + progress
+                + ", bytesSent="
+                + bytesSent
+                + ", totalBytes="
+                + totalBytes
+                + ", bytesPerSecond="
+                + bytesPerSecond
                 + ", error="
                 + error
                 + ", response="
@@ -7,6 +7,8 @@ public enum StatusType {
     SENDING("sending"),
     COMPLETED("completed"),
     FAILED("failed"),
+    PAUSED("paused"),
+    CANCELLED("cancelled"),
     INVALID("invalid");
 
     @NonNull private final String type;
@@ -30,6 +32,12 @@ public enum StatusType {
             case "failed": {
                 return FAILED;
             }
+            case "paused": {
+                return PAUSED;
+            }
+            case "cancelled": {
+                return CANCELLED;
+            }
             case "invalid":
             default: {
                 return INVALID;
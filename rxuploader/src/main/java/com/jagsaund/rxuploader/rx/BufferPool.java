@@ -0,0 +1,105 @@
+package com.jagsaund.rxuploader.rx;
+
+import android.support.annotation.NonNull;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Pool of fixed size buffers shared by the request bodies of all uploads. The pool never hands
+ * out more than {@code maxBuffers} buffers at a time, callers block until a buffer is released,
+ * so the memory used to stream uploads is bounded by {@code bufferSize * maxBuffers} regardless
+ * of the number of concurrent uploads and parts.
+ * <br/>
+ * Released buffers are kept for reuse; a buffer is only allocated when no released buffer is
+ * available.
+ */
+public class BufferPool {
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final int DEFAULT_MAX_BUFFERS = 8;
+
+    @NonNull private final Semaphore permits;
+
+    /**
+     * Buffers which have been released and can be handed out again.
+     * Guarded by {@code this}.
+     */
+    @NonNull private final Deque<byte[]> free;
+
+    private final int bufferSize;
+    private final int maxBuffers;
+
+    public BufferPool() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_BUFFERS);
+    }
+
+    /**
+     * @param bufferSize size of each buffer in bytes
+     * @param maxBuffers maximum number of buffers in use at the same time
+     */
+    public BufferPool(int bufferSize, int maxBuffers) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least one byte");
+        }
+        if (maxBuffers < 1) {
+            throw new IllegalArgumentException("Must allow at least one buffer");
+        }
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        permits = new Semaphore(maxBuffers, true);
+        free = new ArrayDeque<>(maxBuffers);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    /**
+     * Takes a buffer from the pool, blocking the calling thread until one is available. The
+     * buffer must be handed back with {@link #release(byte[])} once it is no longer used.
+     *
+     * @return a buffer of {@link #getBufferSize()} bytes
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    @NonNull
+    public byte[] acquire() throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer");
+        }
+
+        synchronized (this) {
+            final byte[] buffer = free.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Hands back a buffer taken with {@link #acquire()}.
+     *
+     * @param buffer the buffer which is no longer used
+     */
+    public void release(@NonNull byte[] buffer) {
+        synchronized (this) {
+            free.push(buffer);
+        }
+        permits.release();
+    }
+
+    /**
+     * @return the number of buffers currently handed out
+     */
+    public int inUse() {
+        return maxBuffers - permits.availablePermits();
+    }
+}
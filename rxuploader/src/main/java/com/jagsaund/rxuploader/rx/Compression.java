@@ -0,0 +1,40 @@
+package com.jagsaund.rxuploader.rx;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Defines how the content of a file is encoded while it is written to a request. Compressed
+ * content is produced on the fly as the file is read, so its length is not known up front and the
+ * request is sent with chunked transfer encoding.
+ */
+public enum Compression {
+    /**
+     * The file is sent as is.
+     */
+    NONE(null),
+
+    /**
+     * The file is compressed with gzip.
+     */
+    GZIP("gzip"),
+
+    /**
+     * The file is compressed with zlib deflate.
+     */
+    DEFLATE("deflate");
+
+    @Nullable private final String contentEncoding;
+
+    Compression(@Nullable String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * @return the value of the {@code Content-Encoding} header of compressed content or null if
+     * the content is not compressed
+     */
+    @Nullable
+    public String contentEncoding() {
+        return contentEncoding;
+    }
+}
@@ -0,0 +1,146 @@
+package com.jagsaund.rxuploader.rx;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.throttle.BandwidthLimiter;
+import com.jagsaund.rxuploader.throttle.TokenBucket;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import rx.Emitter;
+
+/**
+ * Request body which reads a range of a file through a {@linkplain FileChannel} with large
+ * positional reads. Compared to {@linkplain RxRequestBody} it issues far fewer read system calls
+ * and progress updates for large files and does not go through an {@code InputStream}.
+ * <br/>
+ * The file is copied once from the channel into a heap buffer and once more into the
+ * {@linkplain BufferedSink}; a true zero-copy transfer is not possible because OkHttp only
+ * exposes the request as a {@linkplain BufferedSink}.
+ * <br/>
+ * Each block of the file is read into a buffer of the shared {@linkplain BufferPool} which is
+ * handed back as soon as the block has been written to the sink, so the number of uploads and
+ * parts running at the same time is not limited by the size of the pool. The file is opened every
+ * time the body is written so the body can be written more than once. Progress and bandwidth
+ * limits are handled the same way as {@linkplain RxRequestBody}.
+ */
+public class FileChannelRequestBody extends RequestBody {
+    @NonNull private final MediaType mediaType;
+    @NonNull private final File file;
+    @NonNull private final ProgressListener progressListener;
+    @NonNull private final BandwidthLimiter bandwidthLimiter;
+    @NonNull private final TokenBucket jobBucket;
+    @NonNull private final BufferPool bufferPool;
+
+    private final long offset;
+    private final long length;
+
+    /**
+     * Creates a body holding {@code length} bytes of the file starting at {@code offset}. Progress
+     * is reported relative to the whole file.
+     *
+     * @param offset position of the first byte of the range in the file
+     * @param length number of bytes in the range
+     * @param bufferPool provides the buffer the file is read into
+     * @throws FileNotFoundException if the file does not exist
+     */
+    @NonNull
+    public static RequestBody create(@NonNull Emitter<Status> progressEmitter,
+            @NonNull String jobId, @NonNull File file, @NonNull String mimeType, long offset,
+            long length, @NonNull BufferPool bufferPool,
+            @NonNull BandwidthLimiter bandwidthLimiter) throws FileNotFoundException {
+        final long total = file.length();
+        return create(bytesWritten -> progressEmitter.onNext(
+                Status.createSending(jobId, offset + bytesWritten, total)), file, mimeType,
+                offset, length, bufferPool, bandwidthLimiter, bandwidthLimiter.newJobBucket());
+    }
+
+    /**
+     * Creates a body holding {@code length} bytes of the file starting at {@code offset} which
+     * reports the bytes written to the {@code progressListener}.
+     *
+     * @param offset position of the first byte of the range in the file
+     * @param length number of bytes in the range
+     * @param bufferPool provides the buffer the file is read into
+     * @param jobBucket bucket of the upload created with {@link BandwidthLimiter#newJobBucket()}
+     * @throws FileNotFoundException if the file does not exist
+     */
+    @NonNull
+    public static RequestBody create(@NonNull ProgressListener progressListener,
+            @NonNull File file, @NonNull String mimeType, long offset, long length,
+            @NonNull BufferPool bufferPool, @NonNull BandwidthLimiter bandwidthLimiter,
+            @NonNull TokenBucket jobBucket) throws FileNotFoundException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        return new FileChannelRequestBody(MediaType.parse(mimeType), file, offset, length,
+                bufferPool, bandwidthLimiter, jobBucket, progressListener);
+    }
+
+    @VisibleForTesting
+    FileChannelRequestBody(@NonNull MediaType mediaType, @NonNull File file, long offset,
+            long length, @NonNull BufferPool bufferPool,
+            @NonNull BandwidthLimiter bandwidthLimiter, @NonNull TokenBucket jobBucket,
+            @NonNull ProgressListener progressListener) {
+        this.mediaType = mediaType;
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.bufferPool = bufferPool;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.jobBucket = jobBucket;
+        this.progressListener = progressListener;
+    }
+
+    @NonNull
+    @Override
+    public MediaType contentType() {
+        return mediaType;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        try (final FileInputStream inputStream = new FileInputStream(file);
+             final FileChannel channel = inputStream.getChannel()) {
+            long written = 0;
+            progressListener.onProgress(0);
+
+            while (written < length) {
+                final int size = (int) Math.min(bufferPool.getBufferSize(), length - written);
+                bandwidthLimiter.acquire(jobBucket, size);
+
+                // the buffer is only held for a single block so uploads waiting for the
+                // bandwidth limiter or a slow connection do not keep other uploads from reading
+                final byte[] bytes = bufferPool.acquire();
+                try {
+                    final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+                    while (buffer.hasRemaining()) {
+                        // positional reads leave the channel position untouched
+                        if (channel.read(buffer, offset + written + buffer.position()) < 0) {
+                            throw new EOFException("File is shorter than the body");
+                        }
+                    }
+                    sink.write(bytes, 0, size);
+                } finally {
+                    bufferPool.release(bytes);
+                }
+
+                written += size;
+                progressListener.onProgress(written);
+            }
+        }
+    }
+}
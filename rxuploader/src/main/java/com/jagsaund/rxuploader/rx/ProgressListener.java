@@ -0,0 +1,13 @@
+package com.jagsaund.rxuploader.rx;
+
+/**
+ * Receives the progress of writing a request body.
+ */
+public interface ProgressListener {
+    /**
+     * Called before the first byte is written and after every write.
+     *
+     * @param bytesWritten number of bytes of the body written so far
+     */
+    void onProgress(long bytesWritten);
+}
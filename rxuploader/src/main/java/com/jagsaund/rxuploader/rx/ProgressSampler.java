@@ -0,0 +1,128 @@
+package com.jagsaund.rxuploader.rx;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import java.util.concurrent.TimeUnit;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Limits how often the progress of an upload is reported. Writing a body reports progress after
+ * every write, which for large files produces far more updates than a client can display. A
+ * sampled listener only passes an update on once the minimum interval has elapsed since the last
+ * update it passed on and the upload has advanced by the minimum number of bytes or percent, so
+ * the number of updates depends on the duration of the upload rather than the size of the file.
+ * <br/>
+ * The first update and the update reporting the whole file as sent are always passed on.
+ */
+public class ProgressSampler {
+    /**
+     * Thresholds of the sampler used by {@link com.jagsaund.rxuploader.UploadManager} unless
+     * another one is configured: at most ten updates per second, each at least one megabyte or
+     * one percent of the file apart.
+     */
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 100;
+    public static final long DEFAULT_MIN_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MIN_PERCENT = 1;
+
+    @NonNull private final Scheduler clock;
+
+    private final long minIntervalMillis;
+    private final long minBytes;
+    private final int minPercent;
+
+    /**
+     * @param minInterval minimum time between two updates
+     * @param unit unit of {@code minInterval}
+     * @param minBytes minimum number of bytes sent between two updates
+     * @param minPercent minimum percent of the file sent between two updates or 0 to only use
+     * {@code minBytes}
+     */
+    public ProgressSampler(long minInterval, @NonNull TimeUnit unit, long minBytes,
+            int minPercent) {
+        this(minInterval, unit, minBytes, minPercent, Schedulers.computation());
+    }
+
+    /**
+     * @param clock source of the current time
+     */
+    @VisibleForTesting
+    ProgressSampler(long minInterval, @NonNull TimeUnit unit, long minBytes, int minPercent,
+            @NonNull Scheduler clock) {
+        if (minInterval < 0) {
+            throw new IllegalArgumentException("Interval must not be negative");
+        }
+        if (minBytes < 1) {
+            throw new IllegalArgumentException("Must report at least one byte per update");
+        }
+        if (minPercent < 0 || minPercent > 100) {
+            throw new IllegalArgumentException("Percent must be between 0 and 100");
+        }
+        this.minIntervalMillis = unit.toMillis(minInterval);
+        this.minBytes = minBytes;
+        this.minPercent = minPercent;
+        this.clock = clock;
+    }
+
+    public long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    public long getMinBytes() {
+        return minBytes;
+    }
+
+    public int getMinPercent() {
+        return minPercent;
+    }
+
+    /**
+     * Creates a listener which passes sampled updates on to the {@code listener}. The returned
+     * listener keeps the state of a single upload and must not be called concurrently.
+     *
+     * @param listener receives the sampled updates
+     * @param total size of the whole file
+     * @return a listener to report every update of the upload to
+     */
+    @NonNull
+    public ProgressListener sample(@NonNull ProgressListener listener, long total) {
+        return new SampledProgressListener(listener, total);
+    }
+
+    private class SampledProgressListener implements ProgressListener {
+        @NonNull private final ProgressListener listener;
+
+        private final long total;
+
+        private boolean started;
+        private long lastBytes;
+        private long lastMillis;
+
+        SampledProgressListener(@NonNull ProgressListener listener, long total) {
+            this.listener = listener;
+            this.total = total;
+        }
+
+        @Override
+        public void onProgress(long bytesWritten) {
+            final long now = clock.now();
+            if (started && bytesWritten < total && !isDue(bytesWritten, now)) {
+                return;
+            }
+            started = true;
+            lastBytes = bytesWritten;
+            lastMillis = now;
+            listener.onProgress(bytesWritten);
+        }
+
+        private boolean isDue(long bytesWritten, long now) {
+            if (now - lastMillis < minIntervalMillis) {
+                return false;
+            }
+            final long delta = bytesWritten - lastBytes;
+            return delta >= minBytes || (minPercent > 0
+                    && RxRequestBody.progress(bytesWritten, total)
+                    - RxRequestBody.progress(lastBytes, total) >= minPercent);
+        }
+    }
+}
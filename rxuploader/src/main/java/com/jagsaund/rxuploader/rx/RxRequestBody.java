@@ -3,29 +3,50 @@ package com.jagsaund.rxuploader.rx;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.throttle.BandwidthLimiter;
+import com.jagsaund.rxuploader.throttle.TokenBucket;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.zip.Deflater;
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
+import okio.Buffer;
 import okio.BufferedSink;
+import okio.DeflaterSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
 import okio.Okio;
+import okio.Sink;
 import okio.Source;
 import rx.Emitter;
 
 /**
  * Transforms a {@linkplain RequestBody} into one that is reactive and will emit progress updates
  * to the provide {@code Emitter}. Progress updates are emitted as {@linkplain Status} items.
+ * <br/>
+ * Writes are paced by the provided {@linkplain BandwidthLimiter} so that the upload does not
+ * exceed the configured global and per-job rates.
+ * <br/>
+ * A body may hold a range of a file, eg. a chunk of a resumable upload, in which case progress is
+ * reported relative to the whole file. Bodies holding parts of a file which are uploaded at the
+ * same time report the bytes written to a {@linkplain ProgressListener} instead.
+ * <br/>
+ * A body may compress the file while it is written, see {@linkplain Compression}. Progress is
+ * then reported in bytes read from the file while bandwidth limits are charged for the compressed
+ * bytes written to the request.
  */
 public class RxRequestBody extends RequestBody {
     public static final long BUFFER_SIZE = 8 * 1024;
 
-    @NonNull private final String jobId;
     @NonNull private final MediaType mediaType;
     @NonNull private final InputStream inputStream;
-    @NonNull private final Emitter<Status> progressEmitter;
+    @NonNull private final ProgressListener progressListener;
+    @NonNull private final BandwidthLimiter bandwidthLimiter;
+    @NonNull private final TokenBucket jobBucket;
+    @NonNull private final Compression compression;
 
     private final long length;
 
@@ -33,21 +54,139 @@ public class RxRequestBody extends RequestBody {
     public static RequestBody create(@NonNull Emitter<Status> progressEmitter,
             @NonNull String jobId, @NonNull File file, @NonNull String mimeType)
             throws FileNotFoundException {
+        return create(progressEmitter, jobId, file, mimeType, new BandwidthLimiter());
+    }
+
+    @NonNull
+    public static RequestBody create(@NonNull Emitter<Status> progressEmitter,
+            @NonNull String jobId, @NonNull File file, @NonNull String mimeType,
+            @NonNull BandwidthLimiter bandwidthLimiter) throws FileNotFoundException {
+        return create(progressEmitter, jobId, file, mimeType, bandwidthLimiter, Compression.NONE);
+    }
+
+    /**
+     * Creates a body holding the whole file which is encoded with the given
+     * {@code compression} while it is written.
+     *
+     * @param compression encoding applied to the file
+     * @throws FileNotFoundException if the file cannot be opened
+     */
+    @NonNull
+    public static RequestBody create(@NonNull Emitter<Status> progressEmitter,
+            @NonNull String jobId, @NonNull File file, @NonNull String mimeType,
+            @NonNull BandwidthLimiter bandwidthLimiter, @NonNull Compression compression)
+            throws FileNotFoundException {
         final MediaType mediaType = MediaType.parse(mimeType);
         final InputStream inputStream = new FileInputStream(file);
         final long length = file.length();
 
-        return new RxRequestBody(progressEmitter, jobId, mediaType, inputStream, length);
+        return new RxRequestBody(progressEmitter, jobId, mediaType, inputStream, length,
+                bandwidthLimiter, compression);
+    }
+
+    /**
+     * Creates a body holding the whole file which is encoded with the given {@code compression}
+     * while it is written and reports the bytes read from the file to the
+     * {@code progressListener}.
+     *
+     * @param compression encoding applied to the file
+     * @throws FileNotFoundException if the file cannot be opened
+     */
+    @NonNull
+    public static RequestBody create(@NonNull ProgressListener progressListener,
+            @NonNull File file, @NonNull String mimeType,
+            @NonNull BandwidthLimiter bandwidthLimiter, @NonNull Compression compression)
+            throws FileNotFoundException {
+        final MediaType mediaType = MediaType.parse(mimeType);
+        final InputStream inputStream = new FileInputStream(file);
+
+        return new RxRequestBody(mediaType, inputStream, file.length(), bandwidthLimiter,
+                bandwidthLimiter.newJobBucket(), compression, progressListener);
+    }
+
+    /**
+     * Creates a body holding {@code length} bytes of the file starting at {@code offset}.
+     *
+     * @param offset position of the first byte of the range in the file
+     * @param length number of bytes in the range
+     * @throws IOException if the file cannot be opened or positioned
+     */
+    @NonNull
+    public static RequestBody create(@NonNull Emitter<Status> progressEmitter,
+            @NonNull String jobId, @NonNull File file, @NonNull String mimeType, long offset,
+            long length, @NonNull BandwidthLimiter bandwidthLimiter) throws IOException {
+        final MediaType mediaType = MediaType.parse(mimeType);
+        final InputStream inputStream = open(file, offset);
+
+        return new RxRequestBody(progressEmitter, jobId, mediaType, inputStream, length,
+                bandwidthLimiter, offset, file.length());
+    }
+
+    /**
+     * Creates a body holding {@code length} bytes of the file starting at {@code offset} which
+     * reports the bytes written to the {@code progressListener}. Parts of the same upload share
+     * the {@code jobBucket} so that together they respect the per-job rate.
+     *
+     * @param offset position of the first byte of the range in the file
+     * @param length number of bytes in the range
+     * @param jobBucket bucket of the upload created with {@link BandwidthLimiter#newJobBucket()}
+     * @throws IOException if the file cannot be opened or positioned
+     */
+    @NonNull
+    public static RequestBody create(@NonNull ProgressListener progressListener,
+            @NonNull File file, @NonNull String mimeType, long offset, long length,
+            @NonNull BandwidthLimiter bandwidthLimiter, @NonNull TokenBucket jobBucket)
+            throws IOException {
+        final MediaType mediaType = MediaType.parse(mimeType);
+        final InputStream inputStream = open(file, offset);
+
+        return new RxRequestBody(mediaType, inputStream, length, bandwidthLimiter, jobBucket,
+                Compression.NONE, progressListener);
     }
 
     @VisibleForTesting
     RxRequestBody(@NonNull Emitter<Status> progressEmitter, @NonNull String jobId,
             @NonNull MediaType mediaType, @NonNull InputStream inputStream, long length) {
-        this.progressEmitter = progressEmitter;
-        this.jobId = jobId;
+        this(progressEmitter, jobId, mediaType, inputStream, length, new BandwidthLimiter());
+    }
+
+    @VisibleForTesting
+    RxRequestBody(@NonNull Emitter<Status> progressEmitter, @NonNull String jobId,
+            @NonNull MediaType mediaType, @NonNull InputStream inputStream, long length,
+            @NonNull BandwidthLimiter bandwidthLimiter) {
+        this(progressEmitter, jobId, mediaType, inputStream, length, bandwidthLimiter,
+                Compression.NONE);
+    }
+
+    @VisibleForTesting
+    RxRequestBody(@NonNull Emitter<Status> progressEmitter, @NonNull String jobId,
+            @NonNull MediaType mediaType, @NonNull InputStream inputStream, long length,
+            @NonNull BandwidthLimiter bandwidthLimiter, @NonNull Compression compression) {
+        this(mediaType, inputStream, length, bandwidthLimiter, bandwidthLimiter.newJobBucket(),
+                compression, bytesWritten -> progressEmitter.onNext(
+                        Status.createSending(jobId, bytesWritten, length)));
+    }
+
+    @VisibleForTesting
+    RxRequestBody(@NonNull Emitter<Status> progressEmitter, @NonNull String jobId,
+            @NonNull MediaType mediaType, @NonNull InputStream inputStream, long length,
+            @NonNull BandwidthLimiter bandwidthLimiter, long progressOffset, long progressTotal) {
+        this(mediaType, inputStream, length, bandwidthLimiter, bandwidthLimiter.newJobBucket(),
+                Compression.NONE, bytesWritten -> progressEmitter.onNext(Status.createSending(jobId,
+                        progressOffset + bytesWritten, progressTotal)));
+    }
+
+    private RxRequestBody(@NonNull MediaType mediaType, @NonNull InputStream inputStream,
+            long length, @NonNull BandwidthLimiter bandwidthLimiter,
+            @NonNull TokenBucket jobBucket, @NonNull Compression compression,
+            @NonNull ProgressListener progressListener) {
         this.mediaType = mediaType;
         this.inputStream = inputStream;
         this.length = length;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.jobBucket = jobBucket;
+        this.compression = compression;
+        this.progressListener = progressListener;
     }
 
     @NonNull
@@ -56,30 +195,99 @@ public class RxRequestBody extends RequestBody {
         return mediaType;
     }
 
+    /**
+     * @return the length of the file or -1 if the file is compressed as the compressed length is
+     * only known once the whole file has been written
+     */
     @Override
     public long contentLength() {
-        return length;
+        return compression == Compression.NONE ? length : -1;
+    }
+
+    @NonNull
+    public Compression compression() {
+        return compression;
     }
 
     @Override
     public void writeTo(@NonNull BufferedSink sink) throws IOException {
         try (final Source source = Okio.source(inputStream)) {
-            final long total = contentLength();
+            final BufferedSink target = encode(sink);
+            final long total = length;
 
             long remaining = total;
             long size = Math.min(BUFFER_SIZE, remaining);
 
-            progressEmitter.onNext(Status.createSending(jobId, 0));
+            progressListener.onProgress(0);
 
             while (remaining > 0) {
-                sink.write(source, size);
+                if (target == sink) {
+                    bandwidthLimiter.acquire(jobBucket, size);
+                }
+                target.write(source, size);
 
                 remaining = Math.max(0, remaining - size);
                 size = Math.min(BUFFER_SIZE, remaining);
 
-                final int progress = (int) (100 - ((float) remaining / total) * 100);
-                progressEmitter.onNext(Status.createSending(jobId, progress));
+                progressListener.onProgress(total - remaining);
             }
+
+            if (target != sink) {
+                // writes the remaining compressed bytes and the trailer to the request
+                target.close();
+            }
+        }
+    }
+
+    /**
+     * @return a sink which compresses the bytes written to it into the request {@code sink} and
+     * paces the compressed bytes
+     */
+    @NonNull
+    private BufferedSink encode(@NonNull BufferedSink sink) {
+        // closing the compressing sink must finish the compressed stream but leave the request
+        // open for the parts following this body
+        final Sink request = new ForwardingSink(sink) {
+            @Override
+            public void write(@NonNull Buffer source, long byteCount) throws IOException {
+                bandwidthLimiter.acquire(jobBucket, byteCount);
+                super.write(source, byteCount);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        switch (compression) {
+            case GZIP:
+                return Okio.buffer(new GzipSink(request));
+            case DEFLATE:
+                return Okio.buffer(new DeflaterSink(request, new Deflater()));
+            default:
+                return sink;
+        }
+    }
+
+    /**
+     * @param bytesSent number of bytes of the whole file sent so far
+     * @param total size of the whole file
+     * @return percentage of the file sent
+     * @see Status#percent(long, long)
+     */
+    public static int progress(long bytesSent, long total) {
+        return Status.percent(bytesSent, total);
+    }
+
+    @NonNull
+    private static InputStream open(@NonNull File file, long offset) throws IOException {
+        final FileInputStream inputStream = new FileInputStream(file);
+        try {
+            inputStream.getChannel().position(offset);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
         }
+        return inputStream;
     }
 }
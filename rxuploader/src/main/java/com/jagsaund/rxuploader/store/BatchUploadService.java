@@ -0,0 +1,25 @@
+package com.jagsaund.rxuploader.store;
+
+import android.support.annotation.NonNull;
+import java.util.List;
+import java.util.Map;
+import okhttp3.MultipartBody;
+import rx.Single;
+
+/**
+ * Uploads several files in a single multipart request.
+ *
+ * @param <T> Defines the type of response payload returned for each uploaded file
+ */
+public interface BatchUploadService<T> {
+    /**
+     * Uploads multipart content of several files to a remote endpoint.
+     *
+     * @param metadata Optional information associated with each file, in the order of {@code data}
+     * @param data The files to upload
+     * @return One response per file in the order of {@code data}. A {@code null} response marks a
+     * file which was rejected by the remote endpoint.
+     */
+    Single<List<T>> upload(@NonNull List<Map<String, Object>> metadata,
+            @NonNull List<MultipartBody.Part> data);
+}
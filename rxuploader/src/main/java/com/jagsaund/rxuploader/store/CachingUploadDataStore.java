@@ -0,0 +1,161 @@
+package com.jagsaund.rxuploader.store;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import rx.Observable;
+
+/**
+ * Serves {@link Job} lookups from memory in front of another {@link UploadDataStore}. Up to
+ * {@code maxJobs} deserialized jobs are kept, evicting the least recently used job.
+ * <br/>
+ * Writes go through to the underlying store. The cached job is invalidated when a write starts
+ * and replaced by the job returned by the store once the write completes. A lookup which
+ * overlapped with a write does not cache its result, so a job read before a write can never be
+ * served after it.
+ * <br/>
+ * The underlying store must not be modified other than through this store.
+ */
+public class CachingUploadDataStore implements UploadDataStore {
+    @NonNull private final UploadDataStore dataStore;
+    @NonNull private final Map<String, Job> cache;
+
+    /**
+     * Incremented whenever a write starts or completes.
+     * Guarded by {@code this}.
+     */
+    private long generation;
+
+    /**
+     * @param dataStore store to persist jobs to
+     * @param maxJobs maximum number of jobs kept in memory
+     */
+    public CachingUploadDataStore(@NonNull UploadDataStore dataStore, int maxJobs) {
+        if (maxJobs < 1) {
+            throw new IllegalArgumentException("Must cache at least one job");
+        }
+        this.dataStore = dataStore;
+        cache = new LinkedHashMap<String, Job>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+                return size() > maxJobs;
+            }
+        };
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> get(@NonNull String jobId) {
+        return Observable.defer(() -> {
+            final long loadedAt;
+            synchronized (this) {
+                final Job job = cache.get(jobId);
+                if (job != null) {
+                    return Observable.just(job);
+                }
+                loadedAt = generation;
+            }
+            return dataStore.get(jobId).doOnNext(job -> {
+                synchronized (this) {
+                    if (generation == loadedAt && !Job.isInvalid(job)) {
+                        cache.put(jobId, job);
+                    }
+                }
+            });
+        });
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> getAll() {
+        return dataStore.getAll();
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> getByStatus(@NonNull StatusType... statusTypes) {
+        return dataStore.getByStatus(statusTypes);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> getByStatus(int limit, @NonNull StatusType... statusTypes) {
+        return dataStore.getByStatus(limit, statusTypes);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Map<StatusType, Integer>> countByStatus() {
+        return dataStore.countByStatus();
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> save(@NonNull Job job) {
+        return write(job.id(), dataStore.save(job), true);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> update(@NonNull Status status) {
+        return write(status.id(), dataStore.update(status), true);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> updateUploadSession(@NonNull String jobId, @NonNull String uploadId,
+            long offset) {
+        return write(jobId, dataStore.updateUploadSession(jobId, uploadId, offset), true);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> delete(@NonNull String jobId) {
+        return write(jobId, dataStore.delete(jobId), false);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Boolean> flush() {
+        return dataStore.flush();
+    }
+
+    @NonNull
+    @Override
+    public Observable<Boolean> close() {
+        return dataStore.close().doOnTerminate(() -> {
+            synchronized (this) {
+                cache.clear();
+            }
+        });
+    }
+
+    /**
+     * @param cacheResult true to cache the job returned by the write
+     */
+    @NonNull
+    private Observable<Job> write(@NonNull String jobId, @NonNull Observable<Job> write,
+            boolean cacheResult) {
+        return write
+                .doOnSubscribe(() -> invalidate(jobId, null))
+                .doOnNext(job -> invalidate(jobId,
+                        cacheResult && !Job.isInvalid(job) ? job : null))
+                .doOnError(error -> invalidate(jobId, null));
+    }
+
+    /**
+     * Removes the cached job and caches {@code job} instead if provided.
+     */
+    private synchronized void invalidate(@NonNull String jobId, @Nullable Job job) {
+        generation++;
+        if (job != null) {
+            cache.put(jobId, job);
+        } else {
+            cache.remove(jobId);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.jagsaund.rxuploader.store;
+
+import android.support.annotation.NonNull;
+import java.util.Map;
+import okhttp3.RequestBody;
+import rx.Single;
+
+/**
+ * Uploads a file as a sequence of chunks within a resumable upload session. The session survives
+ * failed requests and application restarts so an interrupted upload continues from the last
+ * chunk acknowledged by the server.
+ *
+ * @param <T> Defines the type of response payload returned by the upload operation
+ */
+public interface ChunkedUploadService<T> {
+    /**
+     * Starts a new upload session.
+     *
+     * @param metadata Optional information to be associated with the upload operation
+     * @param filename Name of the file to upload
+     * @param mimeType Mime type of the file to upload
+     * @param size Total size of the file in bytes
+     * @return Id of the upload session
+     */
+    Single<String> init(@NonNull Map<String, Object> metadata, @NonNull String filename,
+            @NonNull String mimeType, long size);
+
+    /**
+     * Appends a chunk of the file to the upload session. If the session already holds bytes
+     * beyond {@code offset}, eg. because the acknowledgement of an earlier chunk was lost, the
+     * overlapping bytes must be ignored.
+     *
+     * @param uploadId Id of the upload session
+     * @param offset Position of the chunk in the file
+     * @param chunk Content of the chunk
+     * @return Number of bytes of the file held by the session after the append
+     */
+    Single<Long> append(@NonNull String uploadId, long offset, @NonNull RequestBody chunk);
+
+    /**
+     * Completes the upload session once all bytes of the file have been appended.
+     *
+     * @param uploadId Id of the upload session
+     * @return The response received from the upload operation
+     */
+    Single<T> complete(@NonNull String uploadId);
+}
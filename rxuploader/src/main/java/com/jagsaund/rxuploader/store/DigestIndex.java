@@ -0,0 +1,46 @@
+package com.jagsaund.rxuploader.store;
+
+import android.support.annotation.NonNull;
+import rx.Observable;
+
+/**
+ * A local index mapping the content digest of uploaded files to the id of the
+ * {@link com.jagsaund.rxuploader.job.Job} which uploads that content.
+ */
+public interface DigestIndex {
+    /**
+     * Looks up the job associated with the {@code digest}.
+     *
+     * @param digest content digest to look up
+     * @return id of the job associated with the digest or an empty stream if none is found
+     */
+    @NonNull
+    Observable<String> get(@NonNull String digest);
+
+    /**
+     * Associates the {@code digest} with the {@code jobId}, replacing any previous association.
+     *
+     * @param digest content digest of the job's file
+     * @param jobId id of the job
+     * @return the {@code jobId}
+     */
+    @NonNull
+    Observable<String> put(@NonNull String digest, @NonNull String jobId);
+
+    /**
+     * Removes the association of the {@code digest} if it is associated with the {@code jobId}.
+     * An association with any other job is kept.
+     *
+     * @param digest content digest to remove
+     * @param jobId id of the job whose association is removed
+     * @return the {@code jobId} if the association was removed or an empty stream otherwise
+     */
+    @NonNull
+    Observable<String> remove(@NonNull String digest, @NonNull String jobId);
+
+    /**
+     * Releases the resources held by the index, eg. its thread. The index must not be used
+     * afterwards.
+     */
+    void close();
+}
@@ -0,0 +1,663 @@
+package com.jagsaund.rxuploader.store;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.JobTypeAdapterFactory;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * A local data store which persists {@link Job} items to an append-only journal file. It does not
+ * depend on the Android framework.
+ * <br/>
+ * Every change is appended to the journal as a single line: a saved job, a status update or a
+ * deletion. A status update only appends the new status instead of rewriting the job. An index of
+ * the live jobs, holding the position of the latest record of each job and its current status, is
+ * kept in memory and rebuilt from the journal when the store is first used, so jobs are looked up
+ * and counted by status without reading the journal. A record which was torn by a crash while it
+ * was appended is discarded.
+ * <br/>
+ * Once most records of the journal are superseded, the journal is compacted: a snapshot holding a
+ * single record per live job is written to a new file which then replaces the journal.
+ * <br/>
+ * The {@link SyncPolicy} defines when appended records are forced to the storage device.
+ * <br/>
+ * The store runs on a daemon thread of its own, so it does not keep the JVM from exiting. Call
+ * {@link #close()} once the store is no longer used to sync and close the journal and stop the
+ * thread.
+ */
+public class JournalUploadDataStore implements UploadDataStore {
+    @VisibleForTesting static final String JOURNAL_FILE = "upload_journal";
+
+    @VisibleForTesting static final String SNAPSHOT_FILE = "upload_journal.tmp";
+
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Minimum number of records before the journal is compacted.
+     */
+    @VisibleForTesting static final int DEFAULT_COMPACT_RECORDS = 1024;
+
+    private static final byte OP_PUT = 'P';
+    private static final byte OP_STATUS = 'S';
+    private static final byte OP_DELETE = 'D';
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Defines when appended records are forced to the storage device. Records which have not been
+     * synced may be lost if the device loses power, not if only the application is terminated.
+     */
+    public enum SyncPolicy {
+        /**
+         * Every write is synced before it completes.
+         */
+        ALWAYS,
+        /**
+         * Writes are synced in the background at most one sync interval after they complete.
+         */
+        PERIODIC,
+        /**
+         * Syncing is left to the operating system.
+         */
+        NEVER
+    }
+
+    @NonNull private final File journalFile;
+    @NonNull private final File snapshotFile;
+    @NonNull private final SyncPolicy syncPolicy;
+    @NonNull private final Scheduler worker;
+    @NonNull private final Scheduler.Worker syncWorker;
+    @NonNull private final Gson gson;
+
+    /**
+     * Executor the worker runs on, shut down when the store is closed; null if the worker is not
+     * owned by the store.
+     */
+    @Nullable private final ExecutorService executor;
+
+    private final long syncIntervalMillis;
+    private final int compactRecords;
+
+    /**
+     * Live jobs by id in the order they were first saved.
+     * Only accessed from the worker.
+     */
+    @NonNull private final Map<String, Entry> index = new LinkedHashMap<>();
+
+    /**
+     * Only accessed from the worker; null until the store is first used.
+     */
+    @Nullable private RandomAccessFile journal;
+
+    /**
+     * Number of records in the journal.
+     * Only accessed from the worker.
+     */
+    private int records;
+
+    /**
+     * Only accessed from the worker.
+     */
+    private boolean syncScheduled;
+
+    /**
+     * Only accessed from the worker.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a store which syncs writes every {@value #DEFAULT_SYNC_INTERVAL_MILLIS} ms.
+     *
+     * @param directory directory holding the journal
+     */
+    @NonNull
+    public static JournalUploadDataStore create(@NonNull File directory) {
+        return create(directory, SyncPolicy.PERIODIC, DEFAULT_SYNC_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param directory directory holding the journal
+     * @param syncPolicy defines when writes are synced
+     * @param syncInterval maximum time before a write is synced with {@link SyncPolicy#PERIODIC}
+     * @param unit unit of {@code syncInterval}
+     */
+    @NonNull
+    public static JournalUploadDataStore create(@NonNull File directory,
+            @NonNull SyncPolicy syncPolicy, long syncInterval, @NonNull TimeUnit unit) {
+        final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "UploadDataStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new JournalUploadDataStore(directory, syncPolicy, unit.toMillis(syncInterval),
+                DEFAULT_COMPACT_RECORDS, Schedulers.from(executor), executor);
+    }
+
+    /**
+     * @param directory directory holding the journal
+     * @param syncPolicy defines when writes are synced
+     * @param syncIntervalMillis maximum time before a write is synced with
+     * {@link SyncPolicy#PERIODIC}
+     * @param compactRecords minimum number of records before the journal is compacted
+     * @param worker single threaded scheduler all file operations run on
+     */
+    @VisibleForTesting
+    JournalUploadDataStore(@NonNull File directory, @NonNull SyncPolicy syncPolicy,
+            long syncIntervalMillis, int compactRecords, @NonNull Scheduler worker) {
+        this(directory, syncPolicy, syncIntervalMillis, compactRecords, worker, null);
+    }
+
+    /**
+     * @param executor executor the {@code worker} runs on which is shut down by {@link #close()}
+     */
+    private JournalUploadDataStore(@NonNull File directory, @NonNull SyncPolicy syncPolicy,
+            long syncIntervalMillis, int compactRecords, @NonNull Scheduler worker,
+            @Nullable ExecutorService executor) {
+        this.executor = executor;
+        journalFile = new File(directory, JOURNAL_FILE);
+        snapshotFile = new File(directory, SNAPSHOT_FILE);
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.compactRecords = compactRecords;
+        this.worker = worker;
+        syncWorker = worker.createWorker();
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(JobTypeAdapterFactory.create())
+                .create();
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> get(@NonNull String jobId) {
+        return Observable.fromCallable(() -> {
+            final Entry entry = index().get(jobId);
+            return entry != null ? readJob(entry) : Job.INVALID_JOB;
+        }).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> getAll() {
+        return Observable.fromCallable(() -> {
+            final List<Job> jobs = new ArrayList<>(index().size());
+            for (Entry entry : index.values()) {
+                jobs.add(readJob(entry));
+            }
+            return jobs;
+        }).flatMap(Observable::from).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> getByStatus(@NonNull StatusType... statusTypes) {
+        if (statusTypes.length == 0) {
+            return Observable.empty();
+        }
+
+        final Set<StatusType> types = EnumSet.copyOf(Arrays.asList(statusTypes));
+        return Observable.fromCallable(() -> {
+            final List<Job> jobs = new ArrayList<>();
+            for (Entry entry : index().values()) {
+                if (types.contains(entry.status.statusType())) {
+                    jobs.add(readJob(entry));
+                }
+            }
+            return jobs;
+        }).flatMap(Observable::from).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> getByStatus(int limit, @NonNull StatusType... statusTypes) {
+        if (limit < 1 || statusTypes.length == 0) {
+            return Observable.empty();
+        }
+
+        final Set<StatusType> types = EnumSet.copyOf(Arrays.asList(statusTypes));
+        return Observable.fromCallable(() -> {
+            // highest priority first, entries of the same priority in the order they were saved
+            final List<Entry> page = new ArrayList<>(limit + 1);
+            for (Entry entry : index().values()) {
+                if (!types.contains(entry.status.statusType())) {
+                    continue;
+                }
+                int position = page.size();
+                while (position > 0 && page.get(position - 1).priority < entry.priority) {
+                    position--;
+                }
+                if (position < limit) {
+                    page.add(position, entry);
+                    if (page.size() > limit) {
+                        page.remove(limit);
+                    }
+                }
+            }
+
+            final List<Job> jobs = new ArrayList<>(page.size());
+            for (Entry entry : page) {
+                jobs.add(readJob(entry));
+            }
+            return jobs;
+        }).flatMap(Observable::from).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Map<StatusType, Integer>> countByStatus() {
+        return Observable.fromCallable(() -> {
+            final Map<StatusType, Integer> counts = new EnumMap<>(StatusType.class);
+            for (Entry entry : index().values()) {
+                final StatusType statusType = entry.status.statusType();
+                final Integer count = counts.get(statusType);
+                counts.put(statusType, count != null ? count + 1 : 1);
+            }
+            return counts;
+        }).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> save(@NonNull Job job) {
+        return Observable.fromCallable(() -> {
+            final byte[] payload = gson.toJson(job).getBytes(UTF_8);
+            final long position = append(OP_PUT, payload);
+            index.put(job.id(),
+                    new Entry(position, payload.length, job.priority(), job.status()));
+            compactIfNeeded();
+            return job;
+        }).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> update(@NonNull Status status) {
+        return Observable.fromCallable(() -> {
+            final Entry entry = index().get(status.id());
+            if (entry == null) {
+                return Job.INVALID_JOB;
+            }
+
+            append(OP_STATUS, gson.toJson(status).getBytes(UTF_8));
+            entry.status = status;
+            final Job job = readJob(entry);
+            compactIfNeeded();
+            return job;
+        }).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> updateUploadSession(@NonNull String jobId, @NonNull String uploadId,
+            long offset) {
+        return Observable.fromCallable(() -> {
+            final Entry entry = index().get(jobId);
+            if (entry == null) {
+                return Job.INVALID_JOB;
+            }
+
+            final Job job = readJob(entry).withUploadSession(uploadId, offset);
+            final byte[] payload = gson.toJson(job).getBytes(UTF_8);
+            final long position = append(OP_PUT, payload);
+            index.put(jobId, new Entry(position, payload.length, entry.priority, entry.status));
+            compactIfNeeded();
+            return job;
+        }).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> delete(@NonNull String jobId) {
+        return Observable.fromCallable(() -> {
+            final Entry entry = index().get(jobId);
+            if (entry == null) {
+                return Job.INVALID_JOB;
+            }
+
+            final Job job = readJob(entry);
+            append(OP_DELETE, gson.toJson(jobId).getBytes(UTF_8));
+            index.remove(jobId);
+            compactIfNeeded();
+            return job;
+        }).subscribeOn(worker);
+    }
+
+    /**
+     * Syncs the journal right away regardless of the {@link SyncPolicy}.
+     *
+     * @return emits {@link Boolean#TRUE} once all records are synced and {@link Boolean#FALSE} if
+     * syncing failed
+     */
+    @NonNull
+    @Override
+    public Observable<Boolean> flush() {
+        return Observable.fromCallable(() -> {
+            if (journal == null) {
+                return true;
+            }
+            try {
+                journal.getFD().sync();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }).subscribeOn(worker);
+    }
+
+    /**
+     * Syncs and closes the journal and stops the thread of the store. The store must not be used
+     * afterwards.
+     *
+     * @return emits {@link Boolean#TRUE} once the journal is closed and {@link Boolean#FALSE} if
+     * syncing or closing it failed
+     */
+    @NonNull
+    @Override
+    public Observable<Boolean> close() {
+        return Observable.fromCallable(() -> {
+            closed = true;
+            syncWorker.unsubscribe();
+            if (journal == null) {
+                return true;
+            }
+            try {
+                journal.getFD().sync();
+                return true;
+            } catch (IOException e) {
+                return false;
+            } finally {
+                final RandomAccessFile file = journal;
+                journal = null;
+                index.clear();
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // nothing was written since the sync
+                }
+            }
+        }).subscribeOn(worker).doAfterTerminate(() -> {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        });
+    }
+
+    /**
+     * Opens the journal and rebuilds the index if the store has not been used yet.
+     *
+     * @return the index of live jobs
+     */
+    @NonNull
+    private Map<String, Entry> index() throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+        if (journal == null) {
+            open();
+        }
+        return index;
+    }
+
+    private void open() throws IOException {
+        final File directory = journalFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+
+        final RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        try {
+            final long length = replay();
+            if (length < file.length()) {
+                // the last record was torn while it was appended
+                file.setLength(length);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        journal = file;
+    }
+
+    /**
+     * Rebuilds the index from the records of the journal. Records which cannot be parsed are
+     * skipped.
+     *
+     * @return the length of the journal up to the end of the last complete record
+     */
+    private long replay() throws IOException {
+        index.clear();
+        records = 0;
+
+        long position = 0;
+        final InputStream in = new BufferedInputStream(new FileInputStream(journalFile));
+        try {
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+
+                final byte[] record = line.toByteArray();
+                line.reset();
+                apply(record, position);
+                position += record.length + 1;
+                records++;
+            }
+        } finally {
+            in.close();
+        }
+        return position;
+    }
+
+    /**
+     * Applies a record read from the journal to the index.
+     *
+     * @param record the record without its line terminator
+     * @param position position of the record in the journal
+     */
+    private void apply(@NonNull byte[] record, long position) {
+        if (record.length < 2 || record[1] != ' ') {
+            return;
+        }
+
+        final String payload = new String(record, 2, record.length - 2, UTF_8);
+        try {
+            switch (record[0]) {
+                case OP_PUT: {
+                    final Job job = gson.fromJson(payload, Job.class);
+                    if (job != null) {
+                        index.put(job.id(),
+                                new Entry(position + 2, record.length - 2, job.priority(),
+                                        job.status()));
+                    }
+                    break;
+                }
+                case OP_STATUS: {
+                    final Status status = gson.fromJson(payload, Status.class);
+                    final Entry entry = status != null ? index.get(status.id()) : null;
+                    if (entry != null) {
+                        entry.status = status;
+                    }
+                    break;
+                }
+                case OP_DELETE: {
+                    final String jobId = gson.fromJson(payload, String.class);
+                    if (jobId != null) {
+                        index.remove(jobId);
+                    }
+                    break;
+                }
+                default: {
+                    break;
+                }
+            }
+        } catch (JsonParseException | IllegalStateException e) {
+            // a corrupted record only loses its own change
+        }
+    }
+
+    /**
+     * Appends a record to the journal.
+     *
+     * @return the position of the payload in the journal
+     */
+    private long append(byte op, @NonNull byte[] payload) throws IOException {
+        final RandomAccessFile file = journal();
+        final long position = file.length();
+        file.seek(position);
+        file.write(record(op, payload));
+        records++;
+
+        switch (syncPolicy) {
+            case ALWAYS: {
+                file.getFD().sync();
+                break;
+            }
+            case PERIODIC: {
+                if (!syncScheduled) {
+                    syncScheduled = true;
+                    syncWorker.schedule(this::sync, syncIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+                break;
+            }
+            case NEVER:
+            default: {
+                break;
+            }
+        }
+        return position + 2;
+    }
+
+    private void sync() {
+        syncScheduled = false;
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.getFD().sync();
+        } catch (IOException e) {
+            // retried after the next write
+        }
+    }
+
+    @NonNull
+    private Job readJob(@NonNull Entry entry) throws IOException {
+        final RandomAccessFile file = journal();
+        final byte[] payload = new byte[entry.length];
+        file.seek(entry.position);
+        file.readFully(payload);
+        return gson.fromJson(new String(payload, UTF_8), Job.class).withStatus(entry.status);
+    }
+
+    /**
+     * Compacts the journal once most of its records are superseded. A failed compaction keeps the
+     * current journal.
+     */
+    private void compactIfNeeded() {
+        if (records < compactRecords || records < 2 * index.size()) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            // retried after the next write
+        }
+    }
+
+    /**
+     * Writes a snapshot holding a single record per live job and replaces the journal with it.
+     */
+    private void compact() throws IOException {
+        final Map<String, Entry> entries = new LinkedHashMap<>(index.size());
+        final RandomAccessFile snapshot = new RandomAccessFile(snapshotFile, "rw");
+        try {
+            snapshot.setLength(0);
+            for (Map.Entry<String, Entry> item : index.entrySet()) {
+                final Entry entry = item.getValue();
+                final byte[] payload = gson.toJson(readJob(entry)).getBytes(UTF_8);
+                final long position = snapshot.getFilePointer();
+                snapshot.write(record(OP_PUT, payload));
+                entries.put(item.getKey(),
+                        new Entry(position + 2, payload.length, entry.priority, entry.status));
+            }
+            snapshot.getFD().sync();
+        } finally {
+            snapshot.close();
+        }
+
+        journal().close();
+        journal = null;
+        if (!snapshotFile.renameTo(journalFile)) {
+            // the journal is opened again and replayed by the next operation
+            throw new IOException("Failed to replace " + journalFile);
+        }
+        journal = new RandomAccessFile(journalFile, "rw");
+        index.clear();
+        index.putAll(entries);
+        records = entries.size();
+    }
+
+    @NonNull
+    private RandomAccessFile journal() throws IOException {
+        index();
+        return journal;
+    }
+
+    @NonNull
+    private static byte[] record(byte op, @NonNull byte[] payload) {
+        final byte[] record = new byte[payload.length + 3];
+        record[0] = op;
+        record[1] = ' ';
+        System.arraycopy(payload, 0, record, 2, payload.length);
+        record[record.length - 1] = '\n';
+        return record;
+    }
+
+    /**
+     * Position of the latest saved record of a job, its priority and its current status.
+     */
+    private static class Entry {
+        final long position;
+        final int length;
+        final int priority;
+
+        @NonNull Status status;
+
+        Entry(long position, int length, int priority, @NonNull Status status) {
+            this.position = position;
+            this.length = length;
+            this.priority = priority;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.jagsaund.rxuploader.store;
+
+import android.support.annotation.NonNull;
+import java.util.List;
+import java.util.Map;
+import okhttp3.RequestBody;
+import rx.Single;
+
+/**
+ * Uploads a file as several parts which are sent at the same time over separate requests and
+ * assembled by the server once all parts have been received.
+ *
+ * @param <T> Defines the type of response payload returned by the upload operation
+ */
+public interface MultipartUploadService<T> {
+    /**
+     * Starts a new multipart upload.
+     *
+     * @param metadata Optional information to be associated with the upload operation
+     * @param filename Name of the file to upload
+     * @param mimeType Mime type of the file to upload
+     * @param size Total size of the file in bytes
+     * @return Id of the multipart upload
+     */
+    Single<String> initiate(@NonNull Map<String, Object> metadata, @NonNull String filename,
+            @NonNull String mimeType, long size);
+
+    /**
+     * Uploads a single part. Parts may be uploaded in any order and a part may be uploaded again
+     * after a failure.
+     *
+     * @param uploadId Id of the multipart upload
+     * @param partNumber Position of the part in the file, starting at one
+     * @param part Content of the part
+     * @return Tag identifying the uploaded part, eg. its ETag
+     */
+    Single<String> uploadPart(@NonNull String uploadId, int partNumber, @NonNull RequestBody part);
+
+    /**
+     * Assembles the uploaded parts into the file.
+     *
+     * @param uploadId Id of the multipart upload
+     * @param partTags Tags of all parts ordered by part number
+     * @return The response received from the upload operation
+     */
+    Single<T> complete(@NonNull String uploadId, @NonNull List<String> partTags);
+
+    /**
+     * Discards a multipart upload which failed or was cancelled along with the parts received so
+     * far. The abort is not retried; the server should also expire uploads which are never
+     * completed.
+     *
+     * @param uploadId Id of the multipart upload
+     * @return The response received from the abort operation
+     */
+    Single<?> abort(@NonNull String uploadId);
+}
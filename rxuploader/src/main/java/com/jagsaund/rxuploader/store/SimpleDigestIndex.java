@@ -0,0 +1,102 @@
+package com.jagsaund.rxuploader.store;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import rx.Observable;
+import rx.Scheduler;
+import rx.android.schedulers.AndroidSchedulers;
+
+/**
+ * A local {@link DigestIndex} which persists digests to {@link SharedPreferences}. Each digest is
+ * stored as its own key.
+ */
+public class SimpleDigestIndex implements DigestIndex {
+    @VisibleForTesting static final String DIGEST_REPO = "upload_digest_index";
+
+    @VisibleForTesting static final String KEY_DIGEST_PREFIX = "key_digest_";
+
+    @NonNull private final Scheduler worker;
+    @NonNull private final SharedPreferences sharedPreferences;
+
+    /**
+     * Thread the worker runs on, quit when the index is closed; null if not owned by the index.
+     */
+    @Nullable private final HandlerThread thread;
+
+    @VisibleForTesting
+    @NonNull
+    static String digestKey(@NonNull String digest) {
+        return KEY_DIGEST_PREFIX + digest;
+    }
+
+    @NonNull
+    public static DigestIndex create(@NonNull Context context) {
+        final SharedPreferences sharedPreferences = context
+                .getSharedPreferences(DIGEST_REPO, Context.MODE_PRIVATE);
+
+        final HandlerThread thread = new HandlerThread("DigestIndex");
+        thread.start();
+
+        final Scheduler worker = AndroidSchedulers.from(thread.getLooper());
+        return new SimpleDigestIndex(sharedPreferences, worker, thread);
+    }
+
+    @VisibleForTesting
+    SimpleDigestIndex(@NonNull SharedPreferences sharedPreferences, @NonNull Scheduler worker) {
+        this(sharedPreferences, worker, null);
+    }
+
+    private SimpleDigestIndex(@NonNull SharedPreferences sharedPreferences,
+            @NonNull Scheduler worker, @Nullable HandlerThread thread) {
+        this.sharedPreferences = sharedPreferences;
+        this.worker = worker;
+        this.thread = thread;
+    }
+
+    @NonNull
+    @Override
+    public Observable<String> get(@NonNull String digest) {
+        return Observable.fromCallable(() -> sharedPreferences.getString(digestKey(digest), null))
+                .filter(jobId -> jobId != null)
+                .subscribeOn(worker);
+    }
+
+    @SuppressLint({ "CommitPrefEdits", "ApplySharedPref" })
+    @NonNull
+    @Override
+    public Observable<String> put(@NonNull String digest, @NonNull String jobId) {
+        return Observable.fromCallable(() -> {
+            sharedPreferences.edit().putString(digestKey(digest), jobId).commit();
+            return jobId;
+        }).subscribeOn(worker);
+    }
+
+    @SuppressLint({ "CommitPrefEdits", "ApplySharedPref" })
+    @NonNull
+    @Override
+    public Observable<String> remove(@NonNull String digest, @NonNull String jobId) {
+        return Observable.fromCallable(() -> {
+            final String key = digestKey(digest);
+            if (!jobId.equals(sharedPreferences.getString(key, null))) {
+                return null;
+            }
+            sharedPreferences.edit().remove(key).commit();
+            return jobId;
+        }).filter(removed -> removed != null).subscribeOn(worker);
+    }
+
+    /**
+     * Quits the thread of the index once the operations already started have run.
+     */
+    @Override
+    public void close() {
+        if (thread != null) {
+            thread.quitSafely();
+        }
+    }
+}
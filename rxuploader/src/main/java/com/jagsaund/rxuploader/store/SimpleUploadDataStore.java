@@ -5,6 +5,7 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.HandlerThread;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -12,18 +13,40 @@ import com.google.gson.JsonSyntaxException;
 import com.jagsaund.rxuploader.job.Job;
 import com.jagsaund.rxuploader.job.JobTypeAdapterFactory;
 import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
 import com.jagsaund.rxuploader.utils.StringUtils;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import rx.Observable;
 import rx.Scheduler;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.subjects.AsyncSubject;
 
 /**
  * A local data store which persists {@link Job} items to {@link SharedPreferences}. {@link Job}
  * items are serialized/deserialized to/from JSON.
+ * <br/>
+ * Every change of a job is a single edit of the preferences. With a {@link Durability} other than
+ * {@link Durability#IMMEDIATE} the edits made within the commit window are coalesced and committed
+ * together, so enqueuing many jobs rewrites the preferences file once per window instead of once
+ * per job. Reads always see edits which have not been committed yet.
+ * <br/>
+ * The keys of the jobs are also kept in a set per status type, committed along with the jobs, so
+ * jobs are looked up and counted by status without reading the other jobs. The sets are rebuilt
+ * from the jobs once if they are missing, eg. for jobs persisted by an older version.
+ * <br/>
+ * Reading pages of jobs with {@link #getByStatus(int, StatusType...)} is not supported, so the
+ * store cannot be used with a bounded number of pending jobs.
  */
 public class SimpleUploadDataStore implements UploadDataStore {
     @VisibleForTesting static final String JOB_REPO = "upload_job_repository";
@@ -32,9 +55,69 @@ public class SimpleUploadDataStore implements UploadDataStore {
 
     @VisibleForTesting static final String KEY_JOB_ID_PREFIX = "key_job_";
 
+    @VisibleForTesting static final String KEY_STATUS_INDEX = "key_status_index";
+
+    @VisibleForTesting static final String KEY_STATUS_JOB_IDS_PREFIX = "key_status_job_ids_";
+
+    public static final long DEFAULT_COMMIT_WINDOW_MILLIS = 100;
+
+    /**
+     * Defines when a write is committed to disk.
+     */
+    public enum Durability {
+        /**
+         * Every write is committed on its own before it completes.
+         */
+        IMMEDIATE,
+        /**
+         * Writes made within the commit window are committed together; each write completes once
+         * its group has been committed.
+         */
+        GROUP_COMMIT,
+        /**
+         * Writes complete right away and are committed together at the end of the commit window.
+         * Writes of the last window are lost if the process is killed before they are committed;
+         * use {@link #flush()} to commit them earlier, eg. when the application is stopped.
+         */
+        WRITE_BEHIND
+    }
+
     @NonNull private final Scheduler worker;
+    @NonNull private final Scheduler.Worker commitWorker;
     @NonNull private final SharedPreferences sharedPreferences;
     @NonNull private final Gson gson;
+    @NonNull private final Durability durability;
+
+    /**
+     * Thread the worker runs on, quit when the store is closed; null if not owned by the store.
+     */
+    @Nullable private final HandlerThread thread;
+
+    private final long commitWindowMillis;
+
+    /**
+     * Serialized jobs by key which have not been committed yet; a null value is a removed job.
+     * Only accessed from the worker.
+     */
+    @NonNull private final Map<String, String> pending = new HashMap<>();
+
+    /**
+     * Keys of all jobs including uncommitted changes; null until first used.
+     * Only accessed from the worker.
+     */
+    @Nullable private Set<String> jobIdKeys;
+
+    /**
+     * Keys of all jobs by status type including uncommitted changes; null until first used.
+     * Only accessed from the worker.
+     */
+    @Nullable private Map<StatusType, Set<String>> statusJobIdKeys;
+
+    /**
+     * Completes once the pending writes have been committed; null while no write is pending.
+     * Only accessed from the worker.
+     */
+    @Nullable private AsyncSubject<Boolean> pendingCommit;
 
     @VisibleForTesting
     @NonNull
@@ -42,8 +125,25 @@ public class SimpleUploadDataStore implements UploadDataStore {
         return KEY_JOB_ID_PREFIX + jobId;
     }
 
+    @NonNull
+    static String statusJobIdsKey(@NonNull StatusType statusType) {
+        return KEY_STATUS_JOB_IDS_PREFIX + statusType;
+    }
+
     @NonNull
     public static UploadDataStore create(@NonNull Context context) {
+        return create(context, Durability.IMMEDIATE, DEFAULT_COMMIT_WINDOW_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param durability defines when writes are committed
+     * @param commitWindow time during which writes are coalesced into a single commit
+     * @param unit unit of {@code commitWindow}
+     */
+    @NonNull
+    public static UploadDataStore create(@NonNull Context context,
+            @NonNull Durability durability, long commitWindow, @NonNull TimeUnit unit) {
         final SharedPreferences sharedPreferences = context
                 .getSharedPreferences(JOB_REPO, Context.MODE_PRIVATE);
 
@@ -51,13 +151,36 @@ public class SimpleUploadDataStore implements UploadDataStore {
         thread.start();
 
         final Scheduler worker = AndroidSchedulers.from(thread.getLooper());
-        return new SimpleUploadDataStore(sharedPreferences, worker);
+        return new SimpleUploadDataStore(sharedPreferences, worker, durability,
+                unit.toMillis(commitWindow), thread);
     }
 
     @VisibleForTesting
     SimpleUploadDataStore(@NonNull SharedPreferences sharedPreferences, @NonNull Scheduler worker) {
+        this(sharedPreferences, worker, Durability.IMMEDIATE, DEFAULT_COMMIT_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param worker single threaded scheduler all operations run on
+     */
+    @VisibleForTesting
+    SimpleUploadDataStore(@NonNull SharedPreferences sharedPreferences, @NonNull Scheduler worker,
+            @NonNull Durability durability, long commitWindowMillis) {
+        this(sharedPreferences, worker, durability, commitWindowMillis, null);
+    }
+
+    /**
+     * @param thread thread the {@code worker} runs on which is quit by {@link #close()}
+     */
+    private SimpleUploadDataStore(@NonNull SharedPreferences sharedPreferences,
+            @NonNull Scheduler worker, @NonNull Durability durability, long commitWindowMillis,
+            @Nullable HandlerThread thread) {
+        this.thread = thread;
         this.sharedPreferences = sharedPreferences;
         this.worker = worker;
+        this.durability = durability;
+        this.commitWindowMillis = commitWindowMillis;
+        commitWorker = worker.createWorker();
         gson = new GsonBuilder()
                 .registerTypeAdapterFactory(JobTypeAdapterFactory.create())
                 .create();
@@ -72,73 +195,293 @@ public class SimpleUploadDataStore implements UploadDataStore {
     @NonNull
     @Override
     public Observable<Job> getAll() {
-        return Observable.fromCallable(new Callable<Set<Job>>() {
-            @Override
-            public Set<Job> call() throws Exception {
-                final Set<String> jobIdKeys = sharedPreferences
-                        .getStringSet(KEY_JOB_IDS, Collections.emptySet());
-                if (jobIdKeys.isEmpty()) {
-                    return Collections.emptySet();
-                }
+        return Observable.fromCallable(() -> {
+            final Set<String> keys = jobIdKeys();
+            final List<Job> jobs = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                jobs.add(getJob(key));
+            }
+            return jobs;
+        }).flatMap(Observable::from).subscribeOn(worker);
+    }
 
-                final Set<Job> jobs = new HashSet<>(jobIdKeys.size());
-                for (String key : jobIdKeys) {
+    @NonNull
+    @Override
+    public Observable<Job> getByStatus(@NonNull StatusType... statusTypes) {
+        if (statusTypes.length == 0) {
+            return Observable.empty();
+        }
+
+        final Set<StatusType> types = EnumSet.copyOf(Arrays.asList(statusTypes));
+        return Observable.fromCallable(() -> {
+            final Map<StatusType, Set<String>> keysByStatus = statusJobIdKeys();
+            final List<Job> jobs = new ArrayList<>();
+            for (StatusType statusType : types) {
+                for (String key : keysByStatus.get(statusType)) {
                     jobs.add(getJob(key));
                 }
-                return jobs;
             }
+            return jobs;
         }).flatMap(Observable::from).subscribeOn(worker);
     }
 
-    @SuppressLint({ "CommitPrefEdits", "ApplySharedPref" })
+    /**
+     * Not supported: the preferences hold every job in memory and keep no order of creation, so a
+     * page cannot be read without ranking all matching jobs. Use a store which pages queued jobs,
+     * eg. {@link SqliteUploadDataStore}, to bound the number of pending jobs.
+     *
+     * @return a stream which fails with an {@link UnsupportedOperationException}
+     */
     @NonNull
     @Override
-    public Observable<Job> save(@NonNull Job job) {
-        return Observable.fromCallable(() -> {
-            final String rawJob = gson.toJson(job);
-            sharedPreferences.edit().putString(jobIdKey(job.id()), rawJob).commit();
+    public Observable<Job> getByStatus(int limit, @NonNull StatusType... statusTypes) {
+        return Observable.error(new UnsupportedOperationException(
+                "SimpleUploadDataStore does not support reading pages of jobs"));
+    }
 
-            final Set<String> keys = sharedPreferences.getStringSet(KEY_JOB_IDS, new HashSet<>());
-            keys.add(jobIdKey(job.id()));
-            sharedPreferences.edit().putStringSet(KEY_JOB_IDS, keys).commit();
+    @NonNull
+    @Override
+    public Observable<Map<StatusType, Integer>> countByStatus() {
+        return Observable.fromCallable(() -> {
+            final Map<StatusType, Integer> counts = new EnumMap<>(StatusType.class);
+            for (Map.Entry<StatusType, Set<String>> entry : statusJobIdKeys().entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    counts.put(entry.getKey(), entry.getValue().size());
+                }
+            }
+            return counts;
+        }).subscribeOn(worker);
+    }
 
+    @NonNull
+    @Override
+    public Observable<Job> save(@NonNull Job job) {
+        return write(() -> {
+            putJob(job);
             return job;
-        }).subscribeOn(worker);
+        });
     }
 
-    @SuppressLint("CommitPrefEdits")
     @NonNull
     @Override
     public Observable<Job> update(@NonNull Status status) {
-        return get(status.id())
-                .filter(job -> !Job.isInvalid(job))
-                .flatMap(job -> save(job.withStatus(status)))
-                .defaultIfEmpty(Job.INVALID_JOB);
+        return write(() -> {
+            final Job job = getJob(jobIdKey(status.id()));
+            if (Job.isInvalid(job)) {
+                return job;
+            }
+            final Job updated = job.withStatus(status);
+            putJob(updated);
+            return updated;
+        });
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> updateUploadSession(@NonNull String jobId, @NonNull String uploadId,
+            long offset) {
+        return write(() -> {
+            final Job job = getJob(jobIdKey(jobId));
+            if (Job.isInvalid(job)) {
+                return job;
+            }
+            final Job updated = job.withUploadSession(uploadId, offset);
+            putJob(updated);
+            return updated;
+        });
     }
 
-    @SuppressLint({ "CommitPrefEdits", "ApplySharedPref" })
     @NonNull
     @Override
     public Observable<Job> delete(@NonNull String id) {
-        return get(id)
-                .filter(job -> !Job.isInvalid(job))
-                .doOnNext(job -> {
-                    sharedPreferences.edit().remove(jobIdKey(job.id())).commit();
+        return write(() -> {
+            final Job job = getJob(jobIdKey(id));
+            if (!Job.isInvalid(job)) {
+                final String key = jobIdKey(job.id());
+                indexStatus(key, null);
+                pending.put(key, null);
+                jobIdKeys().remove(key);
+            }
+            return job;
+        });
+    }
+
+    /**
+     * Commits the writes which are waiting for the end of the commit window right away.
+     *
+     * @return emits {@link Boolean#TRUE} once all writes are committed and {@link Boolean#FALSE}
+     * if the commit failed
+     */
+    @NonNull
+    @Override
+    public Observable<Boolean> flush() {
+        return Observable.fromCallable(this::commit).subscribeOn(worker);
+    }
 
-                    final Set<String> keys = sharedPreferences
-                            .getStringSet(KEY_JOB_IDS, Collections.emptySet());
-                    keys.remove(jobIdKey(id));
-                    sharedPreferences.edit().putStringSet(KEY_JOB_IDS, keys).commit();
-                })
-                .defaultIfEmpty(Job.INVALID_JOB);
+    /**
+     * Commits the pending writes and quits the thread of the store.
+     */
+    @NonNull
+    @Override
+    public Observable<Boolean> close() {
+        return Observable.fromCallable(() -> {
+            final boolean committed = commit();
+            commitWorker.unsubscribe();
+            return committed;
+        }).subscribeOn(worker).doAfterTerminate(() -> {
+            if (thread != null) {
+                thread.quitSafely();
+            }
+        });
+    }
+
+    /**
+     * Applies a change on the worker and commits it according to the {@link Durability}.
+     *
+     * @param change stages the change as pending edits and returns the resulting job
+     */
+    @NonNull
+    private Observable<Job> write(@NonNull Change change) {
+        return Observable.fromCallable(() -> {
+            final Job job = change.apply();
+            if (durability == Durability.IMMEDIATE) {
+                return commit()
+                        ? Observable.just(job)
+                        : Observable.<Job>error(new IOException("Failed to commit jobs"));
+            }
+
+            if (pendingCommit == null) {
+                pendingCommit = AsyncSubject.create();
+                commitWorker.schedule(this::commit, commitWindowMillis, TimeUnit.MILLISECONDS);
+            }
+            if (durability == Durability.WRITE_BEHIND) {
+                return Observable.just(job);
+            }
+            return pendingCommit.flatMap(committed -> committed
+                    ? Observable.just(job)
+                    : Observable.<Job>error(new IOException("Failed to commit jobs")));
+        }).flatMap(observable -> observable).subscribeOn(worker);
+    }
+
+    /**
+     * Commits all pending edits with a single editor. Edits which failed to commit are kept and
+     * committed with the next write. Must be called on the worker.
+     *
+     * @return {@link Boolean#TRUE} if there is no pending edit left and {@link Boolean#FALSE}
+     * otherwise
+     */
+    @SuppressLint({ "CommitPrefEdits", "ApplySharedPref" })
+    private boolean commit() {
+        final AsyncSubject<Boolean> waiting = pendingCommit;
+        pendingCommit = null;
+        if (pending.isEmpty()) {
+            complete(waiting, true);
+            return true;
+        }
+
+        final SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (Map.Entry<String, String> edit : pending.entrySet()) {
+            if (edit.getValue() != null) {
+                editor.putString(edit.getKey(), edit.getValue());
+            } else {
+                editor.remove(edit.getKey());
+            }
+        }
+        // the set returned by the preferences must not be modified, always write a copy
+        editor.putStringSet(KEY_JOB_IDS, new HashSet<>(jobIdKeys()));
+        if (statusJobIdKeys != null) {
+            for (Map.Entry<StatusType, Set<String>> entry : statusJobIdKeys.entrySet()) {
+                editor.putStringSet(statusJobIdsKey(entry.getKey()),
+                        new HashSet<>(entry.getValue()));
+            }
+            editor.putBoolean(KEY_STATUS_INDEX, true);
+        }
+        final boolean committed = editor.commit();
+        if (committed) {
+            pending.clear();
+        }
+        complete(waiting, committed);
+        return committed;
+    }
+
+    private static void complete(@Nullable AsyncSubject<Boolean> waiting, boolean committed) {
+        if (waiting != null) {
+            waiting.onNext(committed);
+            waiting.onCompleted();
+        }
+    }
+
+    private void putJob(@NonNull Job job) throws JsonSyntaxException {
+        final String key = jobIdKey(job.id());
+        indexStatus(key, job.status().statusType());
+        pending.put(key, gson.toJson(job));
+        jobIdKeys().add(key);
+    }
+
+    /**
+     * Moves the key into the set of {@code statusType}, or removes it from all sets if null.
+     */
+    private void indexStatus(@NonNull String key, @Nullable StatusType statusType)
+            throws JsonSyntaxException {
+        for (Map.Entry<StatusType, Set<String>> entry : statusJobIdKeys().entrySet()) {
+            if (entry.getKey() == statusType) {
+                entry.getValue().add(key);
+            } else {
+                entry.getValue().remove(key);
+            }
+        }
+    }
+
+    @NonNull
+    private Map<StatusType, Set<String>> statusJobIdKeys() throws JsonSyntaxException {
+        if (statusJobIdKeys != null) {
+            return statusJobIdKeys;
+        }
+
+        final boolean indexed = sharedPreferences.getBoolean(KEY_STATUS_INDEX, false);
+        final Map<StatusType, Set<String>> keysByStatus = new EnumMap<>(StatusType.class);
+        for (StatusType statusType : StatusType.values()) {
+            final Set<String> keys = indexed
+                    ? sharedPreferences.getStringSet(statusJobIdsKey(statusType),
+                            Collections.emptySet())
+                    : Collections.emptySet();
+            keysByStatus.put(statusType, new HashSet<>(keys));
+        }
+        if (!indexed) {
+            // the sets are committed with the next write
+            for (String key : jobIdKeys()) {
+                final Job job = getJob(key);
+                if (!Job.isInvalid(job)) {
+                    keysByStatus.get(job.status().statusType()).add(key);
+                }
+            }
+        }
+        statusJobIdKeys = keysByStatus;
+        return statusJobIdKeys;
+    }
+
+    @NonNull
+    private Set<String> jobIdKeys() {
+        if (jobIdKeys == null) {
+            jobIdKeys = new HashSet<>(
+                    sharedPreferences.getStringSet(KEY_JOB_IDS, Collections.emptySet()));
+        }
+        return jobIdKeys;
     }
 
     @NonNull
     private Job getJob(@NonNull String key) throws JsonSyntaxException {
-        final String rawJob = sharedPreferences.getString(key, null);
+        final String rawJob = pending.containsKey(key)
+                ? pending.get(key)
+                : sharedPreferences.getString(key, null);
         if (StringUtils.isNullOrEmpty(rawJob)) {
             return Job.INVALID_JOB;
         }
         return gson.fromJson(rawJob, Job.class);
     }
+
+    private interface Change {
+        @NonNull
+        Job apply() throws Exception;
+    }
 }
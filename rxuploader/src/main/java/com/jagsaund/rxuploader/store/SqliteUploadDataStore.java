@@ -0,0 +1,492 @@
+package com.jagsaund.rxuploader.store;
+
+import android.annotation.SuppressLint;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.JobTypeAdapterFactory;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import com.jagsaund.rxuploader.utils.StringUtils;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import rx.Observable;
+import rx.Scheduler;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Actions;
+import rx.schedulers.Schedulers;
+
+/**
+ * A local data store which persists {@link Job} items to an SQLite database. Each job is a row
+ * holding the job serialized to JSON along with indexed columns for its id, status, creation time
+ * and priority, so a single job is read or updated without touching the other jobs. Jobs of a
+ * status are looked up and counted through the status index. Every write runs in a transaction.
+ * <br/>
+ * Jobs persisted by a {@link SimpleUploadDataStore} are moved into the database when the store is
+ * created.
+ */
+public class SqliteUploadDataStore implements UploadDataStore {
+    @VisibleForTesting static final String DATABASE_NAME = "upload_jobs.db";
+
+    @VisibleForTesting static final int DATABASE_VERSION = 1;
+
+    @VisibleForTesting static final String TABLE_JOBS = "jobs";
+
+    @VisibleForTesting static final String COLUMN_ID = "id";
+
+    @VisibleForTesting static final String COLUMN_STATUS = "status";
+
+    @VisibleForTesting static final String COLUMN_CREATED = "created";
+
+    @VisibleForTesting static final String COLUMN_PRIORITY = "priority";
+
+    @VisibleForTesting static final String COLUMN_JOB = "job";
+
+    private static final String[] JOB_PROJECTION = { COLUMN_JOB };
+
+    private static final String WHERE_ID = COLUMN_ID + " = ?";
+
+    private static final String CREATION_ORDER = COLUMN_CREATED;
+
+    /**
+     * Order of the status index, highest priority first.
+     */
+    private static final String SCHEDULING_ORDER =
+            COLUMN_PRIORITY + " DESC, " + COLUMN_CREATED;
+
+    private static final String COUNT_BY_STATUS = "SELECT " + COLUMN_STATUS + ", COUNT(*) FROM "
+            + TABLE_JOBS + " GROUP BY " + COLUMN_STATUS;
+
+    @NonNull private final Scheduler worker;
+    @NonNull private final Scheduler clock;
+    @NonNull private final SQLiteOpenHelper openHelper;
+    @NonNull private final Gson gson;
+
+    /**
+     * Thread the worker runs on, quit when the store is closed; null if not owned by the store.
+     */
+    @Nullable private final HandlerThread thread;
+
+    @NonNull
+    public static UploadDataStore create(@NonNull Context context) {
+        final HandlerThread thread = new HandlerThread("UploadDataStore");
+        thread.start();
+
+        final Scheduler worker = AndroidSchedulers.from(thread.getLooper());
+        final SqliteUploadDataStore dataStore =
+                new SqliteUploadDataStore(new OpenHelper(context, DATABASE_NAME), worker,
+                        Schedulers.immediate(), thread);
+
+        // runs on the worker ahead of any other operation
+        final SharedPreferences sharedPreferences = context
+                .getSharedPreferences(SimpleUploadDataStore.JOB_REPO, Context.MODE_PRIVATE);
+        dataStore.migrate(sharedPreferences).subscribe(Actions.empty(), Actions.empty());
+        return dataStore;
+    }
+
+    /**
+     * @param openHelper opens the database holding the jobs
+     * @param worker scheduler all database operations run on
+     * @param clock source of the creation time of jobs
+     */
+    @VisibleForTesting
+    SqliteUploadDataStore(@NonNull SQLiteOpenHelper openHelper, @NonNull Scheduler worker,
+            @NonNull Scheduler clock) {
+        this(openHelper, worker, clock, null);
+    }
+
+    /**
+     * @param thread thread the {@code worker} runs on which is quit by {@link #close()}
+     */
+    private SqliteUploadDataStore(@NonNull SQLiteOpenHelper openHelper,
+            @NonNull Scheduler worker, @NonNull Scheduler clock, @Nullable HandlerThread thread) {
+        this.thread = thread;
+        this.openHelper = openHelper;
+        this.worker = worker;
+        this.clock = clock;
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(JobTypeAdapterFactory.create())
+                .create();
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> get(@NonNull String jobId) {
+        return Observable.fromCallable(() -> {
+            final Job job = getJob(openHelper.getReadableDatabase(), jobId);
+            return job != null ? job : Job.INVALID_JOB;
+        }).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> getAll() {
+        return query(null, null, CREATION_ORDER, null);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> getByStatus(@NonNull StatusType... statusTypes) {
+        if (statusTypes.length == 0) {
+            return Observable.empty();
+        }
+        return query(whereStatusIn(statusTypes.length), toSelectionArgs(statusTypes),
+                CREATION_ORDER, null);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> getByStatus(int limit, @NonNull StatusType... statusTypes) {
+        if (limit < 1 || statusTypes.length == 0) {
+            return Observable.empty();
+        }
+        return query(whereStatusIn(statusTypes.length), toSelectionArgs(statusTypes),
+                SCHEDULING_ORDER, String.valueOf(limit));
+    }
+
+    @NonNull
+    @Override
+    public Observable<Map<StatusType, Integer>> countByStatus() {
+        return Observable.fromCallable(() -> {
+            final Cursor cursor =
+                    openHelper.getReadableDatabase().rawQuery(COUNT_BY_STATUS, null);
+            try {
+                final Map<StatusType, Integer> counts = new EnumMap<>(StatusType.class);
+                while (cursor.moveToNext()) {
+                    final StatusType statusType = toStatusType(cursor.getString(0));
+                    if (statusType != null) {
+                        counts.put(statusType, cursor.getInt(1));
+                    }
+                }
+                return counts;
+            } finally {
+                cursor.close();
+            }
+        }).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> save(@NonNull Job job) {
+        return Observable.fromCallable(() -> {
+            final SQLiteDatabase db = openHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                putJob(db, job);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return job;
+        }).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> update(@NonNull Status status) {
+        return Observable.fromCallable(() -> {
+            final SQLiteDatabase db = openHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                final Job job = getJob(db, status.id());
+                if (job == null) {
+                    return Job.INVALID_JOB;
+                }
+
+                final Job updated = job.withStatus(status);
+                final ContentValues values = new ContentValues(2);
+                values.put(COLUMN_STATUS, status.statusType().toString());
+                values.put(COLUMN_JOB, gson.toJson(updated));
+                db.update(TABLE_JOBS, values, WHERE_ID, new String[] { status.id() });
+                db.setTransactionSuccessful();
+                return updated;
+            } finally {
+                db.endTransaction();
+            }
+        }).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> updateUploadSession(@NonNull String jobId, @NonNull String uploadId,
+            long offset) {
+        return Observable.fromCallable(() -> {
+            final SQLiteDatabase db = openHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                final Job job = getJob(db, jobId);
+                if (job == null) {
+                    return Job.INVALID_JOB;
+                }
+
+                final Job updated = job.withUploadSession(uploadId, offset);
+                final ContentValues values = new ContentValues(1);
+                values.put(COLUMN_JOB, gson.toJson(updated));
+                db.update(TABLE_JOBS, values, WHERE_ID, new String[] { jobId });
+                db.setTransactionSuccessful();
+                return updated;
+            } finally {
+                db.endTransaction();
+            }
+        }).subscribeOn(worker);
+    }
+
+    @NonNull
+    @Override
+    public Observable<Job> delete(@NonNull String jobId) {
+        return Observable.fromCallable(() -> {
+            final SQLiteDatabase db = openHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                final Job job = getJob(db, jobId);
+                if (job == null) {
+                    return Job.INVALID_JOB;
+                }
+
+                db.delete(TABLE_JOBS, WHERE_ID, new String[] { jobId });
+                db.setTransactionSuccessful();
+                return job;
+            } finally {
+                db.endTransaction();
+            }
+        }).subscribeOn(worker);
+    }
+
+    /**
+     * Every write is committed in its own transaction before it completes, so there is nothing to
+     * flush.
+     */
+    @NonNull
+    @Override
+    public Observable<Boolean> flush() {
+        return Observable.just(true);
+    }
+
+    /**
+     * Closes the database and quits the thread of the store.
+     */
+    @NonNull
+    @Override
+    public Observable<Boolean> close() {
+        return Observable.fromCallable(() -> {
+            openHelper.close();
+            return true;
+        }).subscribeOn(worker).doAfterTerminate(() -> {
+            if (thread != null) {
+                thread.quitSafely();
+            }
+        });
+    }
+
+    /**
+     * Moves the jobs persisted by a {@link SimpleUploadDataStore} into the database. The jobs are
+     * inserted in a single transaction and only removed from the {@code sharedPreferences} once
+     * the transaction has been committed. Jobs already in the database are kept.
+     *
+     * @param sharedPreferences preferences used by the {@link SimpleUploadDataStore}
+     * @return the number of jobs moved into the database
+     */
+    @SuppressLint({ "CommitPrefEdits", "ApplySharedPref" })
+    @VisibleForTesting
+    @NonNull
+    Observable<Integer> migrate(@NonNull SharedPreferences sharedPreferences) {
+        return Observable.fromCallable(() -> {
+            final Set<String> keys = sharedPreferences
+                    .getStringSet(SimpleUploadDataStore.KEY_JOB_IDS, Collections.emptySet());
+            if (keys.isEmpty()) {
+                return 0;
+            }
+
+            int count = 0;
+            final SQLiteDatabase db = openHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (String key : keys) {
+                    final String rawJob = sharedPreferences.getString(key, null);
+                    if (StringUtils.isNullOrEmpty(rawJob)) {
+                        continue;
+                    }
+                    final Job job = fromJson(rawJob);
+                    if (getJob(db, job.id()) == null) {
+                        putJob(db, job);
+                        count++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            final SharedPreferences.Editor editor = sharedPreferences.edit();
+            for (String key : keys) {
+                editor.remove(key);
+            }
+            for (StatusType statusType : StatusType.values()) {
+                editor.remove(SimpleUploadDataStore.statusJobIdsKey(statusType));
+            }
+            editor.remove(SimpleUploadDataStore.KEY_STATUS_INDEX)
+                    .remove(SimpleUploadDataStore.KEY_JOB_IDS)
+                    .commit();
+            return count;
+        }).subscribeOn(worker);
+    }
+
+    /**
+     * Streams the jobs matching the {@code selection} from a cursor. Each job is parsed as it is
+     * emitted, so no more than the rows of the current cursor window are held in memory. The
+     * cursor is closed once the stream terminates or is unsubscribed.
+     *
+     * @param limit maximum number of rows or null for all rows
+     */
+    @NonNull
+    private Observable<Job> query(@Nullable String selection, @Nullable String[] selectionArgs,
+            @NonNull String orderBy, @Nullable String limit) {
+        return Observable.<Job, Cursor>using(
+                () -> openHelper.getReadableDatabase().query(TABLE_JOBS, JOB_PROJECTION,
+                        selection, selectionArgs, null, null, orderBy, limit),
+                cursor -> {
+                    final Iterable<Job> jobs = () -> new JobIterator(cursor);
+                    return Observable.from(jobs);
+                },
+                Cursor::close)
+                .subscribeOn(worker);
+    }
+
+    @NonNull
+    private static String whereStatusIn(int count) {
+        final StringBuilder selection = new StringBuilder(COLUMN_STATUS).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        return selection.append(')').toString();
+    }
+
+    @NonNull
+    private static String[] toSelectionArgs(@NonNull StatusType[] statusTypes) {
+        final String[] selectionArgs = new String[statusTypes.length];
+        for (int i = 0; i < statusTypes.length; i++) {
+            selectionArgs[i] = statusTypes[i].toString();
+        }
+        return selectionArgs;
+    }
+
+    @Nullable
+    private static StatusType toStatusType(@NonNull String type) {
+        for (StatusType statusType : StatusType.values()) {
+            if (statusType.toString().equals(type)) {
+                return statusType;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private Job getJob(@NonNull SQLiteDatabase db, @NonNull String jobId)
+            throws JsonSyntaxException {
+        final Cursor cursor = db.query(TABLE_JOBS, JOB_PROJECTION, WHERE_ID,
+                new String[] { jobId }, null, null, null);
+        try {
+            return cursor.moveToFirst() ? fromJson(cursor.getString(0)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Inserts or replaces the job. A replaced job keeps its creation time. Must be called within
+     * a transaction.
+     */
+    private void putJob(@NonNull SQLiteDatabase db, @NonNull Job job) {
+        final ContentValues values = new ContentValues(5);
+        values.put(COLUMN_STATUS, job.status().statusType().toString());
+        values.put(COLUMN_PRIORITY, job.priority());
+        values.put(COLUMN_JOB, gson.toJson(job));
+        if (db.update(TABLE_JOBS, values, WHERE_ID, new String[] { job.id() }) == 0) {
+            values.put(COLUMN_ID, job.id());
+            values.put(COLUMN_CREATED, clock.now());
+            db.insertOrThrow(TABLE_JOBS, null, values);
+        }
+    }
+
+    @NonNull
+    private Job fromJson(@NonNull String rawJob) throws JsonSyntaxException {
+        return gson.fromJson(rawJob, Job.class);
+    }
+
+    /**
+     * Parses the job of the next row of the cursor on every call to {@link #next()}.
+     */
+    private class JobIterator implements Iterator<Job> {
+        @NonNull private final Cursor cursor;
+
+        JobIterator(@NonNull Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.getPosition() + 1 < cursor.getCount();
+        }
+
+        @Override
+        public Job next() {
+            if (!cursor.moveToNext()) {
+                throw new NoSuchElementException();
+            }
+            return fromJson(cursor.getString(0));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Creates the jobs table and its indexes.
+     */
+    @VisibleForTesting
+    static class OpenHelper extends SQLiteOpenHelper {
+        /**
+         * @param name file name of the database or null for an in-memory database
+         */
+        OpenHelper(@NonNull Context context, @Nullable String name) {
+            super(context, name, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_JOBS + " ("
+                    + COLUMN_ID + " TEXT PRIMARY KEY NOT NULL, "
+                    + COLUMN_STATUS + " TEXT NOT NULL, "
+                    + COLUMN_CREATED + " INTEGER NOT NULL, "
+                    + COLUMN_PRIORITY + " INTEGER NOT NULL, "
+                    + COLUMN_JOB + " TEXT NOT NULL)");
+            // jobs of a status in scheduling order
+            db.execSQL("CREATE INDEX " + TABLE_JOBS + "_" + COLUMN_STATUS + " ON " + TABLE_JOBS
+                    + " (" + COLUMN_STATUS + ", " + COLUMN_PRIORITY + " DESC, " + COLUMN_CREATED
+                    + ")");
+            db.execSQL("CREATE INDEX " + TABLE_JOBS + "_" + COLUMN_CREATED + " ON " + TABLE_JOBS
+                    + " (" + COLUMN_CREATED + ")");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        }
+    }
+}
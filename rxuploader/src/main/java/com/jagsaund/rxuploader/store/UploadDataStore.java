@@ -3,6 +3,8 @@ package com.jagsaund.rxuploader.store;
 import android.support.annotation.NonNull;
 import com.jagsaund.rxuploader.job.Job;
 import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import java.util.Map;
 import rx.Observable;
 
 /**
@@ -26,6 +28,38 @@ public interface UploadDataStore {
     @NonNull
     Observable<Job> getAll();
 
+    /**
+     * Retrieves the {@link Job} items which have one of the provided status types. Stores look up
+     * the matching jobs without reading any other job.
+     *
+     * @param statusTypes status types of the jobs to retrieve
+     * @return stream of matching {@link Job} observables - this can be none, one, or many
+     */
+    @NonNull
+    Observable<Job> getByStatus(@NonNull StatusType... statusTypes);
+
+    /**
+     * Retrieves at most {@code limit} {@link Job} items which have one of the provided status
+     * types, highest {@link Job#priority()} first. Jobs of the same priority are retrieved in the
+     * order they were created if the store keeps track of it. Only the retrieved jobs are read, so
+     * the memory used does not grow with the number of matching jobs. A store which cannot read
+     * a page on its own emits an {@link UnsupportedOperationException}.
+     *
+     * @param limit maximum number of jobs to retrieve
+     * @param statusTypes status types of the jobs to retrieve
+     * @return stream of matching {@link Job} observables - this can be none, one, or many
+     */
+    @NonNull
+    Observable<Job> getByStatus(int limit, @NonNull StatusType... statusTypes);
+
+    /**
+     * Counts the {@link Job} items by their status type without reading the jobs.
+     *
+     * @return number of jobs by status type; status types without any job are not included
+     */
+    @NonNull
+    Observable<Map<StatusType, Integer>> countByStatus();
+
     /**
      * Saves the provided {@link Job} to the local store.
      *
@@ -44,6 +78,20 @@ public interface UploadDataStore {
     @NonNull
     Observable<Job> update(@NonNull Status status);
 
+    /**
+     * Records the upload session of a job and the number of bytes acknowledged by the server.
+     * Only the session is changed; the status and the other fields of the stored job are kept, so
+     * a job paused or cancelled while it is uploaded is not put back to its previous status.
+     *
+     * @param jobId id of the job to update
+     * @param uploadId id of the upload session
+     * @param offset number of bytes acknowledged by the server
+     * @return updated {@link Job} or {@link Job#INVALID_JOB} if not found
+     */
+    @NonNull
+    Observable<Job> updateUploadSession(@NonNull String jobId, @NonNull String uploadId,
+            long offset);
+
     /**
      * Deletes the {@link Job} associated with the {@code jobId}.
      *
@@ -52,4 +100,23 @@ public interface UploadDataStore {
      */
     @NonNull
     Observable<Job> delete(@NonNull String jobId);
+
+    /**
+     * Persists writes which the store has not persisted yet, eg. when writes are batched.
+     *
+     * @return emits {@link Boolean#TRUE} once all completed writes are persisted and
+     * {@link Boolean#FALSE} if they could not be persisted
+     */
+    @NonNull
+    Observable<Boolean> flush();
+
+    /**
+     * Persists writes like {@link #flush()} and releases the resources held by the store, eg. its
+     * thread. The store must not be used afterwards.
+     *
+     * @return emits {@link Boolean#TRUE} once all completed writes are persisted and
+     * {@link Boolean#FALSE} if they could not be persisted
+     */
+    @NonNull
+    Observable<Boolean> close();
 }
@@ -0,0 +1,85 @@
+package com.jagsaund.rxuploader.throttle;
+
+import android.support.annotation.NonNull;
+import java.io.InterruptedIOException;
+
+/**
+ * Limits the rate at which upload bodies are written to the network. A global limit is shared by
+ * all uploads and a per-job limit applies to each upload individually. Both limits can be changed
+ * while uploads are running.
+ */
+public class BandwidthLimiter {
+    /**
+     * Rate which disables limiting.
+     */
+    public static final long UNLIMITED = TokenBucket.UNLIMITED;
+
+    @NonNull private final TokenBucket globalBucket;
+
+    private volatile long bytesPerSecondPerJob;
+
+    public BandwidthLimiter() {
+        this(UNLIMITED, UNLIMITED);
+    }
+
+    public BandwidthLimiter(long bytesPerSecond, long bytesPerSecondPerJob) {
+        if (bytesPerSecondPerJob < 0) {
+            throw new IllegalArgumentException("Rate must not be negative");
+        }
+        globalBucket = new TokenBucket(bytesPerSecond);
+        this.bytesPerSecondPerJob = bytesPerSecondPerJob;
+    }
+
+    public long getMaxBytesPerSecond() {
+        return globalBucket.getBytesPerSecond();
+    }
+
+    /**
+     * Limits the combined rate of all uploads.
+     *
+     * @param bytesPerSecond maximum bytes per second or {@link #UNLIMITED}
+     */
+    public void setMaxBytesPerSecond(long bytesPerSecond) {
+        globalBucket.setBytesPerSecond(bytesPerSecond);
+    }
+
+    public long getMaxBytesPerSecondPerJob() {
+        return bytesPerSecondPerJob;
+    }
+
+    /**
+     * Limits the rate of each individual upload.
+     *
+     * @param bytesPerSecond maximum bytes per second or {@link #UNLIMITED}
+     */
+    public void setMaxBytesPerSecondPerJob(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Rate must not be negative");
+        }
+        bytesPerSecondPerJob = bytesPerSecond;
+    }
+
+    /**
+     * Creates the bucket used to enforce the per-job limit of a single upload.
+     *
+     * @return a new bucket to pass to {@link #acquire(TokenBucket, long)}
+     */
+    @NonNull
+    public TokenBucket newJobBucket() {
+        return new TokenBucket(bytesPerSecondPerJob);
+    }
+
+    /**
+     * Blocks until {@code bytes} may be written by the upload owning {@code jobBucket}.
+     *
+     * @param jobBucket bucket of the upload created with {@link #newJobBucket()}
+     * @param bytes number of bytes about to be written
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire(@NonNull TokenBucket jobBucket, long bytes)
+            throws InterruptedIOException {
+        jobBucket.setBytesPerSecond(bytesPerSecondPerJob);
+        jobBucket.acquire(bytes);
+        globalBucket.acquire(bytes);
+    }
+}
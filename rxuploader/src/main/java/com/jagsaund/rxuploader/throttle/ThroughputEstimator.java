@@ -0,0 +1,105 @@
+package com.jagsaund.rxuploader.throttle;
+
+import android.support.annotation.NonNull;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Estimates the transfer rate of one or more uploads with an exponentially weighted moving
+ * average (EWMA) of the bytes sent per second.
+ * <br/>
+ * Bytes are accumulated into samples of at least {@value #SAMPLE_MILLIS} ms so that frequent
+ * small writes do not produce noisy instantaneous rates. Each sample is weighted by its duration
+ * relative to the time constant, so the estimate reacts to changes in about
+ * {@code timeConstantMillis} regardless of how often bytes are reported. While no bytes are sent
+ * the estimate decays towards zero.
+ * <br/>
+ * This class is thread safe.
+ */
+public class ThroughputEstimator {
+    public static final long DEFAULT_TIME_CONSTANT_MILLIS = 3000;
+
+    /**
+     * Minimum duration of a sample.
+     */
+    static final long SAMPLE_MILLIS = 250;
+
+    @NonNull private final Scheduler clock;
+
+    private final long timeConstantMillis;
+
+    private boolean started;
+    private boolean estimated;
+    private long sampleStart;
+    private long sampleBytes;
+    private double bytesPerSecond;
+
+    public ThroughputEstimator() {
+        this(DEFAULT_TIME_CONSTANT_MILLIS, Schedulers.computation());
+    }
+
+    /**
+     * @param timeConstantMillis time after which the weight of a sample has decayed to 1/e
+     * @param clock source of the current time
+     */
+    public ThroughputEstimator(long timeConstantMillis, @NonNull Scheduler clock) {
+        if (timeConstantMillis < 1) {
+            throw new IllegalArgumentException("Time constant must be at least one millisecond");
+        }
+        this.timeConstantMillis = timeConstantMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Records bytes sent since the last call.
+     *
+     * @param bytes number of bytes sent
+     */
+    public synchronized void onBytesSent(long bytes) {
+        final long now = clock.now();
+        if (!started) {
+            started = true;
+            sampleStart = now;
+        }
+        sampleBytes += bytes;
+        sample(now);
+    }
+
+    /**
+     * @return smoothed number of bytes sent per second or 0 if not known yet
+     */
+    public synchronized long bytesPerSecond() {
+        if (started) {
+            sample(clock.now());
+        }
+        return (long) bytesPerSecond;
+    }
+
+    /**
+     * Forgets all samples, eg. when an upload is started again.
+     */
+    public synchronized void reset() {
+        started = false;
+        estimated = false;
+        sampleBytes = 0;
+        bytesPerSecond = 0;
+    }
+
+    private void sample(long now) {
+        final long elapsed = now - sampleStart;
+        if (elapsed < SAMPLE_MILLIS) {
+            return;
+        }
+
+        final double rate = sampleBytes * 1000.0 / elapsed;
+        if (estimated) {
+            final double weight = 1 - Math.exp(-(double) elapsed / timeConstantMillis);
+            bytesPerSecond += weight * (rate - bytesPerSecond);
+        } else {
+            bytesPerSecond = rate;
+            estimated = true;
+        }
+        sampleStart = now;
+        sampleBytes = 0;
+    }
+}
@@ -0,0 +1,100 @@
+package com.jagsaund.rxuploader.throttle;
+
+import android.support.annotation.VisibleForTesting;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter where each token represents one byte. Tokens are replenished
+ * continuously at the configured rate and the bucket holds at most one second worth of tokens,
+ * which bounds the burst size.
+ * <br/>
+ * Callers which consume more tokens than are available go into debt and are blocked until the debt
+ * has been repaid. Because debt is carried over, concurrent callers sharing the same bucket are
+ * limited to the configured rate in aggregate.
+ * <br/>
+ * The rate can be changed at any time and takes effect on the next acquisition.
+ */
+public class TokenBucket {
+    /**
+     * Rate which disables limiting.
+     */
+    public static final long UNLIMITED = 0;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long bytesPerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(long bytesPerSecond) {
+        setBytesPerSecond(bytesPerSecond);
+    }
+
+    public synchronized long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Changes the rate of the bucket.
+     *
+     * @param bytesPerSecond number of bytes allowed per second or {@link #UNLIMITED}
+     */
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Rate must not be negative");
+        }
+        if (this.bytesPerSecond != bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            // start with a full bucket at the new rate and forget any debt from the old rate
+            tokens = bytesPerSecond;
+            lastRefillNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Takes {@code bytes} tokens from the bucket, blocking the calling thread until the tokens are
+     * available.
+     *
+     * @param bytes number of bytes about to be written
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        final long waitNanos = reserve(bytes, System.nanoTime());
+        if (waitNanos <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+        }
+    }
+
+    /**
+     * Takes {@code bytes} tokens from the bucket.
+     *
+     * @param bytes number of tokens to take
+     * @param nowNanos current time in nanoseconds
+     * @return time in nanoseconds the caller must wait before the tokens may be used
+     */
+    @VisibleForTesting
+    synchronized long reserve(long bytes, long nowNanos) {
+        if (bytesPerSecond == UNLIMITED) {
+            return 0;
+        }
+
+        final long elapsedNanos = Math.max(0, nowNanos - lastRefillNanos);
+        lastRefillNanos = nowNanos;
+        tokens = Math.min(bytesPerSecond,
+                tokens + (double) elapsedNanos * bytesPerSecond / NANOS_PER_SECOND);
+
+        tokens -= bytes;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond);
+    }
+}
@@ -0,0 +1,54 @@
+package com.jagsaund.rxuploader.utils;
+
+import android.support.annotation.NonNull;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class DigestUtils {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private DigestUtils() {
+    }
+
+    /**
+     * Computes the SHA-256 digest of the file by streaming its contents. The file is never held
+     * in memory in full. This performs blocking I/O and must not be called on the main thread.
+     *
+     * @param file the file to digest
+     * @return hex encoded digest
+     * @throws IOException if the file cannot be read
+     */
+    @NonNull
+    public static String sha256(@NonNull File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (final InputStream inputStream = new FileInputStream(file)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    @NonNull
+    static String toHex(@NonNull byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
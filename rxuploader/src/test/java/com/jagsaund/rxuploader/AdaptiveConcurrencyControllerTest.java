@@ -0,0 +1,77 @@
+package com.jagsaund.rxuploader;
+
+import com.jagsaund.rxuploader.job.ErrorType;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import rx.schedulers.TestScheduler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class AdaptiveConcurrencyControllerTest {
+    private static final long WINDOW = 1000;
+
+    private TestScheduler clock;
+    private AdaptiveConcurrencyController controller;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new TestScheduler();
+        controller = new AdaptiveConcurrencyController(2, 1, 4, WINDOW, clock);
+    }
+
+    @Test
+    public void testAdditiveIncrease() throws Exception {
+        // throughput keeps rising while jobs are waiting
+        assertThat(sendWindow(1000, 5), is(3));
+        assertThat(sendWindow(2000, 5), is(4));
+
+        // never grows beyond the upper bound
+        assertThat(sendWindow(4000, 5), is(4));
+    }
+
+    @Test
+    public void testNoIncreaseWithoutBacklog() throws Exception {
+        assertThat(sendWindow(1000, 0), is(2));
+        assertThat(sendWindow(2000, 0), is(2));
+    }
+
+    @Test
+    public void testNoIncreaseWhenThroughputFlat() throws Exception {
+        assertThat(sendWindow(1000, 5), is(3));
+        assertThat(sendWindow(1000, 5), is(3));
+    }
+
+    @Test
+    public void testMultiplicativeDecrease() throws Exception {
+        sendWindow(1000, 5);
+        sendWindow(2000, 5);
+        assertThat(controller.limit(), is(4));
+
+        assertThat(controller.onFailure(new IOException(), ErrorType.NETWORK), is(2));
+
+        // failures within the same window are attributed to the same congestion event
+        assertThat(controller.onFailure(new IOException(), ErrorType.NETWORK), is(2));
+
+        clock.advanceTimeBy(WINDOW, TimeUnit.MILLISECONDS);
+        assertThat(controller.onFailure(new SocketTimeoutException(), ErrorType.UNKNOWN), is(1));
+
+        // never shrinks below the lower bound
+        clock.advanceTimeBy(WINDOW, TimeUnit.MILLISECONDS);
+        assertThat(controller.onFailure(new IOException(), ErrorType.NETWORK), is(1));
+    }
+
+    @Test
+    public void testIgnoreNonNetworkFailures() throws Exception {
+        assertThat(controller.onFailure(new IOException(), ErrorType.SERVICE), is(2));
+        assertThat(controller.onFailure(new IOException(), ErrorType.FILE_NOT_FOUND), is(2));
+    }
+
+    private int sendWindow(long bytes, int backlog) {
+        clock.advanceTimeBy(WINDOW, TimeUnit.MILLISECONDS);
+        return controller.onBytesSent(bytes, backlog);
+    }
+}
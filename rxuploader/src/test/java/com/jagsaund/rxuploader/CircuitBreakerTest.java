@@ -0,0 +1,147 @@
+package com.jagsaund.rxuploader;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class CircuitBreakerTest {
+    private static final long OPEN_DURATION = 1000;
+
+    private TestScheduler scheduler;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler();
+        circuitBreaker = new CircuitBreaker(0.5f, 4, 4, OPEN_DURATION, 1, scheduler);
+    }
+
+    @Test
+    public void testOpensAtFailureRate() throws Exception {
+        final TestSubscriber<CircuitBreaker.State> ts = TestSubscriber.create();
+        circuitBreaker.state().subscribe(ts);
+
+        call(true);
+        call(false);
+        // not enough calls recorded to calculate the failure rate
+        call(true);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+
+        call(true);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.isCallPermitted(), is(false));
+        assertThat(circuitBreaker.tryAcquire(), is(CircuitBreaker.NOT_PERMITTED));
+
+        ts.assertValues(CircuitBreaker.State.CLOSED, CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void testSlidingWindow() throws Exception {
+        call(true);
+        call(false);
+        call(false);
+        call(false);
+        call(false);
+        // the oldest failure dropped out of the window
+        call(true);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+
+        call(true);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void testHalfOpenProbeSuccess() throws Exception {
+        open();
+
+        scheduler.advanceTimeBy(OPEN_DURATION, TimeUnit.MILLISECONDS);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+
+        // only a single probe is let through
+        final long probe = circuitBreaker.tryAcquire();
+        assertThat(probe, is(not(CircuitBreaker.NOT_PERMITTED)));
+        assertThat(circuitBreaker.isCallPermitted(), is(false));
+        assertThat(circuitBreaker.tryAcquire(), is(CircuitBreaker.NOT_PERMITTED));
+
+        circuitBreaker.onSuccess(probe);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.isCallPermitted(), is(true));
+    }
+
+    @Test
+    public void testHalfOpenProbeFailure() throws Exception {
+        open();
+        scheduler.advanceTimeBy(OPEN_DURATION, TimeUnit.MILLISECONDS);
+
+        circuitBreaker.onFailure(acquire());
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+
+        scheduler.advanceTimeBy(OPEN_DURATION - 1, TimeUnit.MILLISECONDS);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+    }
+
+    @Test
+    public void testHalfOpenProbeIgnored() throws Exception {
+        open();
+        scheduler.advanceTimeBy(OPEN_DURATION, TimeUnit.MILLISECONDS);
+
+        circuitBreaker.onIgnored(acquire());
+
+        // an ignored probe frees the permit without changing the state
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(circuitBreaker.isCallPermitted(), is(true));
+    }
+
+    @Test
+    public void testOutcomeOfEarlierGenerationIgnored() throws Exception {
+        final long closed = acquire();
+        open();
+        scheduler.advanceTimeBy(OPEN_DURATION, TimeUnit.MILLISECONDS);
+        final long probe = acquire();
+
+        // a call started while closed neither closes nor reopens the half open breaker
+        circuitBreaker.onSuccess(closed);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        circuitBreaker.onFailure(closed);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        circuitBreaker.onIgnored(closed);
+        assertThat(circuitBreaker.isCallPermitted(), is(false));
+
+        circuitBreaker.onSuccess(probe);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+
+        // nor is the late probe outcome recorded once the breaker closed
+        circuitBreaker.onFailure(probe);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(true);
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    private long acquire() {
+        final long permitted = circuitBreaker.tryAcquire();
+        assertThat(permitted, is(not(CircuitBreaker.NOT_PERMITTED)));
+        return permitted;
+    }
+
+    private void call(boolean failure) {
+        final long permitted = acquire();
+        if (failure) {
+            circuitBreaker.onFailure(permitted);
+        } else {
+            circuitBreaker.onSuccess(permitted);
+        }
+    }
+}
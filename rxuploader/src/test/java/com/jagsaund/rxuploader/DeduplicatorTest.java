@@ -0,0 +1,196 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.job.ErrorType;
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import com.jagsaund.rxuploader.store.DigestIndex;
+import java.io.File;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeduplicatorTest {
+    private static final String TEST_FILE = "upload_test.dat";
+    private static final String TEST_DIGEST =
+            "d764fad5679195ae7d42ce02fad8eb4df34f53efcb38d047fce32331060df7e6";
+
+    @Mock private DigestIndex digestIndex;
+    @Mock private UploadInteractor uploadInteractor;
+
+    private Deduplicator deduplicator;
+
+    @Before
+    public void setUp() throws Exception {
+        deduplicator = new Deduplicator(digestIndex, uploadInteractor, Schedulers.immediate());
+        when(digestIndex.put(anyString(), anyString()))
+                .thenAnswer(invocation -> Observable.just(invocation.getArguments()[1]));
+    }
+
+    @Test
+    public void testNewContent() throws Exception {
+        when(digestIndex.get(TEST_DIGEST)).thenReturn(Observable.empty());
+
+        final Job job = createJob("job-2", Status.createQueued("job-2"));
+        final Job resolved = resolve(job);
+
+        assertThat(resolved.id(), is("job-2"));
+        assertThat(resolved.digest(), is(equalTo(TEST_DIGEST)));
+        assertThat(resolved.status().statusType(), is(StatusType.QUEUED));
+        verify(digestIndex).put(TEST_DIGEST, "job-2");
+    }
+
+    @Test
+    public void testDuplicateOfCompletedJob() throws Exception {
+        final Job existing = createJob("job-1", Status.createCompleted("job-1", "response"))
+                .withDigest(TEST_DIGEST);
+        when(digestIndex.get(TEST_DIGEST)).thenReturn(Observable.just("job-1"));
+        when(uploadInteractor.get("job-1")).thenReturn(Observable.just(existing));
+
+        final Job resolved = resolve(createJob("job-2", Status.createQueued("job-2")));
+
+        // the new job completes with the response of the earlier upload
+        assertThat(resolved.id(), is("job-2"));
+        assertThat(resolved.status().statusType(), is(StatusType.COMPLETED));
+        assertThat(resolved.status().response(), is("response"));
+        verify(digestIndex, never()).put(anyString(), anyString());
+    }
+
+    @Test
+    public void testDuplicateOfQueuedJob() throws Exception {
+        final Job existing =
+                createJob("job-1", Status.createQueued("job-1")).withDigest(TEST_DIGEST);
+        when(digestIndex.get(TEST_DIGEST)).thenReturn(Observable.just("job-1"));
+        when(uploadInteractor.get("job-1")).thenReturn(Observable.just(existing));
+
+        final Job resolved = resolve(createJob("job-2", Status.createQueued("job-2")));
+
+        // the content is already being uploaded so the existing job is returned
+        assertThat(resolved, is(equalTo(existing)));
+        verify(digestIndex, never()).put(anyString(), anyString());
+    }
+
+    @Test
+    public void testDuplicateOfFailedJob() throws Exception {
+        final Job existing =
+                createJob("job-1", Status.createFailed("job-1", ErrorType.SERVICE))
+                        .withDigest(TEST_DIGEST);
+        when(digestIndex.get(TEST_DIGEST)).thenReturn(Observable.just("job-1"));
+        when(uploadInteractor.get("job-1")).thenReturn(Observable.just(existing));
+
+        final Job resolved = resolve(createJob("job-2", Status.createQueued("job-2")));
+
+        // failed content is uploaded again by the new job
+        assertThat(resolved.id(), is("job-2"));
+        assertThat(resolved.status().statusType(), is(StatusType.QUEUED));
+        verify(digestIndex).put(TEST_DIGEST, "job-2");
+    }
+
+    @Test
+    public void testDuplicateOfDeletedJob() throws Exception {
+        when(digestIndex.get(TEST_DIGEST)).thenReturn(Observable.just("job-1"));
+        when(uploadInteractor.get("job-1")).thenReturn(Observable.just(Job.INVALID_JOB));
+
+        final Job resolved = resolve(createJob("job-2", Status.createQueued("job-2")));
+
+        assertThat(resolved.id(), is("job-2"));
+        assertThat(resolved.status().statusType(), is(StatusType.QUEUED));
+        verify(digestIndex).put(TEST_DIGEST, "job-2");
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        final Job job = Job.builder()
+                .setId("job-2")
+                .setFilepath("missing_file.dat")
+                .setMetadata(Collections.emptyMap())
+                .setStatus(Status.createQueued("job-2"))
+                .setMimeType("text/plain")
+                .build();
+
+        // the upload reports the missing file as usual
+        assertThat(resolve(job), is(equalTo(job)));
+        verify(digestIndex, never()).get(anyString());
+    }
+
+    @Test
+    public void testForget() throws Exception {
+        final Job job = createJob("job-1", Status.createCompleted("job-1", "response"))
+                .withDigest(TEST_DIGEST);
+        when(digestIndex.remove(TEST_DIGEST, "job-1")).thenReturn(Observable.just("job-1"));
+
+        assertThat(forget(job), is(equalTo(job)));
+        verify(digestIndex).remove(TEST_DIGEST, "job-1");
+    }
+
+    @Test
+    public void testForgetDigestOfNewerJob() throws Exception {
+        final Job job = createJob("job-1", Status.createCompleted("job-1", "response"))
+                .withDigest(TEST_DIGEST);
+        // the digest was associated with a newer job in the meantime and is kept
+        when(digestIndex.remove(TEST_DIGEST, "job-1")).thenReturn(Observable.empty());
+
+        assertThat(forget(job), is(equalTo(job)));
+    }
+
+    @Test
+    public void testForgetWithoutDigest() throws Exception {
+        final Job job = createJob("job-1", Status.createCompleted("job-1", "response"));
+
+        assertThat(forget(job), is(equalTo(job)));
+        verify(digestIndex, never()).remove(anyString(), anyString());
+    }
+
+    @NonNull
+    private Job resolve(@NonNull Job job) {
+        return single(deduplicator.hash(job).flatMap(deduplicator::resolve));
+    }
+
+    @NonNull
+    private Job forget(@NonNull Job job) {
+        return single(deduplicator.forget(job));
+    }
+
+    @NonNull
+    private Job single(@NonNull Observable<Job> observable) {
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        observable.subscribe(ts);
+
+        ts.assertNoErrors();
+        ts.assertValueCount(1);
+        ts.assertCompleted();
+        return ts.getOnNextEvents().get(0);
+    }
+
+    @NonNull
+    private Job createJob(@NonNull String jobId, @NonNull Status status) {
+        return Job.builder()
+                .setId(jobId)
+                .setFilepath(getFile(TEST_FILE).getPath())
+                .setMetadata(Collections.emptyMap())
+                .setStatus(status)
+                .setMimeType("text/plain")
+                .build();
+    }
+
+    private File getFile(@NonNull String path) {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        return new File(classLoader.getResource(path).getFile());
+    }
+}
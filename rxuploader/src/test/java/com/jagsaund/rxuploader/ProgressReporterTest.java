@@ -0,0 +1,123 @@
+package com.jagsaund.rxuploader;
+
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.rx.ProgressListener;
+import com.jagsaund.rxuploader.rx.ProgressSampler;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ProgressReporterTest {
+    private TestScheduler clock;
+    private ProgressReporter progressReporter;
+    private TestSubscriber<UploadProgress> updates;
+    private TestSubscriber<Status> status;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new TestScheduler();
+        progressReporter = new ProgressReporter(clock);
+        updates = TestSubscriber.create();
+        status = TestSubscriber.create();
+        progressReporter.updates().subscribe(updates);
+    }
+
+    @Test
+    public void testUpdatesSlotInPlace() throws Exception {
+        final ProgressListener listener = progressReporter.listener(status, "job-1", 1000);
+        final UploadProgress progress = progressReporter.get("job-1");
+
+        listener.onProgress(0);
+        listener.onProgress(400);
+
+        assertThat(progress.jobId(), is("job-1"));
+        assertThat(progress.bytesSent(), is(400L));
+        assertThat(progress.totalBytes(), is(1000L));
+        assertThat(progress.percent(), is(40));
+
+        // every notification carries the same instance
+        updates.assertValueCount(2);
+        assertThat(updates.getOnNextEvents().get(0), sameInstance(progress));
+        assertThat(updates.getOnNextEvents().get(1), sameInstance(progress));
+
+        status.assertValues(Status.createSending("job-1", 0), Status.createSending("job-1", 40));
+    }
+
+    @Test
+    public void testWithoutStatusUpdates() throws Exception {
+        progressReporter.setStatusUpdates(false);
+        final ProgressListener listener = progressReporter.listener(status, "job-1", 1000);
+
+        listener.onProgress(0);
+        listener.onProgress(500);
+        listener.onProgress(1000);
+
+        // only the transition to sending is emitted as a status
+        status.assertValue(Status.createSending("job-1", 0));
+        updates.assertValueCount(3);
+        assertThat(progressReporter.get("job-1").bytesSent(), is(1000L));
+    }
+
+    @Test
+    public void testSampledNotifications() throws Exception {
+        progressReporter.setProgressSampler(
+                new ProgressSampler(0, TimeUnit.MILLISECONDS, 500, 0));
+        final ProgressListener listener = progressReporter.listener(status, "job-1", 1000);
+
+        for (long bytes = 0; bytes <= 1000; bytes += 100) {
+            listener.onProgress(bytes);
+
+            // the slot is always up to date, even when the update is not notified
+            assertThat(progressReporter.get("job-1").bytesSent(), is(bytes));
+        }
+
+        updates.assertValueCount(3);
+        status.assertValues(Status.createSending("job-1", 0), Status.createSending("job-1", 50),
+                Status.createSending("job-1", 100));
+    }
+
+    @Test
+    public void testThroughputAndEta() throws Exception {
+        final ProgressListener listener = progressReporter.listener(status, "job-1", 10000);
+        listener.onProgress(0);
+        clock.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+        listener.onProgress(1000);
+
+        final UploadProgress progress = progressReporter.get("job-1");
+        assertThat(progress.bytesPerSecond(), is(2000L));
+        assertThat(progress.etaMillis(), is(4500L));
+
+        final Status sending = status.getOnNextEvents().get(1);
+        assertThat(sending.bytesSent(), is(1000L));
+        assertThat(sending.totalBytes(), is(10000L));
+        assertThat(sending.bytesPerSecond(), is(2000L));
+        assertThat(sending.etaMillis(), is(4500L));
+
+        // a resumed upload starts at its offset, which does not count towards the rate
+        progressReporter.listener(status, "job-2", 10000).onProgress(5000);
+
+        assertThat(progressReporter.bytesPerSecond(), is(2000L));
+        assertThat(progressReporter.etaMillis(), is(7000L));
+    }
+
+    @Test
+    public void testRestartAndRemove() throws Exception {
+        progressReporter.listener(status, "job-1", 1000).onProgress(700);
+        final UploadProgress progress = progressReporter.get("job-1");
+
+        // an upload started again reuses the slot and reports from the start
+        progressReporter.listener(status, "job-1", 1000);
+        assertThat(progressReporter.get("job-1"), sameInstance(progress));
+        assertThat(progress.bytesSent(), is(0L));
+
+        progressReporter.remove("job-1");
+        assertThat(progressReporter.get("job-1"), nullValue());
+    }
+}
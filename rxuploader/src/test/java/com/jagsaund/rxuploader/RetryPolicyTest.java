@@ -0,0 +1,57 @@
+package com.jagsaund.rxuploader;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class RetryPolicyTest {
+    @Test
+    public void testCanRetry() throws Exception {
+        final RetryPolicy policy = new RetryPolicy(3, 100, 1000, new Random(0));
+
+        assertThat(policy.canRetry(1), is(true));
+        assertThat(policy.canRetry(2), is(true));
+        assertThat(policy.canRetry(3), is(false));
+    }
+
+    @Test
+    public void testExponentialBound() throws Exception {
+        final RetryPolicy policy = new RetryPolicy(10, 100, 1000, new Random(0));
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.delayMillis(1), is(lessThanOrEqualTo(100L)));
+            assertThat(policy.delayMillis(2), is(lessThanOrEqualTo(200L)));
+            assertThat(policy.delayMillis(3), is(lessThanOrEqualTo(400L)));
+            assertThat(policy.delayMillis(8), is(lessThanOrEqualTo(1000L)));
+            assertThat(policy.delayMillis(Integer.MAX_VALUE), is(lessThanOrEqualTo(1000L)));
+            assertThat(policy.delayMillis(Integer.MAX_VALUE), is(greaterThanOrEqualTo(0L)));
+        }
+    }
+
+    @Test
+    public void testJitter() throws Exception {
+        final RetryPolicy policy = new RetryPolicy(10, 1000, 1000, new Random(0));
+
+        // full jitter spreads the delays over the whole range
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            final long delay = policy.delayMillis(1);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertThat(min, is(lessThanOrEqualTo(100L)));
+        assertThat(max, is(greaterThanOrEqualTo(900L)));
+    }
+
+    @Test
+    public void testNoDelay() throws Exception {
+        final RetryPolicy policy = new RetryPolicy(2, 0, 0, new Random(0));
+
+        assertThat(policy.delayMillis(1), is(0L));
+    }
+}
@@ -0,0 +1,472 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.job.ErrorType;
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UploadExecutorTest {
+    @Mock private UploadInteractor uploadInteractor;
+    @Mock private UploadErrorAdapter errorAdapter;
+
+    private PublishSubject<Status> upload1;
+    private PublishSubject<Status> upload2;
+    private PublishSubject<Status> upload3;
+
+    @Before
+    public void setUp() throws Exception {
+        upload1 = PublishSubject.create();
+        upload2 = PublishSubject.create();
+        upload3 = PublishSubject.create();
+
+        when(uploadInteractor.upload("job-1")).thenReturn(upload1);
+        when(uploadInteractor.upload("job-2")).thenReturn(upload2);
+        when(uploadInteractor.upload("job-3")).thenReturn(upload3);
+    }
+
+    @Test
+    public void testConcurrentSlots() throws Exception {
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 2);
+
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+        executor.submit(createJob("job-3"));
+
+        // only two slots are available so the third job has to wait
+        assertThat(executor.activeCount(), is(2));
+        assertThat(executor.pendingCount(), is(1));
+        verify(uploadInteractor).upload("job-1");
+        verify(uploadInteractor).upload("job-2");
+        verify(uploadInteractor, times(0)).upload("job-3");
+
+        // releasing a slot starts the next pending job
+        upload2.onNext(Status.createCompleted("job-2", "done"));
+        upload2.onCompleted();
+
+        assertThat(executor.activeCount(), is(2));
+        assertThat(executor.pendingCount(), is(0));
+        verify(uploadInteractor).upload("job-3");
+    }
+
+    @Test
+    public void testStatusOrder() throws Exception {
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 2);
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        executor.status().subscribe(ts);
+
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+
+        upload1.onNext(Status.createSending("job-1", 0));
+        upload2.onNext(Status.createSending("job-2", 0));
+        upload1.onNext(Status.createSending("job-1", 50));
+        upload2.onNext(Status.createSending("job-2", 100));
+        upload1.onNext(Status.createSending("job-1", 100));
+
+        ts.assertValues(
+                Status.createSending("job-1", 0),
+                Status.createSending("job-2", 0),
+                Status.createSending("job-1", 50),
+                Status.createSending("job-2", 100),
+                Status.createSending("job-1", 100));
+    }
+
+    @Test
+    public void testDuplicateSubmit() throws Exception {
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+
+        assertThat(executor.activeCount(), is(1));
+        assertThat(executor.pendingCount(), is(1));
+        verify(uploadInteractor, times(1)).upload("job-1");
+    }
+
+    @Test
+    public void testHalfOpenBreakerStartsProbesOnly() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final CircuitBreaker breaker = new CircuitBreaker(0.5f, 1, 1, 1000, 1, scheduler);
+        breaker.onFailure(breaker.tryAcquire());
+
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 3);
+        executor.setCircuitBreaker(breaker);
+
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+        executor.submit(createJob("job-3"));
+        assertThat(executor.activeCount(), is(0));
+
+        // a half open breaker lets a single probe through so only a single upload is started
+        scheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        assertThat(executor.activeCount(), is(1));
+        assertThat(executor.pendingCount(), is(2));
+        verify(uploadInteractor).upload("job-1");
+        verify(uploadInteractor, times(0)).upload("job-2");
+
+        // the probe succeeds and closes the breaker which starts the remaining uploads
+        breaker.onSuccess(breaker.tryAcquire());
+        assertThat(executor.activeCount(), is(3));
+        verify(uploadInteractor).upload("job-2");
+        verify(uploadInteractor).upload("job-3");
+    }
+
+    @Test
+    public void testFailureReleasesSlot() throws Exception {
+        when(errorAdapter.fromThrowable(any(IOException.class))).thenReturn(ErrorType.NETWORK);
+
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        executor.status().subscribe(ts);
+
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+
+        upload1.onError(new IOException());
+
+        ts.assertValues(Status.createFailed("job-1", ErrorType.NETWORK));
+        assertThat(executor.activeCount(), is(1));
+        verify(uploadInteractor).upload("job-2");
+    }
+
+    @Test
+    public void testIncreaseSlots() throws Exception {
+        when(uploadInteractor.upload("job-1")).thenReturn(Observable.never());
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+        executor.submit(createJob("job-3"));
+        assertThat(executor.activeCount(), is(1));
+
+        executor.setMaxConcurrentUploads(3);
+        assertThat(executor.activeCount(), is(3));
+        assertThat(executor.pendingCount(), is(0));
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        final PublishSubject<Status> upload4 = PublishSubject.create();
+        when(uploadInteractor.upload("job-4")).thenReturn(upload4);
+
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+
+        // the first job occupies the only slot while the remaining jobs queue up
+        executor.submit(createJob("job-1", Job.PRIORITY_NORMAL));
+        executor.submit(createJob("job-2", Job.PRIORITY_LOW));
+        executor.submit(createJob("job-3", Job.PRIORITY_NORMAL));
+        executor.submit(createJob("job-4", Job.PRIORITY_HIGH));
+
+        upload1.onCompleted();
+        upload4.onCompleted();
+        upload3.onCompleted();
+
+        // high priority jumps ahead, equal priorities keep their arrival order
+        final InOrder inOrder = inOrder(uploadInteractor);
+        inOrder.verify(uploadInteractor).upload("job-1");
+        inOrder.verify(uploadInteractor).upload("job-4");
+        inOrder.verify(uploadInteractor).upload("job-3");
+        inOrder.verify(uploadInteractor).upload("job-2");
+    }
+
+    @Test
+    public void testAutomaticRetry() throws Exception {
+        final Job job = createJob("job-1");
+        when(errorAdapter.fromThrowable(any(IOException.class))).thenReturn(ErrorType.NETWORK);
+        when(errorAdapter.canRetry(any(IOException.class))).thenReturn(true);
+        when(uploadInteractor.get("job-1")).thenReturn(Observable.just(job));
+        when(uploadInteractor.save(job.withAttempts(1)))
+                .thenReturn(Observable.just(job.withAttempts(1)));
+
+        final TestScheduler retryScheduler = new TestScheduler();
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+        executor.setRetryPolicy(new RetryPolicy(2, 1000, 1000, new Random(0)), retryScheduler);
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        executor.status().subscribe(ts);
+
+        executor.submit(job);
+        upload1.onError(new IOException());
+
+        // the failed attempt is persisted before the failure is published
+        verify(uploadInteractor).save(job.withAttempts(1));
+        ts.assertValuesAndClear(Status.createFailed("job-1", ErrorType.NETWORK));
+        assertThat(executor.activeCount(), is(0));
+
+        // the job is queued again once the backoff delay elapsed
+        retryScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        ts.assertValues(Status.createQueued("job-1"));
+    }
+
+    @Test
+    public void testAutomaticRetryExhausted() throws Exception {
+        final Job job = createJob("job-1").withAttempts(1);
+        when(errorAdapter.fromThrowable(any(IOException.class))).thenReturn(ErrorType.NETWORK);
+        when(errorAdapter.canRetry(any(IOException.class))).thenReturn(true);
+        when(uploadInteractor.get("job-1")).thenReturn(Observable.just(job));
+        when(uploadInteractor.save(job.withAttempts(2)))
+                .thenReturn(Observable.just(job.withAttempts(2)));
+
+        final TestScheduler retryScheduler = new TestScheduler();
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+        executor.setRetryPolicy(new RetryPolicy(2, 1000, 1000, new Random(0)), retryScheduler);
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        executor.status().subscribe(ts);
+
+        executor.submit(job);
+        upload1.onError(new IOException());
+        retryScheduler.advanceTimeBy(1, TimeUnit.HOURS);
+
+        ts.assertValues(Status.createFailed("job-1", ErrorType.NETWORK));
+    }
+
+    @Test
+    public void testBatchUpload() throws Exception {
+        final PublishSubject<Status> batch = PublishSubject.create();
+        when(uploadInteractor.uploadBatch(Arrays.asList("job-1", "job-2"))).thenReturn(batch);
+
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+        executor.setBatchPolicy(new BatchPolicy(2, 100, 200, 0, TimeUnit.MILLISECONDS));
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        executor.status().subscribe(ts);
+
+        executor.submitAll(Arrays.asList(
+                createJob("job-1", Job.PRIORITY_NORMAL, 100),
+                createJob("job-2", Job.PRIORITY_NORMAL, 100),
+                createJob("job-3", Job.PRIORITY_NORMAL, 100)));
+
+        // the batch is full after two files and occupies a single slot
+        assertThat(executor.activeCount(), is(1));
+        assertThat(executor.pendingCount(), is(1));
+        verify(uploadInteractor, times(0)).upload(any(String.class));
+
+        batch.onNext(Status.createCompleted("job-1", "done"));
+        batch.onNext(Status.createFailed("job-2", ErrorType.SERVICE));
+        batch.onCompleted();
+
+        ts.assertValues(Status.createCompleted("job-1", "done"),
+                Status.createFailed("job-2", ErrorType.SERVICE));
+        verify(uploadInteractor).upload("job-3");
+    }
+
+    @Test
+    public void testBatchUploadFailure() throws Exception {
+        final PublishSubject<Status> batch = PublishSubject.create();
+        when(uploadInteractor.uploadBatch(Arrays.asList("job-1", "job-2"))).thenReturn(batch);
+        when(errorAdapter.fromThrowable(any(IOException.class))).thenReturn(ErrorType.NETWORK);
+
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+        executor.setBatchPolicy(new BatchPolicy(5, 100, 500, 0, TimeUnit.MILLISECONDS));
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        executor.status().subscribe(ts);
+
+        // jobs of unknown size are never batched
+        executor.submitAll(Arrays.asList(
+                createJob("job-1", Job.PRIORITY_NORMAL, 100),
+                createJob("job-2", Job.PRIORITY_NORMAL, 100),
+                createJob("job-3")));
+        batch.onError(new IOException());
+
+        // a failed request fails every job of the batch
+        ts.assertValues(Status.createFailed("job-1", ErrorType.NETWORK),
+                Status.createFailed("job-2", ErrorType.NETWORK));
+        assertThat(executor.activeCount(), is(1));
+        verify(uploadInteractor).upload("job-3");
+    }
+
+    @Test
+    public void testCancelRunning() throws Exception {
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        executor.status().subscribe(ts);
+
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+        upload1.onNext(Status.createSending("job-1", 0));
+
+        assertThat(executor.cancel("job-1"), is(true));
+
+        // the upload is unsubscribed and the slot is handed to the next job right away
+        assertThat(upload1.hasObservers(), is(false));
+        assertThat(executor.activeCount(), is(1));
+        verify(uploadInteractor).upload("job-2");
+
+        assertThat(executor.cancel("job-1"), is(false));
+        ts.assertValues(Status.createSending("job-1", 0));
+    }
+
+    @Test
+    public void testCancelPending() throws Exception {
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+        executor.submit(createJob("job-3"));
+
+        assertThat(executor.cancel("job-2"), is(true));
+        assertThat(executor.pendingCount(), is(1));
+
+        upload1.onCompleted();
+
+        verify(uploadInteractor, times(0)).upload("job-2");
+        verify(uploadInteractor).upload("job-3");
+    }
+
+    @Test
+    public void testCancelBatch() throws Exception {
+        final PublishSubject<Status> batch = PublishSubject.create();
+        when(uploadInteractor.uploadBatch(Arrays.asList("job-1", "job-2"))).thenReturn(batch);
+
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+        executor.setBatchPolicy(new BatchPolicy(2, 100, 200, 0, TimeUnit.MILLISECONDS));
+
+        executor.submitAll(Arrays.asList(
+                createJob("job-1", Job.PRIORITY_NORMAL, 100),
+                createJob("job-2", Job.PRIORITY_NORMAL, 100)));
+
+        assertThat(executor.cancel("job-1"), is(true));
+
+        // the rest of the batch is uploaded again without the cancelled job
+        assertThat(batch.hasObservers(), is(false));
+        assertThat(executor.activeCount(), is(1));
+        verify(uploadInteractor).upload("job-2");
+
+        // a late termination of the cancelled batch does not release the slot again
+        batch.onCompleted();
+        assertThat(executor.activeCount(), is(1));
+    }
+
+    @Test
+    public void testBoundedPending() throws Exception {
+        final PublishSubject<Status> upload4 = PublishSubject.create();
+        when(uploadInteractor.upload("job-4")).thenReturn(upload4);
+        when(uploadInteractor.upload("job-5")).thenReturn(Observable.never());
+
+        final Job job4 = createJob("job-4", Job.PRIORITY_HIGH);
+        final Job job5 = createJob("job-5", Job.PRIORITY_LOW);
+        // the page of queued jobs read by each refill, large enough for the free capacity of
+        // the queue besides the pending and running jobs
+        when(uploadInteractor.getByStatus(3, StatusType.QUEUED)).thenReturn(
+                Observable.just(job4, createJob("job-2"), createJob("job-3")),
+                Observable.just(job4, createJob("job-3"), job5),
+                Observable.just(createJob("job-3"), job5));
+
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+        executor.setMaxPendingJobs(2);
+
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+        executor.submit(createJob("job-3"));
+        executor.submit(job4);
+        executor.submit(job5);
+
+        // the pending queue is full so the last jobs are left in the store
+        assertThat(executor.pendingCount(), is(2));
+        verify(uploadInteractor, times(0)).getByStatus(3, StatusType.QUEUED);
+
+        // once the queue has drained to half of its capacity it is refilled from the store with
+        // the queued job of the highest priority
+        upload1.onCompleted();
+        assertThat(executor.pendingCount(), is(2));
+        verify(uploadInteractor).getByStatus(3, StatusType.QUEUED);
+
+        upload2.onCompleted();
+        upload4.onCompleted();
+        upload3.onCompleted();
+
+        final InOrder inOrder = inOrder(uploadInteractor);
+        inOrder.verify(uploadInteractor).upload("job-1");
+        inOrder.verify(uploadInteractor).upload("job-2");
+        inOrder.verify(uploadInteractor).upload("job-4");
+        inOrder.verify(uploadInteractor).upload("job-3");
+        inOrder.verify(uploadInteractor).upload("job-5");
+
+        // every job is uploaded once and nothing is left in the store
+        assertThat(executor.pendingCount(), is(0));
+        verify(uploadInteractor, times(3)).getByStatus(3, StatusType.QUEUED);
+    }
+
+    @Test
+    public void testFailedRefillRetried() throws Exception {
+        final TestScheduler refillScheduler = new TestScheduler();
+        when(uploadInteractor.upload("job-4")).thenReturn(Observable.never());
+        when(uploadInteractor.getByStatus(3, StatusType.QUEUED))
+                .thenReturn(Observable.error(new IOException()));
+        // the last refill runs with an empty queue and no upload running
+        when(uploadInteractor.getByStatus(2, StatusType.QUEUED)).thenReturn(
+                Observable.error(new IOException()),
+                Observable.just(createJob("job-4")));
+
+        final UploadExecutor executor = new UploadExecutor(uploadInteractor, errorAdapter, 1);
+        executor.setMaxPendingJobs(2, refillScheduler);
+
+        executor.submit(createJob("job-1"));
+        executor.submit(createJob("job-2"));
+        executor.submit(createJob("job-3"));
+        executor.submit(createJob("job-4"));
+
+        upload1.onCompleted();
+        upload2.onCompleted();
+        upload3.onCompleted();
+
+        // the last refill failed while no upload was left to trigger another one
+        assertThat(executor.activeCount(), is(0));
+        verify(uploadInteractor, times(0)).upload("job-4");
+
+        refillScheduler.advanceTimeBy(UploadExecutor.MAX_REFILL_BACKOFF_MILLIS,
+                TimeUnit.MILLISECONDS);
+        verify(uploadInteractor).upload("job-4");
+        assertThat(executor.activeCount(), is(1));
+    }
+
+    @NonNull
+    private static Job createJob(@NonNull String jobId) {
+        return createJob(jobId, Job.PRIORITY_NORMAL);
+    }
+
+    @NonNull
+    private static Job createJob(@NonNull String jobId, int priority) {
+        return createJob(jobId, priority, Job.SIZE_UNKNOWN);
+    }
+
+    @NonNull
+    private static Job createJob(@NonNull String jobId, int priority, long size) {
+        return Job.builder()
+                .setId(jobId)
+                .setFilepath("filepath")
+                .setMetadata(Collections.emptyMap())
+                .setStatus(Status.createQueued(jobId))
+                .setMimeType("text/plain")
+                .setPriority(priority)
+                .setSize(size)
+                .build();
+    }
+}
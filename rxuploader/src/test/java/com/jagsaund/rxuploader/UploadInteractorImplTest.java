@@ -18,6 +18,8 @@ import rx.Observable;
 import rx.observers.TestSubscriber;
 import rx.schedulers.TestScheduler;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.times;
@@ -77,6 +79,39 @@ public class UploadInteractorImplTest {
         ts.assertValues(statuses);
     }
 
+    @Test
+    public void testUploadKeepsByteProgress() throws Exception {
+        final String jobId = "job-id";
+        final File file = getFile(TEST_FILE);
+        final Job job = Job.builder()
+                .setId(jobId)
+                .setFilepath(file.getPath())
+                .setMetadata(Collections.emptyMap())
+                .setMimeType("text/plain")
+                .setStatus(Status.createQueued(jobId))
+                .build();
+
+        when(dataStore.get(jobId)).thenReturn(Observable.just(job));
+
+        // both updates are at 10% but report different byte counts
+        final Status[] statuses = new Status[] {
+                Status.createSending(jobId, 1000, 10000), Status.createSending(jobId, 1500, 10000),
+                Status.createCompleted(jobId, "Finished"),
+        };
+
+        when(uploader.upload(job, file)).thenReturn(Observable.from(statuses));
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploadInteractor.upload(jobId).subscribe(ts);
+
+        testScheduler.triggerActions();
+
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertValueCount(3);
+        assertThat(ts.getOnNextEvents().get(1).bytesSent(), is(1500L));
+    }
+
     @Test
     public void testUploadJobNotFound() throws Exception {
         final String jobId = "job-id";
@@ -1,9 +1,11 @@
 package com.jagsaund.rxuploader;
 
+import android.support.annotation.NonNull;
 import com.jagsaund.rxuploader.job.ErrorType;
 import com.jagsaund.rxuploader.job.Job;
 import com.jagsaund.rxuploader.job.Status;
 import com.jagsaund.rxuploader.job.StatusType;
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
@@ -11,23 +13,31 @@ import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import rx.Observable;
 import rx.observers.TestSubscriber;
 import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
 import rx.subjects.TestSubject;
 
 import static com.jagsaund.rxuploader.job.Status.createQueued;
 import static com.jagsaund.rxuploader.job.Status.createSending;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class UploadManagerTest {
+    private static final String TEST_FILE = "upload_test.dat";
+
     private static final Job TEST_JOB = Job.builder()
             .setId("job-id")
             .setFilepath("filepath")
@@ -51,6 +61,8 @@ public class UploadManagerTest {
         jobSubject = TestSubject.create(testScheduler);
 
         when(uploadInteractor.getAll()).thenReturn(Observable.empty());
+        when(uploadInteractor.getByStatus(anyVararg())).thenReturn(Observable.empty());
+        when(uploadInteractor.close()).thenReturn(Observable.just(true));
 
         uploadManager =
                 new UploadManager(uploadInteractor, uploadErrorAdapter, jobSubject, statusSubject,
@@ -95,6 +107,27 @@ public class UploadManagerTest {
         verify(uploadInteractor).update(completed);
     }
 
+    @Test
+    public void testEnqueueReadsFileSize() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Job job = Job.builder()
+                .setId("job-id")
+                .setFilepath(file.getPath())
+                .setMetadata(Collections.emptyMap())
+                .setStatus(createQueued("job-id"))
+                .setMimeType("text/plain")
+                .build();
+        when(uploadInteractor.save(any(Job.class))).thenReturn(Observable.empty());
+
+        uploadManager.enqueue(job);
+        testScheduler.triggerActions();
+
+        // the size of the file is cached with the job when it is saved
+        final ArgumentCaptor<Job> saved = ArgumentCaptor.forClass(Job.class);
+        verify(uploadInteractor).save(saved.capture());
+        assertThat(saved.getValue().size(), is(file.length()));
+    }
+
     @Test
     public void testEnqueueUploadFailure() throws Exception {
         when(uploadErrorAdapter.fromThrowable(any(IOException.class)))
@@ -175,7 +208,7 @@ public class UploadManagerTest {
                 Status.createSending(jobId2, 100),
         };
 
-        when(uploadInteractor.getAll())
+        when(uploadInteractor.getByStatus(StatusType.SENDING, StatusType.QUEUED))
                 .thenReturn(Observable.from(Collections.emptyList()));
 
         when(uploadInteractor.save(job1))
@@ -247,6 +280,150 @@ public class UploadManagerTest {
         ts.assertValues(Arrays.copyOfRange(expected, 5, expected.length));
     }
 
+    @Test
+    public void testPauseAndResume() throws Exception {
+        final PublishSubject<Status> upload = PublishSubject.create();
+        when(uploadInteractor.update(TEST_JOB.status())).thenReturn(Observable.just(TEST_JOB));
+        when(uploadInteractor.upload(TEST_JOB.id())).thenReturn(upload);
+
+        statusSubject.onNext(TEST_JOB.status());
+        testScheduler.triggerActions();
+        assertThat(upload.hasObservers(), is(true));
+
+        final Status paused = Status.createPaused(TEST_JOB.id());
+        when(uploadInteractor.get(TEST_JOB.id())).thenReturn(Observable.just(TEST_JOB));
+        when(uploadInteractor.update(paused))
+                .thenReturn(Observable.just(TEST_JOB.withStatus(paused)));
+
+        uploadManager.pause(TEST_JOB.id());
+        testScheduler.triggerActions();
+
+        // the upload is stopped, its slot is freed and the paused state is persisted
+        assertThat(upload.hasObservers(), is(false));
+        assertThat(uploadManager.getActiveUploadCount(), is(0));
+        verify(uploadInteractor).update(paused);
+
+        when(uploadInteractor.get(TEST_JOB.id()))
+                .thenReturn(Observable.just(TEST_JOB.withStatus(paused)));
+
+        uploadManager.resume(TEST_JOB.id());
+        testScheduler.triggerActions();
+
+        // the job is queued and uploaded again
+        verify(uploadInteractor, times(2)).update(TEST_JOB.status());
+        verify(uploadInteractor, times(2)).upload(TEST_JOB.id());
+        assertThat(upload.hasObservers(), is(true));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final Status failed = Status.createFailed(TEST_JOB.id(), ErrorType.NETWORK);
+        final Status cancelled = Status.createCancelled(TEST_JOB.id());
+        when(uploadInteractor.get(TEST_JOB.id()))
+                .thenReturn(Observable.just(TEST_JOB.withStatus(failed)));
+        when(uploadInteractor.update(cancelled))
+                .thenReturn(Observable.just(TEST_JOB.withStatus(cancelled)));
+
+        uploadManager.cancel(TEST_JOB.id());
+        testScheduler.triggerActions();
+
+        verify(uploadInteractor).update(cancelled);
+    }
+
+    @Test
+    public void testCancelCompleted() throws Exception {
+        final Status completed = Status.createCompleted(TEST_JOB.id(), "Finished");
+        when(uploadInteractor.get(TEST_JOB.id()))
+                .thenReturn(Observable.just(TEST_JOB.withStatus(completed)));
+
+        uploadManager.cancel(TEST_JOB.id());
+        testScheduler.triggerActions();
+
+        // completed jobs keep their status
+        verify(uploadInteractor, never()).update(any(Status.class));
+    }
+
+    @Test
+    public void testPauseAllAndResumeAll() throws Exception {
+        final PublishSubject<Status> upload = PublishSubject.create();
+        when(uploadInteractor.update(TEST_JOB.status())).thenReturn(Observable.just(TEST_JOB));
+        when(uploadInteractor.upload(TEST_JOB.id())).thenReturn(upload);
+
+        statusSubject.onNext(TEST_JOB.status());
+        testScheduler.triggerActions();
+        assertThat(upload.hasObservers(), is(true));
+
+        uploadManager.pauseAll();
+        testScheduler.triggerActions();
+
+        // the upload is stopped and the job is queued again but not started
+        assertThat(uploadManager.isPaused(), is(true));
+        assertThat(upload.hasObservers(), is(false));
+        assertThat(uploadManager.getActiveUploadCount(), is(0));
+        verify(uploadInteractor, times(2)).update(TEST_JOB.status());
+        verify(uploadInteractor).upload(TEST_JOB.id());
+
+        uploadManager.resumeAll();
+        testScheduler.triggerActions();
+
+        assertThat(uploadManager.isPaused(), is(false));
+        verify(uploadInteractor, times(2)).upload(TEST_JOB.id());
+        assertThat(upload.hasObservers(), is(true));
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        final PublishSubject<Status> upload = PublishSubject.create();
+        when(uploadInteractor.update(TEST_JOB.status())).thenReturn(Observable.just(TEST_JOB));
+        when(uploadInteractor.upload(TEST_JOB.id())).thenReturn(upload);
+
+        final TestSubscriber<Status> status = TestSubscriber.create();
+        uploadManager.status().subscribe(status);
+        statusSubject.onNext(TEST_JOB.status());
+        testScheduler.triggerActions();
+
+        final TestSubscriber<Boolean> result = TestSubscriber.create();
+        uploadManager.shutdown(1, TimeUnit.SECONDS, testScheduler).subscribe(result);
+        testScheduler.triggerActions();
+
+        // the running upload is given time to finish
+        result.assertNoValues();
+        assertThat(upload.hasObservers(), is(true));
+
+        upload.onCompleted();
+        testScheduler.triggerActions();
+
+        result.assertValue(true);
+        result.assertCompleted();
+        status.assertCompleted();
+        verify(uploadInteractor).close();
+
+        // calling it again returns the same outcome
+        final TestSubscriber<Boolean> again = TestSubscriber.create();
+        uploadManager.shutdown(1, TimeUnit.SECONDS, testScheduler).subscribe(again);
+        again.assertValue(true);
+    }
+
+    @Test
+    public void testShutdownTimeout() throws Exception {
+        final PublishSubject<Status> upload = PublishSubject.create();
+        when(uploadInteractor.update(TEST_JOB.status())).thenReturn(Observable.just(TEST_JOB));
+        when(uploadInteractor.upload(TEST_JOB.id())).thenReturn(upload);
+
+        statusSubject.onNext(TEST_JOB.status());
+        testScheduler.triggerActions();
+
+        final TestSubscriber<Boolean> result = TestSubscriber.create();
+        uploadManager.shutdown(1, TimeUnit.SECONDS, testScheduler).subscribe(result);
+        testScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+        // the upload is stopped and the job stays queued
+        result.assertValue(false);
+        result.assertCompleted();
+        assertThat(upload.hasObservers(), is(false));
+        verify(uploadInteractor, times(2)).update(TEST_JOB.status());
+    }
+
     @Test
     public void testDanglingUpload() {
         final String jobId1 = "job-id-1";
@@ -268,7 +445,7 @@ public class UploadManagerTest {
                 .setMimeType("text/plain")
                 .build();
 
-        when(uploadInteractor.getAll())
+        when(uploadInteractor.getByStatus(StatusType.SENDING, StatusType.QUEUED))
                 .thenReturn(Observable.from(Arrays.asList(job1, job2)));
 
         final TestScheduler testScheduler = new TestScheduler();
@@ -282,4 +459,50 @@ public class UploadManagerTest {
         final Status expectedStatus = Status.createFailed(job2.id(), ErrorType.TERMINATED);
         verify(uploadInteractor).update(expectedStatus);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testResumableUpload() {
+        final String jobId1 = "job-id-1";
+        final String jobId2 = "job-id-2";
+
+        final Job job1 = Job.builder()
+                .setId(jobId1)
+                .setFilepath("filepath")
+                .setMetadata(Collections.emptyMap())
+                .setStatus(createQueued(jobId1))
+                .setMimeType("text/plain")
+                .build()
+                .withUploadSession("session-1", 4096);
+
+        final Job job2 = Job.builder()
+                .setId(jobId2)
+                .setFilepath("filepath")
+                .setMetadata(Collections.emptyMap())
+                .setStatus(createSending(jobId2, 0))
+                .setMimeType("text/plain")
+                .build()
+                .withUploadSession("session-2", 0);
+
+        when(uploadInteractor.getByStatus(StatusType.SENDING, StatusType.QUEUED))
+                .thenReturn(Observable.from(Arrays.asList(job1, job2)));
+        when(uploadInteractor.update(createQueued(jobId1))).thenReturn(Observable.just(job1));
+        when(uploadInteractor.update(createQueued(jobId2)))
+                .thenReturn(Observable.just(job2.withStatus(createQueued(jobId2))));
+
+        final TestScheduler testScheduler = new TestScheduler();
+        final TestSubject<Status> statusSubject = TestSubject.create(testScheduler);
+        final TestSubject<Job> jobSubject = TestSubject.create(testScheduler);
+
+        new UploadManager(uploadInteractor, uploadErrorAdapter, jobSubject, statusSubject, false);
+
+        // jobs with an upload session are queued again to resume from the confirmed offset
+        verify(uploadInteractor, times(2)).update(any(Status.class));
+        verify(uploadInteractor).update(createQueued(jobId1));
+        verify(uploadInteractor).update(createQueued(jobId2));
+    }
+
+    private File getFile(@NonNull String path) {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        return new File(classLoader.getResource(path).getFile());
+    }
+}
@@ -0,0 +1,145 @@
+package com.jagsaund.rxuploader;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.Status;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import rx.schedulers.TestScheduler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class UploadQueueTest {
+    private TestScheduler clock;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new TestScheduler();
+    }
+
+    @Test
+    public void testPriorityPolicy() throws Exception {
+        final UploadQueue queue =
+                new UploadQueue(SchedulingPolicy.PRIORITY, UploadQueue.AGING_DISABLED, clock);
+
+        queue.offer(createJob("job-1", Job.PRIORITY_NORMAL, 300));
+        queue.offer(createJob("job-2", Job.PRIORITY_NORMAL, 100));
+        queue.offer(createJob("job-3", Job.PRIORITY_HIGH, 200));
+
+        assertThat(queue.poll().id(), is("job-3"));
+        assertThat(queue.poll().id(), is("job-1"));
+        assertThat(queue.poll().id(), is("job-2"));
+        assertThat(queue.poll(), nullValue());
+    }
+
+    @Test
+    public void testShortestJobFirstPolicy() throws Exception {
+        final UploadQueue queue = new UploadQueue(SchedulingPolicy.SHORTEST_JOB_FIRST,
+                UploadQueue.AGING_DISABLED, clock);
+
+        queue.offer(createJob("job-1", Job.PRIORITY_NORMAL, 2000));
+        queue.offer(createJob("job-2", Job.PRIORITY_NORMAL, 100));
+        queue.offer(createJob("job-3", Job.PRIORITY_NORMAL, 100));
+        queue.offer(createJob("job-4", Job.PRIORITY_HIGH, 5000));
+
+        // priority still wins over size, equal sizes keep their arrival order
+        assertThat(queue.poll().id(), is("job-4"));
+        assertThat(queue.poll().id(), is("job-2"));
+        assertThat(queue.poll().id(), is("job-3"));
+        assertThat(queue.poll().id(), is("job-1"));
+        assertThat(queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testAging() throws Exception {
+        final UploadQueue queue = new UploadQueue(SchedulingPolicy.SHORTEST_JOB_FIRST,
+                TimeUnit.MINUTES.toMillis(1), clock);
+
+        queue.offer(createJob("large", Job.PRIORITY_NORMAL, 2000));
+        queue.offer(createJob("small-1", Job.PRIORITY_NORMAL, 10));
+
+        clock.advanceTimeBy(30, TimeUnit.SECONDS);
+        assertThat(queue.poll().id(), is("small-1"));
+
+        queue.offer(createJob("small-2", Job.PRIORITY_NORMAL, 10));
+
+        // the large job has waited too long and is promoted ahead of the smaller job
+        clock.advanceTimeBy(30, TimeUnit.SECONDS);
+        assertThat(queue.poll().id(), is("large"));
+        assertThat(queue.poll().id(), is("small-2"));
+        assertThat(queue.size(), is(0));
+    }
+
+    @Test
+    public void testDuplicateOffer() throws Exception {
+        final UploadQueue queue = new UploadQueue();
+
+        assertThat(queue.offer(createJob("job-1", Job.PRIORITY_NORMAL, 100)), is(true));
+        assertThat(queue.offer(createJob("job-1", Job.PRIORITY_HIGH, 100)), is(false));
+        assertThat(queue.contains("job-1"), is(true));
+        assertThat(queue.size(), is(1));
+
+        queue.poll();
+        assertThat(queue.contains("job-1"), is(false));
+    }
+
+    @Test
+    public void testPeek() throws Exception {
+        final UploadQueue queue = new UploadQueue();
+        assertThat(queue.peek(), nullValue());
+
+        queue.offer(createJob("job-1", Job.PRIORITY_NORMAL, 100));
+        queue.offer(createJob("job-2", Job.PRIORITY_HIGH, 100));
+
+        // peeking does not remove the job
+        assertThat(queue.peek().id(), is("job-2"));
+        assertThat(queue.peek().id(), is("job-2"));
+        assertThat(queue.size(), is(2));
+
+        assertThat(queue.poll().id(), is("job-2"));
+        assertThat(queue.peek().id(), is("job-1"));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        final UploadQueue queue = new UploadQueue(SchedulingPolicy.PRIORITY,
+                TimeUnit.MINUTES.toMillis(1), clock);
+
+        queue.offer(createJob("job-1", Job.PRIORITY_NORMAL, 100));
+        queue.offer(createJob("job-2", Job.PRIORITY_HIGH, 100));
+        queue.offer(createJob("job-3", Job.PRIORITY_NORMAL, 100));
+
+        assertThat(queue.remove("job-2"), is(true));
+        assertThat(queue.remove("job-2"), is(false));
+        assertThat(queue.contains("job-2"), is(false));
+        assertThat(queue.size(), is(2));
+
+        // removed jobs are skipped by the heap and by aging
+        clock.advanceTimeBy(2, TimeUnit.MINUTES);
+        assertThat(queue.peek().id(), is("job-1"));
+        assertThat(queue.poll().id(), is("job-1"));
+        assertThat(queue.poll().id(), is("job-3"));
+        assertThat(queue.poll(), nullValue());
+
+        // a removed job can be queued again
+        assertThat(queue.offer(createJob("job-2", Job.PRIORITY_HIGH, 100)), is(true));
+        assertThat(queue.poll().id(), is("job-2"));
+    }
+
+    @NonNull
+    private static Job createJob(@NonNull String jobId, int priority, long size) {
+        return Job.builder()
+                .setId(jobId)
+                .setFilepath("filepath")
+                .setMetadata(Collections.emptyMap())
+                .setStatus(Status.createQueued(jobId))
+                .setMimeType("text/plain")
+                .setPriority(priority)
+                .setSize(size)
+                .build();
+    }
+}
@@ -1,18 +1,32 @@
 package com.jagsaund.rxuploader;
 
 import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.job.ErrorType;
 import com.jagsaund.rxuploader.job.Job;
 import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import com.jagsaund.rxuploader.rx.Compression;
 import com.jagsaund.rxuploader.rx.RxRequestBody;
+import com.jagsaund.rxuploader.store.BatchUploadService;
+import com.jagsaund.rxuploader.store.ChunkedUploadService;
+import com.jagsaund.rxuploader.store.MultipartUploadService;
 import com.jagsaund.rxuploader.store.UploadService;
+import com.jagsaund.rxuploader.throttle.BandwidthLimiter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.TimeUnit;
 import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.Buffer;
 import okio.BufferedSink;
 import okio.Source;
 import org.junit.Test;
@@ -20,10 +34,15 @@ import org.junit.runner.RunWith;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
+import rx.Observable;
 import rx.Single;
 import rx.observers.TestSubscriber;
 import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMap;
@@ -184,8 +203,382 @@ public class UploaderTest {
         ts.assertNoValues();
     }
 
+    @Test
+    public void testCompressedUpload() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Job job = createJob(file);
+
+        final AtomicReference<MultipartBody.Part> uploaded = new AtomicReference<>();
+        final UploadService service = (__, data) -> {
+            uploaded.set(data);
+            return Single.just("complete");
+        };
+
+        final Uploader uploader = new Uploader(service, Schedulers.io());
+        uploader.setCompression(Compression.GZIP);
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploader.upload(job, file).subscribe(ts);
+
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertValue(Status.createCompleted(job.id(), "complete"));
+
+        final MultipartBody.Part part = uploaded.get();
+        assertThat(part.headers().get("Content-Encoding"), is("gzip"));
+        assertThat(part.headers().get("Content-Disposition"),
+                is("form-data; name=\"file\"; filename=\"" + file.getName() + "\""));
+        assertThat(part.body().contentLength(), is(-1L));
+    }
+
+    @Test
+    public void testChunkedUpload() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Job job = createJob(file);
+
+        final FakeChunkedUploadService service = new FakeChunkedUploadService();
+        final List<Job> checkpoints = new ArrayList<>();
+        final Uploader uploader = new Uploader(service, 40000, (jobId, uploadId, offset) -> {
+            final Job checkpoint = job.withUploadSession(uploadId, offset);
+            checkpoints.add(checkpoint);
+            return Observable.just(checkpoint);
+        }, Schedulers.io(), new BandwidthLimiter());
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploader.upload(job, file).subscribe(ts);
+
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertCompleted();
+
+        final List<Status> statuses = ts.getOnNextEvents();
+        final Status last = statuses.get(statuses.size() - 1);
+        assertThat(last.statusType(), is(StatusType.COMPLETED));
+        assertThat(last.response(), is("session-1"));
+
+        assertThat(service.offsets, contains(0L, 40000L, 80000L));
+        assertThat(service.received, is(file.length()));
+
+        // the session and every acknowledged chunk are checkpointed
+        assertThat(checkpoints.size(), is(4));
+        assertThat(checkpoints.get(0).uploadId(), is("session-1"));
+        assertThat(checkpoints.get(0).offset(), is(0L));
+        assertThat(checkpoints.get(3).offset(), is(file.length()));
+    }
+
+    @Test
+    public void testChunkedUploadResume() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Job job = createJob(file).withUploadSession("session-1", 80000);
+
+        final FakeChunkedUploadService service = new FakeChunkedUploadService();
+        service.received = 80000;
+        final Uploader uploader = new Uploader(service, 40000,
+                (jobId, uploadId, offset) -> Observable.just(job), Schedulers.io(),
+                new BandwidthLimiter());
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploader.upload(job, file).subscribe(ts);
+
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertCompleted();
+
+        // only the remaining bytes are sent and progress starts at the confirmed offset
+        assertThat(service.sessions, is(0));
+        assertThat(service.offsets, contains(80000L));
+        assertThat(ts.getOnNextEvents().get(0), is(Status.createSending(job.id(), 80)));
+    }
+
+    @Test
+    public void testChunkedUploadFailed() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Job job = createJob(file);
+
+        final FakeChunkedUploadService service = new FakeChunkedUploadService();
+        service.failAt = 40000;
+        final List<Job> checkpoints = new ArrayList<>();
+        final Uploader uploader = new Uploader(service, 40000, (jobId, uploadId, offset) -> {
+            final Job checkpoint = job.withUploadSession(uploadId, offset);
+            checkpoints.add(checkpoint);
+            return Observable.just(checkpoint);
+        }, Schedulers.io(), new BandwidthLimiter());
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploader.upload(job, file).subscribe(ts);
+
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertError(IOException.class);
+
+        // the first chunk remains acknowledged so a retry resumes from it
+        final Job last = checkpoints.get(checkpoints.size() - 1);
+        assertThat(last.uploadId(), is("session-1"));
+        assertThat(last.offset(), is(40000L));
+    }
+
+    @Test
+    public void testMultipartUpload() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Job job = createJob(file);
+
+        final FakeMultipartUploadService service = new FakeMultipartUploadService();
+        final Uploader uploader =
+                new Uploader(service, 30000, 2, Schedulers.io(), new BandwidthLimiter());
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploader.upload(job, file).subscribe(ts);
+
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertCompleted();
+
+        final List<Status> statuses = ts.getOnNextEvents();
+        assertThat(statuses.get(statuses.size() - 2), is(Status.createSending(job.id(), 100)));
+        assertThat(statuses.get(statuses.size() - 1),
+                is(Status.createCompleted(job.id(), "part-1,part-2,part-3,part-4")));
+
+        // the last part holds the remainder of the file
+        assertThat(service.partSizes.get(1), is(30000L));
+        assertThat(service.partSizes.get(4), is(10000L));
+    }
+
+    @Test
+    public void testMultipartUploadPartRetry() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Job job = createJob(file);
+
+        final FakeMultipartUploadService service = new FakeMultipartUploadService();
+        service.failuresOfPart2.set(2);
+        final Uploader uploader =
+                new Uploader(service, 30000, 2, Schedulers.immediate(), new BandwidthLimiter());
+        final TestScheduler retryScheduler = new TestScheduler();
+        uploader.setPartRetryPolicy(new RetryPolicy(Uploader.DEFAULT_PART_RETRIES + 1, 1000,
+                1000, TimeUnit.MILLISECONDS), retryScheduler);
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploader.upload(job, file).subscribe(ts);
+
+        // the failed part waits for the backoff delay while the other parts are sent
+        assertThat(service.uploads.get(), is(4));
+        ts.assertNoTerminalEvent();
+
+        retryScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        retryScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        ts.assertNoErrors();
+        ts.assertCompleted();
+
+        // only the failed part is sent again
+        assertThat(service.uploads.get(), is(6));
+        assertThat(service.partSizes.get(2), is(30000L));
+        assertThat(service.aborted, is(false));
+    }
+
+    @Test
+    public void testMultipartUploadCancelled() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Job job = createJob(file);
+
+        final FakeMultipartUploadService service = new FakeMultipartUploadService();
+        service.failuresOfPart2.set(1);
+        final Uploader uploader =
+                new Uploader(service, 30000, 2, Schedulers.immediate(), new BandwidthLimiter());
+        uploader.setPartRetryPolicy(new RetryPolicy(Uploader.DEFAULT_PART_RETRIES + 1, 1000,
+                1000, TimeUnit.MILLISECONDS), new TestScheduler());
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploader.upload(job, file).subscribe(ts);
+
+        // cancelling the upload while a part waits to be sent again aborts the upload
+        ts.unsubscribe();
+        assertThat(service.aborted, is(true));
+        assertThat(service.completed, is(false));
+    }
+
+    @Test
+    public void testMultipartUploadFailed() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Job job = createJob(file);
+
+        final FakeMultipartUploadService service = new FakeMultipartUploadService();
+        service.failuresOfPart2.set(Uploader.DEFAULT_PART_RETRIES + 1);
+        final Uploader uploader =
+                new Uploader(service, 30000, 2, Schedulers.io(), new BandwidthLimiter());
+        uploader.setPartRetryPolicy(new RetryPolicy(Uploader.DEFAULT_PART_RETRIES + 1, 0, 0,
+                TimeUnit.MILLISECONDS), Schedulers.immediate());
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploader.upload(job, file).subscribe(ts);
+
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertError(IOException.class);
+        assertThat(service.completed, is(false));
+        assertThat(service.aborted, is(true));
+    }
+
+    @Test
+    public void testBatchUpload() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Job job1 = createJob(file, "job-1");
+        final Job job2 = createJob(file, "job-2");
+
+        final List<Long> partSizes = new ArrayList<>();
+        final BatchUploadService<String> service = (metadata, data) -> {
+            for (MultipartBody.Part part : data) {
+                final Buffer buffer = new Buffer();
+                try {
+                    part.body().writeTo(buffer);
+                } catch (@NonNull IOException e) {
+                    return Single.error(e);
+                }
+                partSizes.add(buffer.size());
+            }
+            // the second file is rejected by the service
+            return Single.just(Arrays.asList("complete", null));
+        };
+
+        final Uploader uploader = new Uploader((__, data) -> Single.just("unused"),
+                Schedulers.io());
+        uploader.setBatchUploadService(service);
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploader.uploadBatch(Arrays.asList(job1, job2), Arrays.asList(file, file)).subscribe(ts);
+
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertCompleted();
+
+        // progress is reported for each file of the batch
+        final List<Status> statuses = ts.getOnNextEvents();
+        assertThat(statuses.contains(Status.createSending("job-1", 100)), is(true));
+        assertThat(statuses.contains(Status.createSending("job-2", 100)), is(true));
+        assertThat(statuses.subList(statuses.size() - 2, statuses.size()),
+                contains(Status.createCompleted("job-1", "complete"),
+                        Status.createFailed("job-2", ErrorType.SERVICE)));
+        assertThat(partSizes, contains(file.length(), file.length()));
+    }
+
+    @Test
+    public void testBatchUploadWithoutService() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Uploader uploader = new Uploader((__, data) -> Single.just("unused"),
+                Schedulers.io());
+
+        final TestSubscriber<Status> ts = TestSubscriber.create();
+        uploader.uploadBatch(Collections.singletonList(createJob(file)),
+                Collections.singletonList(file)).subscribe(ts);
+
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertError(IllegalStateException.class);
+    }
+
+    @NonNull
+    private static Job createJob(@NonNull File file) {
+        return createJob(file, "job-id");
+    }
+
+    @NonNull
+    private static Job createJob(@NonNull File file, @NonNull String jobId) {
+        return Job.builder()
+                .setId(jobId)
+                .setStatus(Status.createQueued(jobId))
+                .setMetadata(Collections.emptyMap())
+                .setFilepath(file.getPath())
+                .setMimeType("text/plain")
+                .build();
+    }
+
+    private static class FakeChunkedUploadService implements ChunkedUploadService<String> {
+        final List<Long> offsets = new ArrayList<>();
+
+        int sessions;
+        long received;
+        long failAt = -1;
+
+        @Override
+        public Single<String> init(@NonNull Map<String, Object> metadata,
+                @NonNull String filename, @NonNull String mimeType, long size) {
+            sessions++;
+            return Single.just("session-" + sessions);
+        }
+
+        @Override
+        public Single<Long> append(@NonNull String uploadId, long offset,
+                @NonNull RequestBody chunk) {
+            offsets.add(offset);
+            if (offset == failAt) {
+                return Single.error(new IOException("exception"));
+            }
+
+            final Buffer buffer = new Buffer();
+            try {
+                chunk.writeTo(buffer);
+            } catch (@NonNull IOException e) {
+                return Single.error(e);
+            }
+            received = offset + buffer.size();
+            return Single.just(received);
+        }
+
+        @Override
+        public Single<String> complete(@NonNull String uploadId) {
+            return Single.just(uploadId);
+        }
+    }
+
+    private static class FakeMultipartUploadService implements MultipartUploadService<String> {
+        final Map<Integer, Long> partSizes = new ConcurrentHashMap<>();
+        final AtomicInteger uploads = new AtomicInteger();
+        final AtomicInteger failuresOfPart2 = new AtomicInteger();
+
+        volatile boolean completed;
+        volatile boolean aborted;
+
+        @Override
+        public Single<String> initiate(@NonNull Map<String, Object> metadata,
+                @NonNull String filename, @NonNull String mimeType, long size) {
+            return Single.just("upload-id");
+        }
+
+        @Override
+        public Single<String> uploadPart(@NonNull String uploadId, int partNumber,
+                @NonNull RequestBody part) {
+            uploads.incrementAndGet();
+
+            final Buffer buffer = new Buffer();
+            try {
+                part.writeTo(buffer);
+            } catch (@NonNull IOException e) {
+                return Single.error(e);
+            }
+
+            if (partNumber == 2 && failuresOfPart2.getAndDecrement() > 0) {
+                return Single.error(new IOException("exception"));
+            }
+            partSizes.put(partNumber, buffer.size());
+            return Single.just("part-" + partNumber);
+        }
+
+        @Override
+        public Single<String> complete(@NonNull String uploadId, @NonNull List<String> partTags) {
+            completed = true;
+            final StringBuilder builder = new StringBuilder();
+            for (String tag : partTags) {
+                if (builder.length() > 0) {
+                    builder.append(',');
+                }
+                builder.append(tag);
+            }
+            return Single.just(builder.toString());
+        }
+
+        @Override
+        public Single<?> abort(@NonNull String uploadId) {
+            aborted = true;
+            return Single.just(uploadId);
+        }
+    }
+
     private File getFile(@NonNull String path) {
         final ClassLoader classLoader = getClass().getClassLoader();
         return new File(classLoader.getResource(path).getFile());
     }
-}
\ No newline at end of file
+}
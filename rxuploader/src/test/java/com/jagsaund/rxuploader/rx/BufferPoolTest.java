@@ -0,0 +1,76 @@
+package com.jagsaund.rxuploader.rx;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testAcquire() throws Exception {
+        final BufferPool pool = new BufferPool(1024, 2);
+
+        final byte[] buffer = pool.acquire();
+        assertThat(buffer.length, is(1024));
+        assertThat(pool.inUse(), is(1));
+
+        // released buffers are reused
+        pool.release(buffer);
+        assertThat(pool.inUse(), is(0));
+        assertThat(pool.acquire(), sameInstance(buffer));
+    }
+
+    @Test
+    public void testAcquireBlocksWhenExhausted() throws Exception {
+        final BufferPool pool = new BufferPool(1024, 1);
+        final byte[] buffer = pool.acquire();
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            try {
+                pool.acquire();
+                acquired.countDown();
+            } catch (InterruptedIOException ignored) {
+            }
+        });
+        thread.start();
+
+        // the second caller waits until the first buffer is released
+        assertThat(acquired.await(100, TimeUnit.MILLISECONDS), is(false));
+        pool.release(buffer);
+        assertThat(acquired.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(pool.inUse(), is(1));
+    }
+
+    @Test
+    public void testAcquireInterrupted() throws Exception {
+        final BufferPool pool = new BufferPool(1024, 1);
+        pool.acquire();
+
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread thread = new Thread(() -> {
+            try {
+                pool.acquire();
+            } catch (InterruptedIOException e) {
+                error.set(e);
+            }
+        });
+        thread.start();
+        thread.interrupt();
+        thread.join(1000);
+
+        assertThat(error.get() instanceof InterruptedIOException, is(true));
+        assertThat(pool.inUse(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBufferSize() throws Exception {
+        new BufferPool(0, 1);
+    }
+}
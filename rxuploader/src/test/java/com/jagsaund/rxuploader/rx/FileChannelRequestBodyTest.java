@@ -0,0 +1,138 @@
+package com.jagsaund.rxuploader.rx;
+
+import android.support.annotation.NonNull;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.throttle.BandwidthLimiter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+import rx.Emitter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FileChannelRequestBodyTest {
+    private static final String TEST_FILE = "upload_test.dat";
+
+    @Test
+    public void testWrite() throws Exception {
+        final String jobId = "test-job-id";
+        final File file = getFile(TEST_FILE);
+        final Emitter<Status> emitter = mock(Emitter.class);
+        final Buffer sink = new Buffer();
+
+        final RequestBody requestBody = FileChannelRequestBody.create(emitter, jobId, file,
+                "text/plain", 0, file.length(), new BufferPool(40000, 1),
+                new BandwidthLimiter());
+        requestBody.writeTo(sink);
+
+        assertThat(requestBody.contentLength(), is(file.length()));
+        assertThat(sink.readByteArray(), is(readFile(file, 0, (int) file.length())));
+
+        // one progress update per read
+        verify(emitter).onNext(Status.createSending(jobId, 0));
+        verify(emitter).onNext(Status.createSending(jobId, 40));
+        verify(emitter).onNext(Status.createSending(jobId, 80));
+        verify(emitter).onNext(Status.createSending(jobId, 100));
+    }
+
+    @Test
+    public void testWriteRange() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final List<Long> progress = new ArrayList<>();
+        final Buffer sink = new Buffer();
+        final BufferPool bufferPool = new BufferPool(10000, 1);
+
+        final RequestBody requestBody = FileChannelRequestBody.create(progress::add, file,
+                "text/plain", 30000, 25000, bufferPool, new BandwidthLimiter(),
+                new BandwidthLimiter().newJobBucket());
+        requestBody.writeTo(sink);
+
+        assertThat(sink.readByteArray(), is(readFile(file, 30000, 25000)));
+        assertThat(progress, contains(0L, 10000L, 20000L, 25000L));
+
+        // the buffer is handed back once the body has been written
+        assertThat(bufferPool.inUse(), is(0));
+    }
+
+    @Test
+    public void testWriteTwice() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final Buffer sink = new Buffer();
+
+        final RequestBody requestBody = FileChannelRequestBody.create(bytesWritten -> {
+                }, file, "text/plain", 0, file.length(), new BufferPool(),
+                new BandwidthLimiter(), new BandwidthLimiter().newJobBucket());
+        requestBody.writeTo(sink);
+        requestBody.writeTo(sink);
+
+        // the file is read from the start every time the body is written
+        assertThat(sink.size(), is(file.length() * 2));
+    }
+
+    @Test
+    public void testBufferHeldPerBlock() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final BufferPool bufferPool = new BufferPool(10000, 1);
+        final List<Integer> inUse = new ArrayList<>();
+
+        final RequestBody requestBody = FileChannelRequestBody.create(
+                bytesWritten -> inUse.add(bufferPool.inUse()), file, "text/plain", 0, 25000,
+                bufferPool, new BandwidthLimiter(), new BandwidthLimiter().newJobBucket());
+        requestBody.writeTo(new Buffer());
+
+        // the buffer is handed back after every block so other bodies can use it in between
+        assertThat(inUse, contains(0, 0, 0, 0));
+    }
+
+    @Test
+    public void testWriteShortFile() throws Exception {
+        final File file = getFile(TEST_FILE);
+        final BufferPool bufferPool = new BufferPool(8, 1);
+        final RequestBody requestBody = new FileChannelRequestBody(MediaType.parse("text/plain"),
+                file, file.length() - 10, 20, bufferPool, new BandwidthLimiter(),
+                new BandwidthLimiter().newJobBucket(), bytesWritten -> {
+                });
+
+        try {
+            requestBody.writeTo(new Buffer());
+            fail("Expected an EOFException");
+        } catch (EOFException e) {
+            // the buffer is handed back when the write fails
+            assertThat(bufferPool.inUse(), is(0));
+        }
+    }
+
+    @NonNull
+    private static byte[] readFile(@NonNull File file, long offset, int length)
+            throws IOException {
+        final byte[] content = new byte[length];
+        try (final FileInputStream inputStream = new FileInputStream(file)) {
+            inputStream.getChannel().position(offset);
+            int read = 0;
+            while (read < length) {
+                read += inputStream.read(content, read, length - read);
+            }
+        }
+        return content;
+    }
+
+    private File getFile(@NonNull String path) {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        return new File(classLoader.getResource(path).getFile());
+    }
+}
@@ -0,0 +1,72 @@
+package com.jagsaund.rxuploader.rx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import rx.schedulers.TestScheduler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+public class ProgressSamplerTest {
+    private TestScheduler clock;
+    private List<Long> updates;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new TestScheduler();
+        updates = new ArrayList<>();
+    }
+
+    @Test
+    public void testMinInterval() throws Exception {
+        final ProgressSampler sampler =
+                new ProgressSampler(100, TimeUnit.MILLISECONDS, 1, 0, clock);
+        final ProgressListener listener = sampler.sample(updates::add, 1000);
+
+        listener.onProgress(0);
+        listener.onProgress(100);
+        listener.onProgress(200);
+        clock.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        listener.onProgress(300);
+        listener.onProgress(400);
+
+        // the final update is never dropped
+        listener.onProgress(1000);
+
+        assertThat(updates, contains(0L, 300L, 1000L));
+    }
+
+    @Test
+    public void testMinBytes() throws Exception {
+        final ProgressSampler sampler =
+                new ProgressSampler(0, TimeUnit.MILLISECONDS, 250, 0, clock);
+        final ProgressListener listener = sampler.sample(updates::add, 1000);
+
+        for (long bytes = 0; bytes <= 1000; bytes += 100) {
+            listener.onProgress(bytes);
+        }
+
+        assertThat(updates, contains(0L, 300L, 600L, 900L, 1000L));
+    }
+
+    @Test
+    public void testMinPercent() throws Exception {
+        final ProgressSampler sampler =
+                new ProgressSampler(0, TimeUnit.MILLISECONDS, Long.MAX_VALUE, 50, clock);
+        final ProgressListener listener = sampler.sample(updates::add, 1000);
+
+        for (long bytes = 0; bytes <= 1000; bytes += 100) {
+            listener.onProgress(bytes);
+        }
+
+        assertThat(updates, contains(0L, 500L, 1000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercent() throws Exception {
+        new ProgressSampler(0, TimeUnit.MILLISECONDS, 1, 101, clock);
+    }
+}
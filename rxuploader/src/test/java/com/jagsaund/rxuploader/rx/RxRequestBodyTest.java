@@ -1,14 +1,23 @@
 package com.jagsaund.rxuploader.rx;
 
 import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.throttle.BandwidthLimiter;
+import com.jagsaund.rxuploader.throttle.TokenBucket;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.zip.Inflater;
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
+import okio.Buffer;
 import okio.BufferedSink;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
 import okio.Source;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.runners.MockitoJUnitRunner;
 import rx.Emitter;
 
@@ -17,6 +26,7 @@ import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -120,6 +130,76 @@ public class RxRequestBodyTest {
         assertThat(requestBody.contentLength(), is(length));
     }
 
+    @Test
+    public void testWriteGzip() throws Exception {
+        final String jobId = "test-job-id";
+        final byte[] content = createContent((int) RxRequestBody.BUFFER_SIZE * 3);
+        final Buffer sink = new Buffer();
+        final Emitter<Status> emitter = mock(Emitter.class);
+
+        final RequestBody requestBody =
+                new RxRequestBody(emitter, jobId, MediaType.parse("text/plain"),
+                        new ByteArrayInputStream(content), content.length,
+                        new BandwidthLimiter(), Compression.GZIP);
+
+        requestBody.writeTo(sink);
+
+        // the compressed length is not known up front
+        assertThat(requestBody.contentLength(), is(-1L));
+        assertThat(sink.size() < content.length, is(true));
+        assertThat(Okio.buffer(new GzipSource(sink)).readByteArray(), is(content));
+
+        // progress is reported in bytes read from the file
+        verify(emitter).onNext(Status.createSending(jobId, 0));
+        verify(emitter).onNext(Status.createSending(jobId, 33));
+        verify(emitter).onNext(Status.createSending(jobId, 66));
+        verify(emitter).onNext(Status.createSending(jobId, 100));
+    }
+
+    @Test
+    public void testWriteDeflate() throws Exception {
+        final String jobId = "test-job-id";
+        final byte[] content = createContent((int) RxRequestBody.BUFFER_SIZE * 3);
+        final Buffer sink = new Buffer();
+        final Emitter<Status> emitter = mock(Emitter.class);
+
+        final RequestBody requestBody =
+                new RxRequestBody(emitter, jobId, MediaType.parse("text/plain"),
+                        new ByteArrayInputStream(content), content.length,
+                        new BandwidthLimiter(), Compression.DEFLATE);
+
+        requestBody.writeTo(sink);
+
+        assertThat(requestBody.contentLength(), is(-1L));
+        assertThat(sink.size() < content.length, is(true));
+        assertThat(Okio.buffer(new InflaterSource(sink, new Inflater())).readByteArray(),
+                is(content));
+        verify(emitter).onNext(Status.createSending(jobId, 100));
+    }
+
+    @Test
+    public void testWriteGzipChargesCompressedBytes() throws Exception {
+        final byte[] content = createContent((int) RxRequestBody.BUFFER_SIZE * 3);
+        final Buffer sink = new Buffer();
+        final BandwidthLimiter bandwidthLimiter = mock(BandwidthLimiter.class);
+
+        final RequestBody requestBody =
+                new RxRequestBody(mock(Emitter.class), "test-job-id",
+                        MediaType.parse("text/plain"), new ByteArrayInputStream(content),
+                        content.length, bandwidthLimiter, Compression.GZIP);
+
+        requestBody.writeTo(sink);
+
+        // the bandwidth used is the compressed length sent rather than the length of the file
+        final ArgumentCaptor<Long> bytes = ArgumentCaptor.forClass(Long.class);
+        verify(bandwidthLimiter, atLeastOnce()).acquire(any(TokenBucket.class), bytes.capture());
+        long charged = 0;
+        for (long acquired : bytes.getAllValues()) {
+            charged += acquired;
+        }
+        assertThat(charged, is(sink.size()));
+    }
+
     @Test
     public void testContentType() throws Exception {
         final String jobId = "test-job-id";
@@ -132,4 +212,12 @@ public class RxRequestBodyTest {
 
         assertThat(requestBody.contentType(), is(mediaType));
     }
+
+    private static byte[] createContent(int length) {
+        final byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + i % 16);
+        }
+        return content;
+    }
 }
@@ -0,0 +1,130 @@
+package com.jagsaund.rxuploader.store;
+
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.Status;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachingUploadDataStoreTest {
+    @Mock private UploadDataStore store;
+
+    private CachingUploadDataStore dataStore;
+
+    @Before
+    public void setUp() throws Exception {
+        dataStore = new CachingUploadDataStore(store, 2);
+    }
+
+    @Test
+    public void testGetServedFromMemory() throws Exception {
+        final Job job = createJob("job_id_1");
+        when(store.get(job.id())).thenReturn(Observable.just(job));
+
+        assertGet(job.id(), job);
+        assertGet(job.id(), job);
+
+        verify(store, times(1)).get(job.id());
+    }
+
+    @Test
+    public void testInvalidJobNotCached() throws Exception {
+        when(store.get("bad_id")).thenReturn(Observable.just(Job.INVALID_JOB));
+
+        assertGet("bad_id", Job.INVALID_JOB);
+        assertGet("bad_id", Job.INVALID_JOB);
+
+        verify(store, times(2)).get("bad_id");
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        final Job job1 = createJob("job_id_1");
+        final Job job2 = createJob("job_id_2");
+        final Job job3 = createJob("job_id_3");
+        when(store.get(job1.id())).thenReturn(Observable.just(job1));
+        when(store.get(job2.id())).thenReturn(Observable.just(job2));
+        when(store.get(job3.id())).thenReturn(Observable.just(job3));
+
+        assertGet(job1.id(), job1);
+        assertGet(job2.id(), job2);
+        assertGet(job1.id(), job1);
+        assertGet(job3.id(), job3);
+
+        // the second job was used least recently
+        assertGet(job1.id(), job1);
+        assertGet(job2.id(), job2);
+        verify(store, times(1)).get(job1.id());
+        verify(store, times(2)).get(job2.id());
+    }
+
+    @Test
+    public void testWriteThrough() throws Exception {
+        final Job job = createJob("job_id_1");
+        final Status completed = Status.createCompleted(job.id(), null);
+        when(store.save(job)).thenReturn(Observable.just(job));
+        when(store.update(completed)).thenReturn(Observable.just(job.withStatus(completed)));
+        when(store.delete(job.id())).thenReturn(Observable.just(job.withStatus(completed)));
+        when(store.get(job.id())).thenReturn(Observable.just(Job.INVALID_JOB));
+
+        dataStore.save(job).subscribe();
+        assertGet(job.id(), job);
+
+        dataStore.update(completed).subscribe();
+        assertGet(job.id(), job.withStatus(completed));
+
+        dataStore.delete(job.id()).subscribe();
+        assertGet(job.id(), Job.INVALID_JOB);
+
+        verify(store, times(1)).get(job.id());
+    }
+
+    @Test
+    public void testStaleLookupNotCached() throws Exception {
+        final Job job = createJob("job_id_1");
+        final Status completed = Status.createCompleted(job.id(), null);
+        final PublishSubject<Job> lookup = PublishSubject.create();
+        when(store.get(job.id())).thenReturn(lookup, Observable.just(job.withStatus(completed)));
+        when(store.update(completed)).thenReturn(Observable.empty());
+
+        // the job is read while it is updated
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.get(job.id()).subscribe(ts);
+        dataStore.update(completed).subscribe();
+        lookup.onNext(job);
+        lookup.onCompleted();
+        ts.assertValue(job);
+
+        // the job read before the update is not served afterwards
+        assertGet(job.id(), job.withStatus(completed));
+        verify(store, times(2)).get(job.id());
+    }
+
+    private void assertGet(String jobId, Job expected) {
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.get(jobId).subscribe(ts);
+        ts.assertNoErrors();
+        ts.assertValue(expected);
+    }
+
+    private static Job createJob(String jobId) {
+        return Job.builder()
+                .setId(jobId)
+                .setFilepath("test/file/path")
+                .setMetadata(Collections.emptyMap())
+                .setMimeType("text/plain")
+                .setStatus(Status.createQueued(jobId))
+                .build();
+    }
+}
@@ -0,0 +1,257 @@
+package com.jagsaund.rxuploader.store;
+
+import com.jagsaund.rxuploader.job.ErrorType;
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class JournalUploadDataStoreTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private JournalUploadDataStore dataStore;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot();
+        dataStore = open(JournalUploadDataStore.DEFAULT_COMPACT_RECORDS);
+    }
+
+    @Test
+    public void testSaveGetUpdateDelete() throws Exception {
+        final Job job = createJob("job_id_1");
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.save(job).subscribe(ts);
+        ts.assertNoErrors();
+        ts.assertValue(job);
+
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        dataStore.get(job.id()).subscribe(ts2);
+        ts2.assertValue(job);
+
+        final Status failed = Status.createFailed(job.id(), ErrorType.NETWORK);
+        final TestSubscriber<Job> ts3 = TestSubscriber.create();
+        dataStore.update(failed).subscribe(ts3);
+        ts3.assertValue(job.withStatus(failed));
+
+        final TestSubscriber<Job> ts4 = TestSubscriber.create();
+        dataStore.delete(job.id()).subscribe(ts4);
+        ts4.assertValue(job.withStatus(failed));
+
+        final TestSubscriber<Job> ts5 = TestSubscriber.create();
+        dataStore.get(job.id()).subscribe(ts5);
+        ts5.assertValue(Job.INVALID_JOB);
+
+        final TestSubscriber<Job> ts6 = TestSubscriber.create();
+        dataStore.update(Status.createQueued("bad_id")).subscribe(ts6);
+        ts6.assertValue(Job.INVALID_JOB);
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        final Job job1 = createJob("job_id_1");
+        final Job job2 = createJob("job_id_2");
+        final Job job3 = createJob("job_id_3");
+        final Status completed = Status.createCompleted(job2.id(), null);
+        dataStore.save(job1).subscribe();
+        dataStore.save(job2).subscribe();
+        dataStore.save(job3).subscribe();
+        dataStore.update(completed).subscribe();
+        dataStore.delete(job1.id()).subscribe();
+
+        // the index is rebuilt from the journal
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        open(JournalUploadDataStore.DEFAULT_COMPACT_RECORDS).getAll().subscribe(ts);
+
+        ts.assertNoErrors();
+        ts.assertCompleted();
+        assertThat(ts.getOnNextEvents(), contains(job2.withStatus(completed), job3));
+    }
+
+    @Test
+    public void testUpdateUploadSession() throws Exception {
+        final Job job = createJob("job_id_1");
+        dataStore.save(job).subscribe();
+        final Status paused = Status.createPaused(job.id());
+        dataStore.update(paused).subscribe();
+
+        // the session is recorded without putting the paused job back to its saved status
+        final Job expected = job.withStatus(paused).withUploadSession("session-1", 4096);
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.updateUploadSession(job.id(), "session-1", 4096).subscribe(ts);
+        ts.assertValue(expected);
+
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        open(JournalUploadDataStore.DEFAULT_COMPACT_RECORDS).get(job.id()).subscribe(ts2);
+        ts2.assertValue(expected);
+
+        final TestSubscriber<Job> ts3 = TestSubscriber.create();
+        dataStore.updateUploadSession("bad_id", "session-1", 4096).subscribe(ts3);
+        ts3.assertValue(Job.INVALID_JOB);
+    }
+
+    @Test
+    public void testGetAndCountByStatus() throws Exception {
+        final Job job1 = createJob("job_id_1");
+        final Job job2 = createJob("job_id_2");
+        final Job job3 = createJob("job_id_3");
+        final Status completed = Status.createCompleted(job2.id(), null);
+        dataStore.save(job1).subscribe();
+        dataStore.save(job2).subscribe();
+        dataStore.save(job3).subscribe();
+        dataStore.update(completed).subscribe();
+        dataStore.delete(job3.id()).subscribe();
+
+        // the statuses are rebuilt from the journal
+        final JournalUploadDataStore reopened =
+                open(JournalUploadDataStore.DEFAULT_COMPACT_RECORDS);
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        reopened.getByStatus(StatusType.COMPLETED).subscribe(ts);
+        ts.assertNoErrors();
+        ts.assertCompleted();
+        ts.assertValue(job2.withStatus(completed));
+
+        final Map<StatusType, Integer> expected = new HashMap<>();
+        expected.put(StatusType.QUEUED, 1);
+        expected.put(StatusType.COMPLETED, 1);
+        final TestSubscriber<Map<StatusType, Integer>> ts2 = TestSubscriber.create();
+        reopened.countByStatus().subscribe(ts2);
+        ts2.assertNoErrors();
+        ts2.assertValue(expected);
+    }
+
+    @Test
+    public void testGetByStatusPage() throws Exception {
+        final Job job1 = createJob("job_id_1");
+        final Job job2 = createJob("job_id_2").withPriority(Job.PRIORITY_HIGH);
+        final Job job3 = createJob("job_id_3");
+        final Job job4 = createJob("job_id_4").withPriority(Job.PRIORITY_LOW);
+        final Job job5 = createJob("job_id_5").withPriority(Job.PRIORITY_HIGH);
+        final Status completed = Status.createCompleted(job5.id(), null);
+        dataStore.save(job1).subscribe();
+        dataStore.save(job2).subscribe();
+        dataStore.save(job3).subscribe();
+        dataStore.save(job4).subscribe();
+        dataStore.save(job5).subscribe();
+        dataStore.update(completed).subscribe();
+
+        // highest priority first, jobs of the same priority in the order they were saved
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        open(JournalUploadDataStore.DEFAULT_COMPACT_RECORDS)
+                .getByStatus(3, StatusType.QUEUED)
+                .subscribe(ts);
+        ts.assertNoErrors();
+        ts.assertCompleted();
+        assertThat(ts.getOnNextEvents(), contains(job2, job1, job3));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final Job job = createJob("job_id_1");
+        dataStore.save(job).subscribe();
+
+        final TestSubscriber<Boolean> ts = TestSubscriber.create();
+        dataStore.close().subscribe(ts);
+        ts.assertNoErrors();
+        ts.assertValue(true);
+
+        // the store is not opened again once closed
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        dataStore.get(job.id()).subscribe(ts2);
+        ts2.assertError(IOException.class);
+
+        final TestSubscriber<Job> ts3 = TestSubscriber.create();
+        open(JournalUploadDataStore.DEFAULT_COMPACT_RECORDS).get(job.id()).subscribe(ts3);
+        ts3.assertValue(job);
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        final Job job = createJob("job_id_1");
+        dataStore.save(job).subscribe();
+
+        // the application was terminated while a record was appended
+        final OutputStream out =
+                new FileOutputStream(new File(directory, JournalUploadDataStore.JOURNAL_FILE),
+                        true);
+        out.write("S {\"id\":\"job_id_1\",".getBytes("UTF-8"));
+        out.close();
+
+        final JournalUploadDataStore reopened =
+                open(JournalUploadDataStore.DEFAULT_COMPACT_RECORDS);
+        final Status completed = Status.createCompleted(job.id(), null);
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        reopened.update(completed).subscribe(ts);
+        ts.assertNoErrors();
+        ts.assertValue(job.withStatus(completed));
+
+        // the torn record was discarded before appending
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        open(JournalUploadDataStore.DEFAULT_COMPACT_RECORDS).getAll().subscribe(ts2);
+        ts2.assertNoErrors();
+        ts2.assertValue(job.withStatus(completed));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        dataStore = open(10);
+        final File journal = new File(directory, JournalUploadDataStore.JOURNAL_FILE);
+
+        final Job job1 = createJob("job_id_1");
+        final Job job2 = createJob("job_id_2");
+        dataStore.save(job1).subscribe();
+        dataStore.save(job2).subscribe();
+        for (int i = 0; i < 7; i++) {
+            dataStore.update(Status.createFailed(job1.id(), ErrorType.NETWORK)).subscribe();
+        }
+        final long length = journal.length();
+
+        // the tenth record triggers compaction into a single record per job
+        final Status completed = Status.createCompleted(job1.id(), null);
+        dataStore.update(completed).subscribe();
+
+        assertThat(journal.length(), lessThan(length));
+        assertThat(new File(directory, JournalUploadDataStore.SNAPSHOT_FILE).exists(), is(false));
+
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.getAll().subscribe(ts);
+        assertThat(ts.getOnNextEvents(), contains(job1.withStatus(completed), job2));
+
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        open(10).getAll().subscribe(ts2);
+        assertThat(ts2.getOnNextEvents(), contains(job1.withStatus(completed), job2));
+    }
+
+    private JournalUploadDataStore open(int compactRecords) {
+        return new JournalUploadDataStore(directory, JournalUploadDataStore.SyncPolicy.ALWAYS, 0,
+                compactRecords, Schedulers.immediate());
+    }
+
+    private static Job createJob(String jobId) {
+        return Job.builder()
+                .setId(jobId)
+                .setFilepath("test/file/path")
+                .setMetadata(Collections.emptyMap())
+                .setMimeType("text/plain")
+                .setStatus(Status.createQueued(jobId))
+                .build();
+    }
+}
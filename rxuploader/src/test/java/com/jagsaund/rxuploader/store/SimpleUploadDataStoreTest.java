@@ -10,6 +10,7 @@ import com.jagsaund.rxuploader.job.ErrorType;
 import com.jagsaund.rxuploader.job.Job;
 import com.jagsaund.rxuploader.job.JobTypeAdapterFactory;
 import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -256,6 +257,142 @@ public class SimpleUploadDataStoreTest {
         ts2.assertNoValues();
     }
 
+    @SuppressLint("ApplySharedPref")
+    @Test
+    public void testGetAndCountByStatus() throws Exception {
+        final Job job1 = createTestJob();
+        final Job job2 = Job.builder()
+                .setId("job_id_2")
+                .setFilepath("test/file/path/2")
+                .setMetadata(Collections.emptyMap())
+                .setMimeType("text/plain")
+                .setStatus(Status.createFailed("job_id_2", ErrorType.SERVICE))
+                .build();
+
+        // jobs persisted without the status sets
+        final Set<String> keys = new HashSet<>();
+        keys.add(SimpleUploadDataStore.jobIdKey(job1.id()));
+        keys.add(SimpleUploadDataStore.jobIdKey(job2.id()));
+        sharedPreferences.edit()
+                .putStringSet(SimpleUploadDataStore.KEY_JOB_IDS, keys)
+                .putString(SimpleUploadDataStore.jobIdKey(job1.id()), gson.toJson(job1))
+                .putString(SimpleUploadDataStore.jobIdKey(job2.id()), gson.toJson(job2))
+                .commit();
+
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.getByStatus(StatusType.FAILED).subscribe(ts);
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertValue(job2);
+
+        final Status completed = Status.createCompleted(job1.id(), null);
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        dataStore.update(completed).subscribe(ts2);
+        ts2.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts2.assertNoErrors();
+
+        // the status sets were committed with the update
+        assertThat(sharedPreferences.getBoolean(SimpleUploadDataStore.KEY_STATUS_INDEX, false),
+                is(true));
+        final SimpleUploadDataStore reopened = new SimpleUploadDataStore(sharedPreferences,
+                Schedulers.from(Executors.newSingleThreadExecutor()));
+
+        final TestSubscriber<Job> ts3 = TestSubscriber.create();
+        reopened.getByStatus(StatusType.COMPLETED, StatusType.FAILED).subscribe(ts3);
+        ts3.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts3.assertNoErrors();
+        assertThat(ts3.getOnNextEvents(), containsInAnyOrder(job1.withStatus(completed), job2));
+
+        final Map<StatusType, Integer> expected = new HashMap<>();
+        expected.put(StatusType.COMPLETED, 1);
+        expected.put(StatusType.FAILED, 1);
+        final TestSubscriber<Map<StatusType, Integer>> ts4 = TestSubscriber.create();
+        reopened.countByStatus().subscribe(ts4);
+        ts4.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts4.assertNoErrors();
+        ts4.assertValue(expected);
+    }
+
+    @Test
+    public void testGetByStatusPageNotSupported() throws Exception {
+        dataStore.save(createTestJob()).subscribe();
+
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.getByStatus(2, StatusType.QUEUED).subscribe(ts);
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertError(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        final Scheduler worker = Schedulers.from(Executors.newSingleThreadExecutor());
+        final SimpleUploadDataStore dataStore = new SimpleUploadDataStore(sharedPreferences,
+                worker, SimpleUploadDataStore.Durability.WRITE_BEHIND, TimeUnit.HOURS.toMillis(1));
+        final Job job = createTestJob();
+
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.save(job).subscribe(ts);
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertValue(job);
+
+        final Status completed = Status.createCompleted(job.id(), null);
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        dataStore.update(completed).subscribe(ts2);
+        ts2.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts2.assertValue(job.withStatus(completed));
+
+        // the writes are not committed yet but are visible to reads
+        assertThat(sharedPreferences.contains(SimpleUploadDataStore.KEY_JOB_IDS), is(false));
+        final TestSubscriber<Job> ts3 = TestSubscriber.create();
+        dataStore.getAll().subscribe(ts3);
+        ts3.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts3.assertValue(job.withStatus(completed));
+
+        final TestSubscriber<Boolean> ts4 = TestSubscriber.create();
+        dataStore.flush().subscribe(ts4);
+        ts4.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts4.assertValue(true);
+
+        // both writes were committed together
+        assertThat(sharedPreferences.getStringSet(SimpleUploadDataStore.KEY_JOB_IDS, null),
+                containsInAnyOrder(SimpleUploadDataStore.jobIdKey(job.id())));
+        assertThat(sharedPreferences.getString(SimpleUploadDataStore.jobIdKey(job.id()), null),
+                is(gson.toJson(job.withStatus(completed))));
+    }
+
+    @Test
+    public void testCloseCommits() throws Exception {
+        final Scheduler worker = Schedulers.from(Executors.newSingleThreadExecutor());
+        final SimpleUploadDataStore dataStore = new SimpleUploadDataStore(sharedPreferences,
+                worker, SimpleUploadDataStore.Durability.WRITE_BEHIND, TimeUnit.HOURS.toMillis(1));
+        final Job job = createTestJob();
+        dataStore.save(job).subscribe();
+
+        final TestSubscriber<Boolean> ts = TestSubscriber.create();
+        dataStore.close().subscribe(ts);
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertValue(true);
+
+        assertThat(sharedPreferences.getString(SimpleUploadDataStore.jobIdKey(job.id()), null),
+                is(gson.toJson(job)));
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        final Scheduler worker = Schedulers.from(Executors.newSingleThreadExecutor());
+        final SimpleUploadDataStore dataStore = new SimpleUploadDataStore(sharedPreferences,
+                worker, SimpleUploadDataStore.Durability.GROUP_COMMIT, 50);
+        final Job job = createTestJob();
+
+        // the write completes once it has been committed
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.save(job).subscribe(ts);
+        ts.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        ts.assertValue(job);
+        assertThat(sharedPreferences.getString(SimpleUploadDataStore.jobIdKey(job.id()), null),
+                is(gson.toJson(job)));
+    }
+
     private Job createTestJob() {
         // all numeric values are serialized as doubles by gson
         final Map<String, Object> data = new HashMap<>();
@@ -0,0 +1,256 @@
+package com.jagsaund.rxuploader.store;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.jagsaund.rxuploader.BuildConfig;
+import com.jagsaund.rxuploader.job.ErrorType;
+import com.jagsaund.rxuploader.job.Job;
+import com.jagsaund.rxuploader.job.JobTypeAdapterFactory;
+import com.jagsaund.rxuploader.job.Status;
+import com.jagsaund.rxuploader.job.StatusType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class , sdk = 23)
+public class SqliteUploadDataStoreTest {
+    private TestScheduler clock;
+    private SqliteUploadDataStore.OpenHelper openHelper;
+    private SqliteUploadDataStore dataStore;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new TestScheduler();
+        openHelper = new SqliteUploadDataStore.OpenHelper(RuntimeEnvironment.application, null);
+        dataStore = new SqliteUploadDataStore(openHelper, Schedulers.immediate(), clock);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        openHelper.close();
+    }
+
+    @Test
+    public void testSaveAndGet() throws Exception {
+        final Job job = createJob("job_id_1", Status.createQueued("job_id_1"));
+
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.save(job).subscribe(ts);
+        ts.assertValue(job);
+
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        dataStore.get(job.id()).subscribe(ts2);
+        ts2.assertNoErrors();
+        ts2.assertValue(job);
+
+        final TestSubscriber<Job> ts3 = TestSubscriber.create();
+        dataStore.get("bad_id").subscribe(ts3);
+        ts3.assertValue(Job.INVALID_JOB);
+    }
+
+    @Test
+    public void testGetAllInCreationOrder() throws Exception {
+        final Job job1 = createJob("job_id_1", Status.createQueued("job_id_1"));
+        final Job job2 = createJob("job_id_2", Status.createCompleted("job_id_2", null));
+        final Job job3 = createJob("job_id_3", Status.createFailed("job_id_3", ErrorType.SERVICE));
+
+        dataStore.save(job2).subscribe();
+        clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        dataStore.save(job1).subscribe();
+        clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        dataStore.save(job3).subscribe();
+
+        // saving a job again keeps its creation time
+        clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        final Job updated = job2.withPriority(Job.PRIORITY_HIGH);
+        dataStore.save(updated).subscribe();
+
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.getAll().subscribe(ts);
+
+        ts.assertNoErrors();
+        ts.assertCompleted();
+        assertThat(ts.getOnNextEvents(), contains(updated, job1, job3));
+    }
+
+    @Test
+    public void testGetAndCountByStatus() throws Exception {
+        final Job job1 = createJob("job_id_1", Status.createQueued("job_id_1"));
+        final Job job2 = createJob("job_id_2", Status.createCompleted("job_id_2", null));
+        final Job job3 = createJob("job_id_3", Status.createQueued("job_id_3"));
+        final Status failed = Status.createFailed(job3.id(), ErrorType.SERVICE);
+        dataStore.save(job1).subscribe();
+        dataStore.save(job2).subscribe();
+        dataStore.save(job3).subscribe();
+        dataStore.update(failed).subscribe();
+
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.getByStatus(StatusType.QUEUED, StatusType.FAILED).subscribe(ts);
+        ts.assertNoErrors();
+        ts.assertCompleted();
+        assertThat(ts.getOnNextEvents(), contains(job1, job3.withStatus(failed)));
+
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        dataStore.getByStatus(StatusType.SENDING).subscribe(ts2);
+        ts2.assertCompleted();
+        ts2.assertNoValues();
+
+        final Map<StatusType, Integer> expected = new HashMap<>();
+        expected.put(StatusType.QUEUED, 1);
+        expected.put(StatusType.COMPLETED, 1);
+        expected.put(StatusType.FAILED, 1);
+        final TestSubscriber<Map<StatusType, Integer>> ts3 = TestSubscriber.create();
+        dataStore.countByStatus().subscribe(ts3);
+        ts3.assertNoErrors();
+        ts3.assertValue(expected);
+    }
+
+    @Test
+    public void testGetByStatusPage() throws Exception {
+        final Job job1 = createJob("job_id_1", Status.createQueued("job_id_1"));
+        final Job job2 = createJob("job_id_2", Status.createQueued("job_id_2"))
+                .withPriority(Job.PRIORITY_HIGH);
+        final Job job3 = createJob("job_id_3", Status.createQueued("job_id_3"));
+        final Job job4 = createJob("job_id_4", Status.createQueued("job_id_4"))
+                .withPriority(Job.PRIORITY_LOW);
+        final Job job5 = createJob("job_id_5", Status.createCompleted("job_id_5", null))
+                .withPriority(Job.PRIORITY_HIGH);
+        for (Job job : new Job[] { job1, job2, job3, job4, job5 }) {
+            dataStore.save(job).subscribe();
+            clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        }
+
+        // highest priority first, jobs of the same priority in the order they were created
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.getByStatus(3, StatusType.QUEUED).subscribe(ts);
+        ts.assertNoErrors();
+        ts.assertCompleted();
+        assertThat(ts.getOnNextEvents(), contains(job2, job1, job3));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        final Job job = createJob("job_id_1", Status.createQueued("job_id_1"));
+        dataStore.save(job).subscribe();
+
+        final Status completed = Status.createCompleted(job.id(), "done");
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.update(completed).subscribe(ts);
+        ts.assertValue(job.withStatus(completed));
+
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        dataStore.get(job.id()).subscribe(ts2);
+        ts2.assertValue(job.withStatus(completed));
+
+        final TestSubscriber<Job> ts3 = TestSubscriber.create();
+        dataStore.update(Status.createCompleted("bad_id", "done")).subscribe(ts3);
+        ts3.assertValue(Job.INVALID_JOB);
+    }
+
+    @Test
+    public void testUpdateUploadSession() throws Exception {
+        final Job job = createJob("job_id_1", Status.createQueued("job_id_1"));
+        dataStore.save(job).subscribe();
+        final Status paused = Status.createPaused(job.id());
+        dataStore.update(paused).subscribe();
+
+        // the session is recorded without putting the paused job back to queued
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.updateUploadSession(job.id(), "session-1", 4096).subscribe(ts);
+        ts.assertValue(job.withStatus(paused).withUploadSession("session-1", 4096));
+
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        dataStore.get(job.id()).subscribe(ts2);
+        ts2.assertValue(job.withStatus(paused).withUploadSession("session-1", 4096));
+
+        final TestSubscriber<Job> ts3 = TestSubscriber.create();
+        dataStore.updateUploadSession("bad_id", "session-1", 4096).subscribe(ts3);
+        ts3.assertValue(Job.INVALID_JOB);
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        final Job job = createJob("job_id_1", Status.createQueued("job_id_1"));
+        dataStore.save(job).subscribe();
+
+        final TestSubscriber<Job> ts = TestSubscriber.create();
+        dataStore.delete(job.id()).subscribe(ts);
+        ts.assertValue(job);
+
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        dataStore.getAll().subscribe(ts2);
+        ts2.assertCompleted();
+        ts2.assertNoValues();
+
+        final TestSubscriber<Job> ts3 = TestSubscriber.create();
+        dataStore.delete(job.id()).subscribe(ts3);
+        ts3.assertValue(Job.INVALID_JOB);
+    }
+
+    @SuppressLint("ApplySharedPref")
+    @Test
+    public void testMigrate() throws Exception {
+        final Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(JobTypeAdapterFactory.create())
+                .create();
+        final Job job1 = createJob("job_id_1", Status.createQueued("job_id_1"));
+        final Job job2 = createJob("job_id_2", Status.createCompleted("job_id_2", null));
+
+        final SharedPreferences sharedPreferences = RuntimeEnvironment.application
+                .getSharedPreferences(SimpleUploadDataStore.JOB_REPO, Context.MODE_PRIVATE);
+        final Set<String> keys = new HashSet<>();
+        keys.add(SimpleUploadDataStore.jobIdKey(job1.id()));
+        keys.add(SimpleUploadDataStore.jobIdKey(job2.id()));
+        sharedPreferences.edit()
+                .putStringSet(SimpleUploadDataStore.KEY_JOB_IDS, keys)
+                .putString(SimpleUploadDataStore.jobIdKey(job1.id()), gson.toJson(job1))
+                .putString(SimpleUploadDataStore.jobIdKey(job2.id()), gson.toJson(job2))
+                .commit();
+
+        final TestSubscriber<Integer> ts = TestSubscriber.create();
+        dataStore.migrate(sharedPreferences).subscribe(ts);
+        ts.assertNoErrors();
+        ts.assertValue(2);
+
+        // the jobs are only left in the database
+        assertThat(sharedPreferences.getAll().isEmpty(), is(true));
+        final TestSubscriber<Job> ts2 = TestSubscriber.create();
+        dataStore.get(job2.id()).subscribe(ts2);
+        ts2.assertValue(job2);
+
+        final TestSubscriber<Integer> ts3 = TestSubscriber.create();
+        dataStore.migrate(sharedPreferences).subscribe(ts3);
+        ts3.assertValue(0);
+    }
+
+    private static Job createJob(String jobId, Status status) {
+        return Job.builder()
+                .setId(jobId)
+                .setFilepath("test/file/path")
+                .setMetadata(Collections.emptyMap())
+                .setMimeType("text/plain")
+                .setStatus(status)
+                .build();
+    }
+}
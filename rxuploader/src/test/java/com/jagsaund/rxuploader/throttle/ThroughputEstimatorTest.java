@@ -0,0 +1,78 @@
+package com.jagsaund.rxuploader.throttle;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import rx.schedulers.TestScheduler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ThroughputEstimatorTest {
+    private TestScheduler clock;
+    private ThroughputEstimator estimator;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new TestScheduler();
+        estimator = new ThroughputEstimator(1000, clock);
+    }
+
+    @Test
+    public void testFirstSample() throws Exception {
+        assertThat(estimator.bytesPerSecond(), is(0L));
+
+        estimator.onBytesSent(0);
+        clock.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        estimator.onBytesSent(100);
+
+        // shorter than a sample, no estimate yet
+        assertThat(estimator.bytesPerSecond(), is(0L));
+
+        clock.advanceTimeBy(150, TimeUnit.MILLISECONDS);
+        estimator.onBytesSent(150);
+
+        assertThat(estimator.bytesPerSecond(), is(1000L));
+    }
+
+    @Test
+    public void testSmoothing() throws Exception {
+        estimator.onBytesSent(0);
+        clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        estimator.onBytesSent(1000);
+
+        clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        estimator.onBytesSent(4000);
+
+        // a sample as long as the time constant moves the estimate 1 - 1/e of the way
+        assertThat(estimator.bytesPerSecond(), is(2896L));
+    }
+
+    @Test
+    public void testDecaysWhenIdle() throws Exception {
+        estimator.onBytesSent(0);
+        clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        estimator.onBytesSent(1000);
+
+        clock.advanceTimeBy(3, TimeUnit.SECONDS);
+
+        assertThat(estimator.bytesPerSecond(), is(49L));
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        estimator.onBytesSent(0);
+        clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        estimator.onBytesSent(1000);
+
+        estimator.reset();
+        assertThat(estimator.bytesPerSecond(), is(0L));
+
+        estimator.onBytesSent(0);
+        clock.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+        estimator.onBytesSent(4000);
+
+        // the rate before the reset is forgotten
+        assertThat(estimator.bytesPerSecond(), is(8000L));
+    }
+}
@@ -0,0 +1,66 @@
+package com.jagsaund.rxuploader.throttle;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testUnlimited() throws Exception {
+        final TokenBucket bucket = new TokenBucket(TokenBucket.UNLIMITED);
+
+        assertThat(bucket.reserve(Long.MAX_VALUE / 2, 0), is(0L));
+        assertThat(bucket.reserve(Long.MAX_VALUE / 2, 0), is(0L));
+    }
+
+    @Test
+    public void testBurst() throws Exception {
+        final TokenBucket bucket = new TokenBucket(1000);
+        final long now = System.nanoTime();
+
+        // a full bucket allows one second worth of bytes without waiting
+        assertThat(bucket.reserve(1000, now), is(0L));
+
+        // the bucket is empty so the next bytes have to wait until they are replenished
+        assertThat(bucket.reserve(500, now), is(SECOND / 2));
+    }
+
+    @Test
+    public void testDebtIsShared() throws Exception {
+        final TokenBucket bucket = new TokenBucket(1000);
+        final long now = System.nanoTime();
+
+        bucket.reserve(1000, now);
+        assertThat(bucket.reserve(1000, now), is(SECOND));
+        // a second caller queues up behind the debt of the first
+        assertThat(bucket.reserve(1000, now), is(2 * SECOND));
+    }
+
+    @Test
+    public void testRefill() throws Exception {
+        final TokenBucket bucket = new TokenBucket(1000);
+        final long now = System.nanoTime();
+
+        bucket.reserve(1000, now);
+        assertThat(bucket.reserve(500, now + SECOND / 2), is(0L));
+
+        // refill never exceeds the capacity of the bucket
+        assertThat(bucket.reserve(1000, now + 10 * SECOND), is(0L));
+        assertThat(bucket.reserve(1, now + 10 * SECOND), is(SECOND / 1000));
+    }
+
+    @Test
+    public void testChangeRate() throws Exception {
+        final TokenBucket bucket = new TokenBucket(1000);
+        final long now = System.nanoTime();
+        bucket.reserve(5000, now);
+
+        bucket.setBytesPerSecond(TokenBucket.UNLIMITED);
+        assertThat(bucket.getBytesPerSecond(), is(TokenBucket.UNLIMITED));
+        assertThat(bucket.reserve(5000, now), is(0L));
+    }
+}
@@ -0,0 +1,40 @@
+package com.jagsaund.rxuploader.utils;
+
+import android.support.annotation.NonNull;
+import java.io.File;
+import java.io.FileNotFoundException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(JUnit4.class)
+public class DigestUtilsTest {
+    private static final String TEST_FILE = "upload_test.dat";
+
+    @Test
+    public void testSha256() throws Exception {
+        // the file is larger than the read buffer so the digest is built from several reads
+        assertThat(DigestUtils.sha256(getFile(TEST_FILE)),
+                is(equalTo("d764fad5679195ae7d42ce02fad8eb4df34f53efcb38d047fce32331060df7e6")));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testSha256MissingFile() throws Exception {
+        DigestUtils.sha256(new File("missing_file.dat"));
+    }
+
+    @Test
+    public void testToHex() throws Exception {
+        assertThat(DigestUtils.toHex(new byte[] { 0x00, 0x0f, (byte) 0xa5, (byte) 0xff }),
+                is(equalTo("000fa5ff")));
+    }
+
+    private File getFile(@NonNull String path) {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        return new File(classLoader.getResource(path).getFile());
+    }
+}